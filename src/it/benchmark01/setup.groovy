@@ -0,0 +1,62 @@
+// generate a reproducible large webapp : js and css files of mixed sizes spread over 50 modules
+try {
+
+  def nbFiles = Integer.parseInt(System.getProperty("benchmark.files", "10000"))
+  def nbModules = 50
+  def target = new File(basedir, "target")
+  target.deleteDir()
+  def webapp = new File(target, "generated/webapp")
+  def random = new Random(42)
+
+  // mostly small files, a few big ones (up to 256KB)
+  def nextSize = {
+    def r = random.nextDouble()
+    r < 0.70 ? 200 + random.nextInt(4000) : r < 0.95 ? 4000 + random.nextInt(28000) : 32000 + random.nextInt(224000)
+  }
+  def nextName = { prefix -> prefix + Integer.toString(random.nextInt(1 << 20), 36) }
+
+  def js = { int size ->
+    def b = new StringBuilder(size + 512)
+    def nb = 0
+    while (b.length() < size) {
+      def fn = nextName("fn")
+      def arg = nextName("value")
+      b.append("/**\n * ").append(fn).append(" computes things.\n */\n")
+      b.append("function ").append(fn).append(nb++).append("(").append(arg).append(", options) {\n")
+      b.append("    var result = [], index;\n")
+      b.append("    for (index = 0; index < ").append(arg).append(".length; index++) {\n")
+      b.append("        if (").append(arg).append("[index] !== null && options.").append(nextName("flag")).append(") {\n")
+      b.append("            result.push(\"").append(nextName("label ")).append("\" + ").append(arg).append("[index] * ").append(random.nextInt(1000)).append(");\n")
+      b.append("        }\n    }\n    return result;\n}\n\n")
+    }
+    b.toString()
+  }
+  def css = { int size ->
+    def b = new StringBuilder(size + 256)
+    while (b.length() < size) {
+      b.append(".").append(nextName("block-")).append(" .").append(nextName("item-")).append(" {\n")
+      b.append("    margin : 0px 0px ").append(random.nextInt(40)).append("px 0px;\n")
+      b.append("    color : #").append(String.format("%06x", random.nextInt(0xffffff))).append(";\n")
+      b.append("    font-size : ").append(random.nextInt(10)).append(".").append(random.nextInt(10)).append("em;\n")
+      b.append("}\n\n")
+    }
+    b.toString()
+  }
+
+  for (int i = 0; i < nbFiles; i++) {
+    def dir = new File(webapp, String.format("mod%02d/%s", i % nbModules, (i % 3 == 0) ? "css" : "js"))
+    dir.mkdirs()
+    def size = nextSize()
+    if (i % 3 == 0) {
+      new File(dir, "style" + i + ".css").setText(css(size), "UTF-8")
+    } else {
+      new File(dir, "script" + i + ".js").setText(js(size), "UTF-8")
+    }
+  }
+  println("benchmark : generated " + nbFiles + " files into " + webapp)
+  return true
+
+} catch(Throwable e) {
+  e.printStackTrace()
+  return false
+}
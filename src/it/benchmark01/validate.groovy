@@ -0,0 +1,49 @@
+// report the metrics logged by the plugin, and compare the throughput with the baseline
+try {
+
+  def log = new File(basedir, "build.log").getText("UTF-8")
+  def m = (log =~ /processed (\d+) file\(s\) in (\d+) ms \(([0-9.]+) file\(s\)\/s\), peak heap (\d+) MB/)
+  assert m.find() : "metrics not found in build.log"
+  def files = m.group(1) as long
+  def wallTime = m.group(2) as long
+  def filesPerSecond = m.group(3) as double
+  def peakHeap = m.group(4) as long
+  assert files == Long.parseLong(System.getProperty("benchmark.files", "10000")) : "unexpected number of processed files : " + files
+
+  def webapp = new File(basedir, "target/benchmark")
+  for (int i = 0; i < 50; i++) {
+    def bundle = new File(webapp, String.format("bundles/mod%02d.js", i))
+    assert bundle.length() > 0 : bundle.toString() + " not created"
+    assert new File(bundle.path + ".gz").length() > 0 : bundle.toString() + ".gz not created"
+  }
+
+  def report = new Properties()
+  report.setProperty("files", files.toString())
+  report.setProperty("wallTimeMs", wallTime.toString())
+  report.setProperty("filesPerSecond", filesPerSecond.toString())
+  report.setProperty("peakHeapMB", peakHeap.toString())
+  report.setProperty("java.version", System.getProperty("java.version"))
+  report.setProperty("availableProcessors", Runtime.getRuntime().availableProcessors().toString())
+  new File(basedir, "target/benchmark-report.properties").withOutputStream { report.store(it, "yuicompressor-maven-plugin macro benchmark") }
+  println(String.format("benchmark : %d files in %d ms (%.1f files/s), peak heap %d MB", files, wallTime, filesPerSecond, peakHeap))
+
+  def baselineFile = new File(basedir, "baseline.properties")
+  if (Boolean.getBoolean("benchmark.updateBaseline")) {
+    def baseline = new Properties()
+    baseline.setProperty("filesPerSecond", filesPerSecond.toString())
+    baseline.setProperty("peakHeapMB", peakHeap.toString())
+    baselineFile.withOutputStream { baseline.store(it, "baseline of the macro benchmark (updated with -Dbenchmark.updateBaseline=true)") }
+    println("benchmark : baseline updated, copy " + baselineFile + " to src/it/benchmark01 to keep it")
+  } else if (baselineFile.exists()) {
+    def baseline = new Properties()
+    baselineFile.withInputStream { baseline.load(it) }
+    def maxSlowdown = Double.parseDouble(System.getProperty("benchmark.maxSlowdown", "1.5"))
+    def expected = Double.parseDouble(baseline.getProperty("filesPerSecond"))
+    assert filesPerSecond * maxSlowdown >= expected : String.format("throughput regression : %.1f files/s, baseline %.1f files/s (max slowdown x%.2f)", filesPerSecond, expected, maxSlowdown)
+  }
+  return true
+
+} catch(Throwable e) {
+  e.printStackTrace()
+  return false
+}
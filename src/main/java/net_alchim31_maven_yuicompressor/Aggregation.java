@@ -1,13 +1,21 @@
 package net_alchim31_maven_yuicompressor;
 
 import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.sonatype.plexus.build.incremental.BuildContext;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.regex.Pattern;
 
 public class Aggregation {
     public File inputDir;
@@ -20,11 +28,40 @@ public class Aggregation {
     public boolean fixLastSemicolon = false;
     public boolean autoExcludeWildcards = false;
 
+    /** split the output into numbered chunks (eg: all-1.js, all-2.js) of about this size (in bytes), 0 to disable */
+    public long maxChunkSize = 0;
+    /** size used to balance chunks : "size" (size of the members) or "gzip" (estimated gzipped size of the members) */
+    public String splitBy = "size";
+    /** manifest that lists the chunks in order, default to [output].chunks.json */
+    public File chunkManifest;
+
+    /** files to never include with wildcards (eg: content hashed copies of outputs), absolute */
+    Set<File> ignoredFiles;
+
+    private boolean outputUnchanged = false;
+    private final List<File> outputs_ = new ArrayList<>();
+    private final Set<File> unchangedOutputs_ = new HashSet<>();
+
     public List<File> run(Collection<File> previouslyIncludedFiles, BuildContext buildContext) throws Exception {
         return this.run(previouslyIncludedFiles, buildContext, null);
     }
 
     public List<File> run(Collection<File> previouslyIncludedFiles, BuildContext buildContext, Set<String> incrementalFiles) throws Exception {
+        Tracing.Span span = Tracing.start("aggregate", String.valueOf(output));
+        try {
+            List<File> files = aggregate(previouslyIncludedFiles, buildContext, incrementalFiles);
+            long size = 0;
+            for (File file : outputs_) {
+                size += file.length();
+            }
+            span.count(files.size()).outputSize(size).engine((maxChunkSize > 0) ? "chunks" : "single");
+            return files;
+        } finally {
+            span.end();
+        }
+    }
+
+    private List<File> aggregate(Collection<File> previouslyIncludedFiles, BuildContext buildContext, Set<String> incrementalFiles) throws Exception {
         defineInputDir();
 
         List<File> files;
@@ -34,42 +71,337 @@ public class Aggregation {
             files = getIncludedFiles(null, buildContext, incrementalFiles);
         }
 
+        outputUnchanged = false;
+        outputs_.clear();
+        unchangedOutputs_.clear();
+        Set<File> removed = new HashSet<>();
+        if ((maxChunkSize <= 0) && (files.size() != 0)) {
+            // split by a previous run
+            removed = removeChunks(buildContext);
+        }
         if (files.size() != 0) {
             output = output.getCanonicalFile();
             output.getParentFile().mkdirs();
-            OutputStream out = buildContext.newFileOutputStream(output);
-            try {
-                for (File file : files) {
-                    if (file.getCanonicalPath().equals(output.getCanonicalPath())) {
-                        continue;
-                    }
-                    FileInputStream in = new FileInputStream(file);
-                    try {
-                        if (insertFileHeader) {
-                            out.write(createFileHeader(file).getBytes());
-                        }
-                        IOUtil.copy(in, out);
-                        if (fixLastSemicolon) {
-                            out.write(';');
-                        }
-                        if (insertNewLine) {
-                            out.write('\n');
-                        }
-                    } finally {
-                        IOUtil.close(in);
-                        in = null;
-                    }
-                    if (removeIncluded) {
-                        file.delete();
-                        buildContext.refresh(file);
-                    }
+            List<File> members = new ArrayList<>();
+            for (File file : files) {
+                if (file.getCanonicalPath().equals(output.getCanonicalPath()) || isChunkOrManifest(file) || removed.contains(file.getCanonicalFile())) {
+                    continue;
                 }
+                members.add(file);
+            }
+            if (maxChunkSize > 0) {
+                writeChunks(members, buildContext);
+            } else {
+                writeIfChanged(output, members, 0, members.size(), buildContext);
+            }
+            outputUnchanged = unchangedOutputs_.containsAll(outputs_);
+            if (removeIncluded) {
+                for (File member : members) {
+                    member.delete();
+                    buildContext.refresh(member);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Write file (with its header, last semicolon and new line) into out, read by blocks.
+     */
+    private void writeMember(File file, OutputStream out) throws Exception {
+        if (insertFileHeader) {
+            out.write(createFileHeader(file).getBytes());
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            IOUtil.copy(in, out);
+        } finally {
+            IOUtil.close(in);
+        }
+        if (fixLastSemicolon) {
+            out.write(';');
+        }
+        if (insertNewLine) {
+            out.write('\n');
+        }
+    }
+
+    /**
+     * @return the size of file once written by {@link #writeMember(File, OutputStream)}, or its estimated gzipped size
+     * (the only case where the member is read)
+     */
+    private long memberSize(File file) throws Exception {
+        if ("gzip".equalsIgnoreCase(splitBy)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(file.length() + 64, Integer.MAX_VALUE - 8));
+            writeMember(file, out);
+            return OutputFiles.deflatedSize(out.toByteArray());
+        }
+        return (insertFileHeader ? createFileHeader(file).getBytes().length : 0) + file.length() + (fixLastSemicolon ? 1 : 0) + (insertNewLine ? 1 : 0);
+    }
+
+    /**
+     * Write members into numbered outputs (eg: all-1.js, all-2.js), split at member boundaries,
+     * with balanced sizes, and the manifest that list the chunks in order.
+     * Members that fit into a single chunk are written into output, without manifest (chunks of a previous run are removed).
+     */
+    private void writeChunks(List<File> members, BuildContext buildContext) throws Exception {
+        long[] sizes = new long[members.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = memberSize(members.get(i));
+        }
+        int[] starts = split(sizes, maxChunkSize);
+        if (starts.length < 2) {
+            removeChunks(buildContext);
+            if (starts.length == 1) {
+                writeIfChanged(output, members, 0, members.size(), buildContext);
+            }
+            return;
+        }
+        removeOutput(output, buildContext);
+        File dir = output.getParentFile();
+        StringBuilder manifest = new StringBuilder();
+        manifest.append("{\n  \"output\" : ").append(AssetManifest.quote(output.getName())).append(",\n  \"chunks\" : [");
+        for (int c = 0; c < starts.length; c++) {
+            int end = (c + 1 < starts.length) ? starts[c + 1] : members.size();
+            File chunk = new File(dir, chunkName(c + 1));
+            long size = writeIfChanged(chunk, members, starts[c], end, buildContext);
+            manifest.append((c == 0) ? "\n" : ",\n").append("    { \"file\" : ").append(AssetManifest.quote(chunk.getName()))
+                    .append(", \"size\" : ").append(size).append(", \"members\" : [");
+            for (int i = starts[c]; i < end; i++) {
+                manifest.append((i == starts[c]) ? "" : ", ").append(AssetManifest.quote(toMemberPath(members.get(i))));
+            }
+            manifest.append("] }");
+        }
+        manifest.append("\n  ]\n}\n");
+        removeChunks(starts.length + 1, buildContext);
+        File manifestFile = getChunkManifest();
+        byte[] content = manifest.toString().getBytes("UTF-8");
+        if (!OutputFiles.sameContent(content, manifestFile)) {
+            OutputStream out = buildContext.newFileOutputStream(manifestFile);
+            try {
+                out.write(content);
             } finally {
                 IOUtil.close(out);
-                out = null;
             }
         }
-        return files;
+    }
+
+    /**
+     * @return the path of member relative to inputDir (eg: "js/lib.js"), or its absolute path if it is outside
+     */
+    private String toMemberPath(File member) throws Exception {
+        String dir = inputDir.getPath() + File.separator;
+        String path = member.getCanonicalPath();
+        return (path.startsWith(dir) ? path.substring(dir.length()) : path).replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Remove the chunks and the manifest of a previous run, when the manifest exists (so files named like a chunk
+     * but not written by a split are kept).
+     *
+     * @return the files removed (canonical)
+     */
+    private Set<File> removeChunks(BuildContext buildContext) throws Exception {
+        Set<File> back = new HashSet<>();
+        File manifestFile = (chunkManifest != null) ? chunkManifest : new File(output.getPath() + ".chunks.json");
+        if (manifestFile.isFile()) {
+            back.addAll(removeChunks(1, buildContext));
+            back.add(manifestFile.getCanonicalFile());
+            manifestFile.delete();
+            buildContext.refresh(manifestFile);
+        }
+        return back;
+    }
+
+    private List<File> removeChunks(int from, BuildContext buildContext) throws Exception {
+        List<File> back = new ArrayList<>();
+        File dir = output.getParentFile();
+        for (int c = from; new File(dir, chunkName(c)).exists(); c++) {
+            File chunk = new File(dir, chunkName(c)).getCanonicalFile();
+            removeOutput(chunk, buildContext);
+            back.add(chunk);
+        }
+        return back;
+    }
+
+    private static void removeOutput(File file, BuildContext buildContext) {
+        if (file.exists()) {
+            file.delete();
+            new File(file.getPath() + ".gz").delete();
+            new File(file.getPath() + ".zst").delete();
+            buildContext.refresh(file);
+        }
+    }
+
+    /**
+     * Split an ordered list of sizes into the minimal number of contiguous chunks not bigger than maxChunkSize
+     * (a member bigger than maxChunkSize is alone in its chunk), then balance the chunks of every run of members
+     * between such big members (minimize the biggest one).
+     *
+     * @return the index of the first member of every chunk, empty if there is no member
+     */
+    static int[] split(long[] sizes, long maxChunkSize) {
+        List<Integer> starts = new ArrayList<>();
+        int from = 0;
+        for (int i = 0; i <= sizes.length; i++) {
+            if ((i == sizes.length) || (sizes[i] > maxChunkSize)) {
+                splitRun(sizes, from, i, maxChunkSize, starts);
+                if (i < sizes.length) {
+                    starts.add(i);
+                }
+                from = i + 1;
+            }
+        }
+        int[] back = new int[starts.size()];
+        for (int i = 0; i < back.length; i++) {
+            back[i] = starts.get(i);
+        }
+        return back;
+    }
+
+    /**
+     * Split sizes[from, to) (members not bigger than maxChunkSize) into the minimal number of chunks,
+     * with the smallest capacity that keeps this number.
+     */
+    private static void splitRun(long[] sizes, int from, int to, long maxChunkSize, List<Integer> starts) {
+        if (from >= to) {
+            return;
+        }
+        long low = 0;
+        for (int i = from; i < to; i++) {
+            low = Math.max(low, sizes[i]);
+        }
+        int nbChunks = pack(sizes, from, to, maxChunkSize, null);
+        long high = maxChunkSize;
+        while (low < high) {
+            long capacity = low + (high - low) / 2;
+            if (pack(sizes, from, to, capacity, null) <= nbChunks) {
+                high = capacity;
+            } else {
+                low = capacity + 1;
+            }
+        }
+        pack(sizes, from, to, low, starts);
+    }
+
+    /**
+     * Greedily fill chunks with sizes[from, to) up to capacity.
+     *
+     * @param starts if not null, receives the index of the first member of every chunk
+     * @return the number of chunks
+     */
+    private static int pack(long[] sizes, int from, int to, long capacity, List<Integer> starts) {
+        int nb = 0;
+        long current = 0;
+        for (int i = from; i < to; i++) {
+            if ((i == from) || (current + sizes[i] > capacity)) {
+                if (starts != null) {
+                    starts.add(i);
+                }
+                nb++;
+                current = 0;
+            }
+            current += sizes[i];
+        }
+        return nb;
+    }
+
+    private String chunkName(int index) {
+        String name = output.getName();
+        int sep = name.lastIndexOf('.');
+        return (sep > 0) ? (name.substring(0, sep) + "-" + index + name.substring(sep)) : (name + "-" + index);
+    }
+
+    private boolean isChunkOrManifest(File file) throws Exception {
+        if (maxChunkSize <= 0) {
+            return false;
+        }
+        String name = output.getName();
+        int sep = name.lastIndexOf('.');
+        String base = (sep > 0) ? name.substring(0, sep) : name;
+        String extension = (sep > 0) ? name.substring(sep) : "";
+        return file.getCanonicalFile().equals(getChunkManifest())
+                || (file.getParentFile().getCanonicalFile().equals(output.getParentFile())
+                && file.getName().matches(Pattern.quote(base) + "-[0-9]+" + Pattern.quote(extension)));
+    }
+
+    /**
+     * @return the files written by the last run (output, or every chunk)
+     */
+    public List<File> getOutputs() {
+        return outputs_;
+    }
+
+    /**
+     * @return true if the last run produced the same content as the existing file, so it was not rewritten
+     */
+    public boolean isOutputUnchanged(File file) {
+        return unchangedOutputs_.contains(file);
+    }
+
+    /**
+     * @return the manifest of the chunks, null if the output is not split (not written if the members fit into a single chunk)
+     */
+    public File getChunkManifest() {
+        if (maxChunkSize <= 0) {
+            return null;
+        }
+        return (chunkManifest != null) ? chunkManifest : new File(output.getPath() + ".chunks.json");
+    }
+
+    /**
+     * @return true if the last run produced the same content as the existing output, so the file was not rewritten
+     */
+    public boolean isOutputUnchanged() {
+        return outputUnchanged;
+    }
+
+    /**
+     * Stream members[from, to) into a temporary file, hashed as it's written, and replace file by it
+     * except if file has the same content (compared by digest, no member kept in memory).
+     *
+     * @return the size of the content
+     */
+    private long writeIfChanged(File file, List<File> members, int from, int to, BuildContext buildContext) throws Exception {
+        outputs_.add(file);
+        File tmp = new File(file.getPath() + ".tmp");
+        MessageDigest md = OutputFiles.newDigest();
+        OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)), md);
+        try {
+            for (int i = from; i < to; i++) {
+                writeMember(members.get(i), out);
+            }
+        } catch (Exception exc) {
+            IOUtil.close(out);
+            tmp.delete();
+            throw exc;
+        } finally {
+            IOUtil.close(out);
+        }
+        long back = tmp.length();
+        if (file.isFile() && (file.length() == back) && MessageDigest.isEqual(md.digest(), OutputFiles.digest(file))) {
+            FileUtils.forceDelete(tmp);
+            unchangedOutputs_.add(file);
+        } else {
+            FileUtils.forceDelete(file);
+            FileUtils.rename(tmp, file);
+            buildContext.refresh(file);
+        }
+        return back;
+    }
+
+    /**
+     * @return every file matched by includes (ignoring the incremental build and the files included by previous aggregations)
+     */
+    public List<File> listIncludedFiles() throws Exception {
+        defineInputDir();
+        List<File> back = new ArrayList<>();
+        if (includes != null) {
+            for (String include : includes) {
+                addInto(include, back, null);
+            }
+        }
+        return back;
     }
 
     private String createFileHeader(File file) {
@@ -135,6 +467,9 @@ public class Aggregation {
             Arrays.sort(rpaths);
             for (String rpath : rpaths) {
                 File file = new File(scanner.getBasedir(), rpath);
+                if ((ignoredFiles != null) && ignoredFiles.contains(file.getAbsoluteFile())) {
+                    continue;
+                }
                 if (!includedFiles.contains(file) && (previouslyIncludedFiles == null || !previouslyIncludedFiles.contains(file))) {
                     includedFiles.add(file);
                 }
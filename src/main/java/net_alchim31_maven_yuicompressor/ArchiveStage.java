@@ -0,0 +1,211 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Pack the outputs of an execution into a zip archive (see the archive parameter of {@link YuiCompressorMojo}).
+ *
+ * An output still in memory when it's written is deflated while the build goes on ({@link #addContent(String, File, byte[])}),
+ * the others are read and deflated by {@link #write()}, a bounded number of entries ahead of the one written.
+ * An entry is only packed once its file is declared as a final output ({@link #declare(String, File)}).
+ * Called from one thread at a time (the thread that publishes the outputs, then the mojo thread).
+ */
+class ArchiveStage {
+    private static final Set<String> PRECOMPRESSED_EXTENSIONS = new HashSet<String>(Arrays.asList("gz", "zst", "br", "png", "gif", "jpg", "jpeg", "webp", "woff", "woff2", "zip", "jar"));
+
+    private final File archive_;
+    private final String prefix_;
+    private final int level_;
+    private final Map<String, Entry> entries_ = new TreeMap<String, Entry>();
+    private ExecutorService executor_ = SharedExecutor.newLane();
+    private int writtenCnt_;
+    private int inMemoryCnt_;
+
+    /**
+     * @param prefix path prefix of the entries (null for none)
+     * @param level deflate level of the entries not already compressed
+     */
+    ArchiveStage(File archive, String prefix, int level) {
+        archive_ = archive;
+        prefix_ = (prefix == null) ? "" : prefix;
+        level_ = level;
+    }
+
+    /**
+     * @return the entry of file (created if needed)
+     */
+    private Entry getEntry(String path, File file) {
+        String name = prefix_ + path;
+        Entry back = entries_.get(name);
+        if ((back == null) || !back.file.equals(file.getAbsoluteFile())) {
+            if (back != null) {
+                back.discard();
+            }
+            back = new Entry(name, file.getAbsoluteFile());
+            entries_.put(name, back);
+        }
+        return back;
+    }
+
+    /**
+     * Pack file (a final output) as path.
+     */
+    void declare(String path, File file) {
+        getEntry(path, file).declared = true;
+    }
+
+    /**
+     * Deflate the entry of file from its content still in memory, so the archive doesn't read the output again.
+     * Without bytes available in {@link SharedExecutor}, the entry is read from file by {@link #write()}.
+     */
+    void addContent(String path, File file, final byte[] content) {
+        final Entry entry = getEntry(path, file);
+        entry.discard();
+        final int entryLevel = isPrecompressed(entry.name) ? -1 : level_;
+        entry.prepared = HeldTask.submit(executor_, new Callable<ZipArchiveWriter.Entry>() {
+            public ZipArchiveWriter.Entry call() throws Exception {
+                return ZipArchiveWriter.prepare(entry.name, content, entryLevel);
+            }
+        }, content.length, false);
+    }
+
+    /**
+     * Write the declared entries (sorted by name) into a temporary file, to replace the archive if its content changed.
+     *
+     * @return the temporary file
+     */
+    File write() throws Exception {
+        List<Entry> entries = new ArrayList<Entry>();
+        inMemoryCnt_ = 0;
+        for (Entry entry : entries_.values()) {
+            if (entry.declared && entry.file.isFile()) {
+                entries.add(entry);
+                inMemoryCnt_ += (entry.prepared != null) ? 1 : 0;
+            }
+        }
+        writtenCnt_ = entries.size();
+        Tracing.Span span = Tracing.start("archive", archive_.getPath()).count(entries.size());
+        HeldTask.Queue<ZipArchiveWriter.Entry> queue = new HeldTask.Queue<ZipArchiveWriter.Entry>(executor_, SharedExecutor.getThreadCnt() * 4);
+        File back = new File(archive_.getAbsolutePath() + ".tmp");
+        archive_.getAbsoluteFile().getParentFile().mkdirs();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(back), 64 * 1024);
+        try {
+            ZipArchiveWriter writer = new ZipArchiveWriter(out);
+            int next = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                while (next < entries.size()) {
+                    final Entry entry = entries.get(next);
+                    boolean offered;
+                    if (entry.prepared != null) {
+                        offered = queue.offer(entry.prepared);
+                    } else {
+                        offered = queue.offer(new Callable<ZipArchiveWriter.Entry>() {
+                            public ZipArchiveWriter.Entry call() throws Exception {
+                                int entryLevel = isPrecompressed(entry.name) ? -1 : level_;
+                                return ZipArchiveWriter.prepare(entry.name, OutputFiles.readBytes(entry.file), entryLevel);
+                            }
+                        }, entry.file.length());
+                    }
+                    if (!offered) {
+                        break;
+                    }
+                    next++;
+                }
+                writer.add(queue.take());
+            }
+            writer.finish();
+        } finally {
+            queue.cancel();
+            IOUtil.close(out);
+            span.outputSize(back.length()).end();
+        }
+        return back;
+    }
+
+    /**
+     * @return the number of entries of the last {@link #write()}
+     */
+    int getWrittenCnt() {
+        return writtenCnt_;
+    }
+
+    /**
+     * @return the number of entries of the last {@link #write()} deflated from memory
+     */
+    int getInMemoryCnt() {
+        return inMemoryCnt_;
+    }
+
+    /**
+     * Remove the files packed into the archive, except kept ones (eg: sources processed in place).
+     *
+     * @return the number of files removed
+     */
+    int removeLooseFiles(Set<File> kept, BuildContext buildContext) {
+        int back = 0;
+        for (Entry entry : entries_.values()) {
+            if (entry.declared && !kept.contains(entry.file) && entry.file.delete()) {
+                buildContext.refresh(entry.file);
+                back++;
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Release the entries not written (and their bytes).
+     */
+    void discard() {
+        if (executor_ != null) {
+            executor_.shutdownNow();
+            executor_ = null;
+        }
+        for (Entry entry : entries_.values()) {
+            entry.discard();
+        }
+    }
+
+    private static boolean isPrecompressed(String name) {
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+        return PRECOMPRESSED_EXTENSIONS.contains(extension);
+    }
+
+    /**
+     * An output packed into the archive.
+     */
+    private static class Entry {
+        final String name;
+        final File file;
+        // true once file is a final output (see declare)
+        boolean declared;
+        // null until its compression is started from memory
+        HeldTask<ZipArchiveWriter.Entry> prepared;
+
+        Entry(String name, File file) {
+            this.name = name;
+            this.file = file;
+        }
+
+        void discard() {
+            if (prepared != null) {
+                prepared.release();
+                prepared = null;
+            }
+        }
+    }
+}
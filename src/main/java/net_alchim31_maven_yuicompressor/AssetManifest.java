@@ -0,0 +1,131 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JSON manifest that maps the logical name of every output to its content hashed name (and precompressed versions), eg:
+ * <pre>
+ * {
+ *   "js/app-min.js" : { "file" : "js/app-min.3f9a1c2b.js", "size" : 1234, "gzip" : "js/app-min.3f9a1c2b.js.gz", "gzipSize" : 456,
+ *     "zstd" : "js/app-min.3f9a1c2b.js.zst", "zstdSize" : 401 }
+ * }
+ * </pre>
+ * Entries are sorted by logical name, so the manifest is stable between builds.
+ */
+class AssetManifest {
+    private final Map<String, Entry> entries_ = new TreeMap<String, Entry>();
+
+    /**
+     * @param gzip path of the gzipped version, null if none
+     */
+    public void add(String name, String file, long size, String gzip, long gzipSize) {
+        Entry entry = new Entry(file, size);
+        entry.gzip = gzip;
+        entry.gzipSize = gzipSize;
+        entries_.put(name, entry);
+    }
+
+    /**
+     * Add the zstd version of the output name (ignored if name was not added).
+     */
+    public void addZstd(String name, String zstd, long zstdSize) {
+        Entry entry = entries_.get(name);
+        if (entry != null) {
+            entry.zstd = zstd;
+            entry.zstdSize = zstdSize;
+        }
+    }
+
+    /**
+     * @return the content hashed name of the output name, or null
+     */
+    public String getFile(String name) {
+        Entry entry = entries_.get(name);
+        return (entry == null) ? null : entry.file;
+    }
+
+    public boolean isEmpty() {
+        return entries_.isEmpty();
+    }
+
+    public String toJson() {
+        StringBuilder back = new StringBuilder("{\n");
+        String sep = "";
+        for (Map.Entry<String, Entry> entry : entries_.entrySet()) {
+            Entry e = entry.getValue();
+            back.append(sep).append("  ").append(quote(entry.getKey())).append(" : ");
+            back.append("{ \"file\" : ").append(quote(e.file)).append(", \"size\" : ").append(e.size);
+            if (e.gzip != null) {
+                back.append(", \"gzip\" : ").append(quote(e.gzip)).append(", \"gzipSize\" : ").append(e.gzipSize);
+            }
+            if (e.zstd != null) {
+                back.append(", \"zstd\" : ").append(quote(e.zstd)).append(", \"zstdSize\" : ").append(e.zstdSize);
+            }
+            back.append(" }");
+            sep = ",\n";
+        }
+        return back.append("\n}\n").toString();
+    }
+
+    /**
+     * Write the manifest, except if file already has the same content.
+     *
+     * @return true if file was (re)written
+     */
+    public boolean writeTo(File file) throws Exception {
+        byte[] content = toJson().getBytes("UTF-8");
+        if (OutputFiles.sameContent(content, file)) {
+            return false;
+        }
+        file.getParentFile().mkdirs();
+        OutputFiles.writeBytes(file, content);
+        return true;
+    }
+
+    static String quote(String v) {
+        StringBuilder back = new StringBuilder(v.length() + 2).append('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            switch (c) {
+                case '"':
+                    back.append("\\\"");
+                    break;
+                case '\\':
+                    back.append("\\\\");
+                    break;
+                case '\n':
+                    back.append("\\n");
+                    break;
+                case '\r':
+                    back.append("\\r");
+                    break;
+                case '\t':
+                    back.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        back.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        back.append(c);
+                    }
+            }
+        }
+        return back.append('"').toString();
+    }
+
+    private static class Entry {
+        final String file;
+        final long size;
+        String gzip;
+        long gzipSize;
+        String zstd;
+        long zstdSize;
+
+        Entry(String file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Properties;
+
+/**
+ * Fingerprint of the effective inputs of an execution (options, configuration and content of the source files),
+ * and the state (fingerprint + outputs) saved by the previous execution.
+ *
+ * Entries must be added in a stable order for the fingerprint to be stable.
+ */
+class BuildFingerprint {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_OUTPUT = "output.";
+
+    private final MessageDigest md_;
+
+    public BuildFingerprint() throws Exception {
+        md_ = MessageDigest.getInstance("SHA-256");
+    }
+
+    public BuildFingerprint add(String name, Object value) {
+        md_.update((name + "=" + value + "\n").getBytes(UTF8));
+        return this;
+    }
+
+    public BuildFingerprint add(String name, Object[] values) {
+        StringBuilder str = new StringBuilder();
+        if (values != null) {
+            for (Object v : values) {
+                str.append(v).append(',');
+            }
+        }
+        return add(name, (values == null) ? "null" : str.toString());
+    }
+
+    /**
+     * Add the path, the size and the content hash of file (or its absence).
+     */
+    public BuildFingerprint addFile(String name, File file) throws Exception {
+        if (file.isFile()) {
+            return add(name, file.getAbsolutePath() + "|" + file.length() + "|" + OutputFiles.toHex(OutputFiles.digest(file)));
+        }
+        return add(name, file.getAbsolutePath() + "|missing");
+    }
+
+    /**
+     * @return the fingerprint (the builder can't be used anymore)
+     */
+    public String get() {
+        return OutputFiles.toHex(md_.digest());
+    }
+
+    /**
+     * @return true if stateFile was saved with the same fingerprint and every saved output still exists with the same size
+     */
+    public static boolean isUpToDate(File stateFile, String fingerprint) throws Exception {
+        if (!stateFile.isFile()) {
+            return false;
+        }
+        Properties state = new Properties();
+        InputStream in = new FileInputStream(stateFile);
+        try {
+            state.load(in);
+        } finally {
+            IOUtil.close(in);
+        }
+        if (!fingerprint.equals(state.getProperty(KEY_FINGERPRINT))) {
+            return false;
+        }
+        for (String key : state.stringPropertyNames()) {
+            if (key.startsWith(KEY_OUTPUT)) {
+                File output = new File(key.substring(KEY_OUTPUT.length()));
+                if (!output.isFile() || (output.length() != Long.parseLong(state.getProperty(key)))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public static void writeState(File stateFile, String fingerprint, Collection<File> outputs) throws Exception {
+        Properties state = new Properties();
+        state.setProperty(KEY_FINGERPRINT, fingerprint);
+        for (File output : outputs) {
+            if (output.isFile()) {
+                state.setProperty(KEY_OUTPUT + output.getAbsolutePath(), String.valueOf(output.length()));
+            }
+        }
+        stateFile.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(stateFile);
+        try {
+            state.store(out, "yuicompressor-maven-plugin state, used to skip the execution when nothing changed");
+        } finally {
+            IOUtil.close(out);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Options of the YUI Compressor applied to one source (js or css), same meaning as the parameters of the compress goal
+ * (munge is the opposite of nomunge).
+ */
+public class CompressionOptions {
+    public final int linebreakpos;
+    public final boolean munge;
+    public final boolean jswarn;
+    public final boolean preserveAllSemiColons;
+    public final boolean disableOptimizations;
+
+    public CompressionOptions(int linebreakpos, boolean munge, boolean jswarn, boolean preserveAllSemiColons, boolean disableOptimizations) {
+        this.linebreakpos = linebreakpos;
+        this.munge = munge;
+        this.jswarn = jswarn;
+        this.preserveAllSemiColons = preserveAllSemiColons;
+        this.disableOptimizations = disableOptimizations;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(linebreakpos);
+        out.writeBoolean(munge);
+        out.writeBoolean(jswarn);
+        out.writeBoolean(preserveAllSemiColons);
+        out.writeBoolean(disableOptimizations);
+    }
+
+    public static CompressionOptions readFrom(DataInput in) throws IOException {
+        return new CompressionOptions(in.readInt(), in.readBoolean(), in.readBoolean(), in.readBoolean(), in.readBoolean());
+    }
+
+    /**
+     * @return a stable representation, usable as (part of) a cache key
+     */
+    @Override
+    public String toString() {
+        return "linebreakpos=" + linebreakpos
+                + ",munge=" + munge
+                + ",jswarn=" + jswarn
+                + ",preserveAllSemiColons=" + preserveAllSemiColons
+                + ",disableOptimizations=" + disableOptimizations;
+    }
+}
@@ -0,0 +1,501 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Long-lived local process that keeps the compressors warm (loaded and JIT compiled) between maven invocations.
+ *
+ * It listens on a loopback port and handles batches of sources sent by {@link CompressorDaemonClient}.
+ * Results are kept in memory (bounded), so the same source compressed with the same options is only processed once.
+ * The daemon stops itself when it stays idle (no connection) during the idle timeout.
+ *
+ * Only processes of the user can use it : at startup the daemon writes a random token into a file readable only by the user
+ * (see {@link #tokenFile(int)}), and every connection starts by a mutual challenge (HMAC of a random nonce with the token,
+ * the token itself is never sent), so a client doesn't trust a process that took the port first, and the daemon
+ * doesn't serve (nor stop for) a process that can't read the token. Then the client and the daemon exchange their version
+ * (plugin and compressor) : a daemon of another version only accepts to stop. Lengths sent by the peer are bounded.
+ *
+ * Usage: java -cp ... net_alchim31_maven_yuicompressor.CompressorDaemon [port [idleTimeoutMinutes [cacheSizeMB]]]
+ * or: java -cp ... net_alchim31_maven_yuicompressor.CompressorDaemon --stop [port]
+ */
+public class CompressorDaemon {
+    static final int DEFAULT_PORT = 17531;
+    static final int PROTOCOL_VERSION = 2;
+    static final int CMD_COMPRESS = 1;
+    static final int CMD_STOP = 2;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    static final String VERSION = pluginVersion() + "/" + CompressorEngine.CACHE_KEY_VERSION;
+    static final int MAX_BYTES = 256 * 1024 * 1024;
+    static final int MAX_COUNT = 100000;
+    static final int HANDSHAKE_TIMEOUT = 10 * 1000;
+    private static final int NONCE_LENGTH = 32;
+
+    private final int port_;
+    private final long idleTimeout_;
+    private final File tokenFile_;
+    private final String version_;
+    private final SizedLruCache<String, Result> cache_;
+    private final AtomicInteger activeConnections_ = new AtomicInteger();
+    private volatile boolean stopped_ = false;
+    private volatile ServerSocket server_;
+    private byte[] token_;
+
+    public CompressorDaemon(int port, long idleTimeout, long cacheSize) {
+        this(port, idleTimeout, cacheSize, tokenFile(port), VERSION);
+    }
+
+    CompressorDaemon(int port, long idleTimeout, long cacheSize, File tokenFile, String version) {
+        port_ = port;
+        idleTimeout_ = idleTimeout;
+        tokenFile_ = tokenFile;
+        version_ = version;
+        cache_ = new SizedLruCache<String, Result>(cacheSize, new SizedLruCache.Weigher<Result>() {
+            public long weigh(Result value) {
+                return value.size();
+            }
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        if ((args.length > 0) && "--stop".equals(args[0])) {
+            int port = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+            CompressorDaemonClient client = CompressorDaemonClient.connect(port, 1000, tokenFile(port));
+            if (client != null) {
+                client.stopDaemon();
+            }
+            return;
+        }
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long idleTimeout = ((args.length > 1) ? Long.parseLong(args[1]) : 180L) * 60 * 1000;
+        long cacheSize = ((args.length > 2) ? Long.parseLong(args[2]) : 64L) * 1024 * 1024;
+        new CompressorDaemon(port, idleTimeout, cacheSize).run();
+    }
+
+    /**
+     * @return the file of the token of the daemon listening on port, in the home directory of the user
+     */
+    static File tokenFile(int port) {
+        return new File(new File(System.getProperty("user.home"), ".yuicompressor"), "daemon-" + port + ".token");
+    }
+
+    /**
+     * Serve until the idle timeout or a stop request.
+     */
+    public void run() throws Exception {
+        ServerSocket server = new ServerSocket(port_, 50, InetAddress.getLoopbackAddress());
+        server_ = server;
+        ExecutorService connections = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                // a stop request ends the process, even with connections in progress
+                Thread back = new Thread(r, "yuicompressor-daemon-connection");
+                back.setDaemon(true);
+                return back;
+            }
+        });
+        try {
+            token_ = writeToken(tokenFile_);
+            server.setSoTimeout((int) Math.min(Integer.MAX_VALUE, idleTimeout_));
+            log("listening on " + server.getLocalSocketAddress() + ", version " + version_);
+            while (!stopped_) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException exc) {
+                    if (activeConnections_.get() == 0) {
+                        log("idle timeout reached, stop");
+                        return;
+                    }
+                    continue;
+                } catch (SocketException exc) {
+                    if (stopped_) {
+                        // closed by a stop request
+                        return;
+                    }
+                    throw exc;
+                }
+                activeConnections_.incrementAndGet();
+                connections.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            serve(socket);
+                        } catch (EOFException exc) {
+                            // client closed the connection
+                        } catch (Exception exc) {
+                            log("connection failed : " + exc);
+                        } finally {
+                            activeConnections_.decrementAndGet();
+                            close(socket);
+                        }
+                    }
+                });
+            }
+        } finally {
+            connections.shutdownNow();
+            server.close();
+        }
+    }
+
+    private void serve(Socket socket) throws Exception {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+        int protocol = in.readInt();
+        if (protocol != PROTOCOL_VERSION) {
+            throw new IOException("unsupported protocol version : " + protocol);
+        }
+        byte[] clientNonce = readBytes(in, NONCE_LENGTH);
+        byte[] nonce = newNonce();
+        writeBytes(out, hmac(token_, "daemon", clientNonce));
+        writeBytes(out, nonce);
+        out.flush();
+        if (!MessageDigest.isEqual(hmac(token_, "client", nonce), readBytes(in, NONCE_LENGTH))) {
+            throw new IOException("client not authenticated");
+        }
+        String clientVersion = in.readUTF();
+        out.writeUTF(version_);
+        out.flush();
+        boolean compatible = version_.equals(clientVersion);
+        socket.setSoTimeout(0);
+        while (true) {
+            int cmd = in.readInt();
+            if (cmd == CMD_STOP) {
+                log("stop requested");
+                stop();
+                return;
+            }
+            if ((cmd != CMD_COMPRESS) || !compatible) {
+                throw new IOException("unsupported command " + cmd + " from client version " + clientVersion);
+            }
+            CompressionOptions options = CompressionOptions.readFrom(in);
+            CompressorEngine engine = new CompressorEngine(options, in.readLong());
+            int nb = readCount(in);
+            List<Result> results = new ArrayList<>(nb);
+            for (int i = 0; i < nb; i++) {
+                String extension = in.readUTF();
+                byte[] source = readBytes(in, MAX_BYTES);
+                results.add(compress(engine, extension, source));
+            }
+            out.writeInt(results.size());
+            for (Result result : results) {
+                result.writeTo(out);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Stop accepting connections, {@link #run()} returns (the connections in progress are closed).
+     */
+    public void stop() {
+        stopped_ = true;
+        ServerSocket server = server_;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException exc) {
+                // ignore
+            }
+        }
+    }
+
+    private Result compress(final CompressorEngine engine, final String extension, final byte[] source) throws Exception {
+        return cache_.get(engine.cacheKey(extension, UTF8.name(), source), new Callable<Result>() {
+            public Result call() throws Exception {
+                RecordingErrorReporter reporter = new RecordingErrorReporter();
+                byte[] output = null;
+                try {
+                    output = engine.compress(extension, new String(source, UTF8), reporter).getBytes(UTF8);
+                } catch (EvaluatorException exc) {
+                    // already recorded as an error
+                }
+                return new Result(output, reporter.messages);
+            }
+        });
+    }
+
+    private static void log(String msg) {
+        System.out.println("[yuicompressor-daemon] " + msg);
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException exc) {
+            // ignore
+        }
+    }
+
+    static void writeBytes(DataOutput out, byte[] v) throws IOException {
+        if (v == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(v.length);
+            out.write(v);
+        }
+    }
+
+    /**
+     * @param max max length accepted (the length is sent by the peer)
+     */
+    static byte[] readBytes(DataInput in, int max) throws IOException {
+        int len = in.readInt();
+        if (len == -1) {
+            return null;
+        }
+        if ((len < 0) || (len > max)) {
+            throw new IOException("invalid length : " + len + " (max " + max + ")");
+        }
+        byte[] back = new byte[len];
+        in.readFully(back);
+        return back;
+    }
+
+    static int readCount(DataInput in) throws IOException {
+        int nb = in.readInt();
+        if ((nb < 0) || (nb > MAX_COUNT)) {
+            throw new IOException("invalid count : " + nb + " (max " + MAX_COUNT + ")");
+        }
+        return nb;
+    }
+
+    static void writeString(DataOutput out, String v) throws IOException {
+        writeBytes(out, (v == null) ? null : v.getBytes(UTF8));
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] v = readBytes(in, MAX_BYTES);
+        return (v == null) ? null : new String(v, UTF8);
+    }
+
+    static byte[] newNonce() {
+        byte[] back = new byte[NONCE_LENGTH];
+        new SecureRandom().nextBytes(back);
+        return back;
+    }
+
+    /**
+     * @param role who proves it knows the token ("daemon" or "client"), so an answer can't be replayed for the other side
+     */
+    static byte[] hmac(byte[] token, String role, byte[] nonce) throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(token, "HmacSHA256"));
+            mac.update(role.getBytes(UTF8));
+            return mac.doFinal(nonce);
+        } catch (Exception exc) {
+            throw new IOException("hmac failed : " + exc, exc);
+        }
+    }
+
+    /**
+     * Write a new random token into file, readable and writable only by the owner (replaced atomically).
+     */
+    static byte[] writeToken(File file) throws IOException {
+        byte[] token = newNonce();
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir);
+        }
+        Path tmp = new File(dir, file.getName() + "." + System.nanoTime() + ".tmp").toPath();
+        if (isPosix()) {
+            Files.createFile(tmp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(tmp);
+            File f = tmp.toFile();
+            f.setReadable(false, false);
+            f.setWritable(false, false);
+            f.setReadable(true, true);
+            f.setWritable(true, true);
+        }
+        try {
+            Files.write(tmp, OutputFiles.toHex(token).getBytes(UTF8));
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return token;
+    }
+
+    /**
+     * @return the token in file, or null if there is none or if it is readable by other users (it can't be trusted)
+     */
+    static byte[] readToken(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        if (isPosix()) {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file.toPath());
+            for (PosixFilePermission p : permissions) {
+                if (!p.name().startsWith("OWNER_")) {
+                    return null;
+                }
+            }
+            if (!Files.getOwner(file.toPath()).getName().equals(System.getProperty("user.name"))) {
+                return null;
+            }
+        }
+        String hex = new String(Files.readAllBytes(file.toPath()), UTF8).trim();
+        byte[] back = new byte[hex.length() / 2];
+        for (int i = 0; i < back.length; i++) {
+            back[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return back;
+    }
+
+    private static boolean isPosix() {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    }
+
+    /**
+     * @return the version of the plugin, the last modification of its jar for a snapshot
+     */
+    private static String pluginVersion() {
+        String back = "unknown";
+        try {
+            InputStream in = CompressorDaemon.class.getResourceAsStream("/META-INF/maven/net.alchim31.maven/yuicompressor-maven-plugin/pom.properties");
+            if (in != null) {
+                try {
+                    Properties props = new Properties();
+                    props.load(in);
+                    back = props.getProperty("version", back);
+                } finally {
+                    in.close();
+                }
+            }
+            if (back.endsWith("-SNAPSHOT") || "unknown".equals(back)) {
+                URL location = CompressorDaemon.class.getProtectionDomain().getCodeSource().getLocation();
+                back += "@" + new File(location.toURI()).lastModified();
+            }
+        } catch (Exception exc) {
+            // keep what is known
+        }
+        return back;
+    }
+
+    /**
+     * A warning or an error reported by the compressor.
+     */
+    static class Message {
+        final boolean error;
+        final String message;
+        final String sourceName;
+        final int line;
+        final String lineSource;
+        final int lineOffset;
+
+        Message(boolean error, String message, String sourceName, int line, String lineSource, int lineOffset) {
+            this.error = error;
+            this.message = message;
+            this.sourceName = sourceName;
+            this.line = line;
+            this.lineSource = lineSource;
+            this.lineOffset = lineOffset;
+        }
+
+        void replay(ErrorReporter reporter) {
+            if (error) {
+                reporter.error(message, sourceName, line, lineSource, lineOffset);
+            } else {
+                reporter.warning(message, sourceName, line, lineSource, lineOffset);
+            }
+        }
+    }
+
+    /**
+     * Output of the compression of one source, null output means the compression failed.
+     */
+    static class Result {
+        final byte[] output;
+        final List<Message> messages;
+
+        Result(byte[] output, List<Message> messages) {
+            this.output = output;
+            this.messages = messages;
+        }
+
+        long size() {
+            return ((output == null) ? 0 : output.length) + 64L * messages.size();
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            writeBytes(out, output);
+            out.writeInt(messages.size());
+            for (Message m : messages) {
+                out.writeBoolean(m.error);
+                writeString(out, m.message);
+                writeString(out, m.sourceName);
+                out.writeInt(m.line);
+                writeString(out, m.lineSource);
+                out.writeInt(m.lineOffset);
+            }
+        }
+
+        static Result readFrom(DataInput in) throws IOException {
+            byte[] output = readBytes(in, MAX_BYTES);
+            int nb = readCount(in);
+            List<Message> messages = new ArrayList<>(nb);
+            for (int i = 0; i < nb; i++) {
+                messages.add(new Message(in.readBoolean(), readString(in), readString(in), in.readInt(), readString(in), in.readInt()));
+            }
+            return new Result(output, messages);
+        }
+    }
+
+    /**
+     * Record every message, so they could be replayed by the client on its own reporter.
+     */
+    static class RecordingErrorReporter implements ErrorReporter {
+        final List<Message> messages = new ArrayList<>();
+
+        public void warning(String message, String sourceName, int line, String lineSource, int lineOffset) {
+            messages.add(new Message(false, message, sourceName, line, lineSource, lineOffset));
+        }
+
+        public void error(String message, String sourceName, int line, String lineSource, int lineOffset) {
+            messages.add(new Message(true, message, sourceName, line, lineSource, lineOffset));
+        }
+
+        public EvaluatorException runtimeError(String message, String sourceName, int line, String lineSource, int lineOffset) {
+            error(message, sourceName, line, lineSource, lineOffset);
+            throw new EvaluatorException(message, sourceName, line, lineSource, lineOffset);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package net_alchim31_maven_yuicompressor;
+
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+import org.codehaus.plexus.util.IOUtil;
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Connection to a {@link CompressorDaemon}, used by the mojo to compress sources out of process.
+ * The connection is only established with a daemon that proves it knows the token of the user (see {@link CompressorDaemon}).
+ */
+class CompressorDaemonClient {
+    private final Socket socket_;
+    private final DataInputStream in_;
+    private final DataOutputStream out_;
+    private String daemonVersion_;
+
+    private CompressorDaemonClient(Socket socket) throws IOException {
+        socket_ = socket;
+        in_ = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out_ = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * @return a connected client or null if no daemon listen on port
+     */
+    public static CompressorDaemonClient connect(int port, int timeout) {
+        return connect(port, timeout, CompressorDaemon.tokenFile(port));
+    }
+
+    /**
+     * @return a client connected to an authenticated daemon (of any version, see {@link #isCompatible()}),
+     * or null if no daemon listen on port, or if it doesn't know the token of tokenFile
+     */
+    public static CompressorDaemonClient connect(int port, int timeout, File tokenFile) {
+        Socket socket = new Socket();
+        try {
+            byte[] token = CompressorDaemon.readToken(tokenFile);
+            if (token == null) {
+                socket.close();
+                return null;
+            }
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), timeout);
+            CompressorDaemonClient back = new CompressorDaemonClient(socket);
+            back.handshake(token);
+            return back;
+        } catch (IOException exc) {
+            try {
+                socket.close();
+            } catch (IOException exc2) {
+                // ignore
+            }
+            return null;
+        }
+    }
+
+    private void handshake(byte[] token) throws IOException {
+        socket_.setSoTimeout(CompressorDaemon.HANDSHAKE_TIMEOUT);
+        byte[] nonce = CompressorDaemon.newNonce();
+        out_.writeInt(CompressorDaemon.PROTOCOL_VERSION);
+        CompressorDaemon.writeBytes(out_, nonce);
+        out_.flush();
+        byte[] proof = CompressorDaemon.readBytes(in_, nonce.length);
+        if (!MessageDigest.isEqual(CompressorDaemon.hmac(token, "daemon", nonce), proof)) {
+            throw new IOException("daemon not authenticated");
+        }
+        byte[] daemonNonce = CompressorDaemon.readBytes(in_, nonce.length);
+        CompressorDaemon.writeBytes(out_, CompressorDaemon.hmac(token, "client", daemonNonce));
+        out_.writeUTF(CompressorDaemon.VERSION);
+        out_.flush();
+        daemonVersion_ = in_.readUTF();
+        socket_.setSoTimeout(0);
+    }
+
+    public String getDaemonVersion() {
+        return daemonVersion_;
+    }
+
+    /**
+     * @return true if the daemon runs the same version of the plugin and compressor (else it only accepts {@link #stopDaemon()})
+     */
+    public boolean isCompatible() {
+        return CompressorDaemon.VERSION.equals(daemonVersion_);
+    }
+
+    /**
+     * Start a daemon in a separate (detached) jvm, then wait until it accepts connections.
+     *
+     * @return a connected client or null if the daemon can't be reached before the timeout
+     */
+    public static CompressorDaemonClient startAndConnect(int port, long timeout, File logFile) throws Exception {
+        File tokenFile = CompressorDaemon.tokenFile(port);
+        long previousToken = tokenFile.lastModified();
+        List<String> cmd = new ArrayList<>();
+        cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+        cmd.add("-cp");
+        cmd.add(daemonClasspath());
+        cmd.add(CompressorDaemon.class.getName());
+        cmd.add(String.valueOf(port));
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+        pb.start();
+        long end = System.currentTimeMillis() + timeout;
+        while (System.currentTimeMillis() < end) {
+            // wait for the token of the new daemon
+            CompressorDaemonClient back = (tokenFile.lastModified() != previousToken) ? connect(port, 500, tokenFile) : null;
+            if ((back != null) && back.isCompatible()) {
+                return back;
+            }
+            if (back != null) {
+                back.close();
+            }
+            Thread.sleep(100);
+        }
+        return null;
+    }
+
+    private static String daemonClasspath() throws Exception {
+        Set<String> entries = new LinkedHashSet<>();
+        for (Class<?> clazz : new Class<?>[]{CompressorDaemon.class, JavaScriptCompressor.class, ErrorReporter.class, IOUtil.class}) {
+            entries.add(new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath());
+        }
+        StringBuilder back = new StringBuilder();
+        for (String entry : entries) {
+            if (back.length() > 0) {
+                back.append(File.pathSeparatorChar);
+            }
+            back.append(entry);
+        }
+        return back.toString();
+    }
+
+    /**
+     * Compress a batch of sources, messages are replayed on reporter.
+     *
+     * @return the outputs (same order as sources)
+     * @throws EvaluatorException if the compression of a source failed (after every message was reported)
+     */
+    public List<String> compress(CompressionOptions options, long cssParallelThreshold, List<String> extensions, List<String> sources, ErrorReporter reporter) throws IOException {
+        out_.writeInt(CompressorDaemon.CMD_COMPRESS);
+        options.writeTo(out_);
+        out_.writeLong(cssParallelThreshold);
+        out_.writeInt(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            out_.writeUTF(extensions.get(i));
+            CompressorDaemon.writeBytes(out_, sources.get(i).getBytes(CompressorDaemon.UTF8));
+        }
+        out_.flush();
+        int nb = CompressorDaemon.readCount(in_);
+        List<String> back = new ArrayList<>(nb);
+        CompressorDaemon.Message failure = null;
+        for (int i = 0; i < nb; i++) {
+            CompressorDaemon.Result result = CompressorDaemon.Result.readFrom(in_);
+            for (CompressorDaemon.Message m : result.messages) {
+                m.replay(reporter);
+                if (m.error) {
+                    failure = m;
+                }
+            }
+            back.add((result.output == null) ? null : new String(result.output, CompressorDaemon.UTF8));
+            if ((result.output == null) && (failure == null)) {
+                failure = new CompressorDaemon.Message(true, "compression failed in daemon", null, -1, null, -1);
+            }
+        }
+        if (back.contains(null)) {
+            throw new EvaluatorException(failure.message, failure.sourceName, failure.line, failure.lineSource, failure.lineOffset);
+        }
+        return back;
+    }
+
+    public void stopDaemon() throws IOException {
+        try {
+            out_.writeInt(CompressorDaemon.CMD_STOP);
+            out_.flush();
+        } finally {
+            close();
+        }
+    }
+
+    public void close() {
+        try {
+            socket_.close();
+        } catch (IOException exc) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package net_alchim31_maven_yuicompressor;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+import org.codehaus.plexus.util.IOUtil;
+import org.mozilla.javascript.ErrorReporter;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Compress js and css sources with YUI Compressor, and json, svg, html and jsp sources with the {@link Minifier} of their type,
+ * without dependency on maven (used by the mojo, the daemon and the servlet filter).
+ * An engine is immutable and could be shared by threads, eg: to minify sources at runtime in an other kind of server
+ * than a servlet container :
+ * <pre>
+ * CompressorEngine engine = new CompressorEngine(new CompressionOptions(-1, true, false, false, false), -1);
+ * if (CompressorEngine.accept(".js")) {
+ *     String minified = engine.compress(".js", source, reporter);
+ * }
+ * </pre>
+ * Errors and warnings are sent to the ErrorReporter (a js syntax error is also thrown as an EvaluatorException),
+ * the content is exchanged as text : decoding and encoding with the charset of the sources is left to the caller.
+ */
+public class CompressorEngine {
+    private static final int MIN_CSS_CHUNK_SIZE = 64 * 1024;
+    static final String CACHE_KEY_VERSION = "yuicompressor-2.4.7/2";
+    private static final Map<String, Minifier> MINIFIERS = new HashMap<String, Minifier>();
+
+    static {
+        MINIFIERS.put(".json", new JsonMinifier());
+        MINIFIERS.put(".svg", new SvgMinifier());
+        Minifier html = new HtmlMinifier();
+        MINIFIERS.put(".html", html);
+        MINIFIERS.put(".htm", html);
+        MINIFIERS.put(".jsp", html);
+    }
+
+    private final CompressionOptions options_;
+    private final long cssParallelThreshold_;
+
+    /**
+     * @param cssParallelThreshold size from which a stylesheet is compressed by chunks in parallel (negative to disable)
+     */
+    public CompressorEngine(CompressionOptions options, long cssParallelThreshold) {
+        options_ = options;
+        cssParallelThreshold_ = cssParallelThreshold;
+    }
+
+    public CompressionOptions getOptions() {
+        return options_;
+    }
+
+    /**
+     * @return true if extension (eg: ".js") is a type of source managed by the engine
+     */
+    public static boolean accept(String extension) {
+        return ".js".equalsIgnoreCase(extension) || ".css".equalsIgnoreCase(extension) || MINIFIERS.containsKey(extension.toLowerCase());
+    }
+
+    /**
+     * @return a key that identifies the output of the compression of source (raw content) with the options of the engine
+     */
+    public String cacheKey(String extension, String encoding, byte[] source) throws Exception {
+        return OutputFiles.toHex(OutputFiles.digest(cacheKeyPrefix(extension, encoding), source));
+    }
+
+    /**
+     * Same key as {@link #cacheKey(String, String, byte[])} for the content of source, hashed without loading it in memory.
+     */
+    public String cacheKey(String extension, String encoding, File source) throws Exception {
+        return OutputFiles.toHex(OutputFiles.digest(cacheKeyPrefix(extension, encoding), source));
+    }
+
+    private byte[] cacheKeyPrefix(String extension, String encoding) throws Exception {
+        return (CACHE_KEY_VERSION + "|" + options_ + "|" + extension.toLowerCase() + "|" + encoding + "|").getBytes("UTF-8");
+    }
+
+    /**
+     * @param extension type of source, eg: ".js" (see {@link #accept(String)})
+     * @return the compressed source, an empty string if the extension is not supported
+     */
+    public String compress(String extension, String source, ErrorReporter reporter) throws Exception {
+        StringWriter out = new StringWriter(source.length() / 2 + 16);
+        compress(extension, new StringReader(source), out, source.length(), reporter);
+        return out.toString();
+    }
+
+    /**
+     * Nothing is written if the extension is not supported.
+     *
+     * @param size size of the input, if known (used to select the css strategy)
+     */
+    public void compress(String extension, Reader in, Writer out, long size, ErrorReporter reporter) throws Exception {
+        if (".js".equalsIgnoreCase(extension)) {
+            JavaScriptCompressor compressor = new JavaScriptCompressor(in, reporter);
+            compressor.compress(out, options_.linebreakpos, options_.munge, options_.jswarn, options_.preserveAllSemiColons, options_.disableOptimizations);
+        } else if (".css".equalsIgnoreCase(extension)) {
+            compressCss(in, out, size);
+        } else if (MINIFIERS.containsKey(extension.toLowerCase())) {
+            out.write(MINIFIERS.get(extension.toLowerCase()).minify(IOUtil.toString(in), reporter));
+        }
+    }
+
+    private void compressCss(Reader in, Writer out, long size) throws Exception {
+        try {
+            if ((cssParallelThreshold_ >= 0) && (size >= cssParallelThreshold_)) {
+                compressCssInParallel(IOUtil.toString(in), out);
+            } else {
+                CssCompressor compressor = new CssCompressor(in);
+                compressor.compress(out, options_.linebreakpos);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "Unexpected characters found in CSS file. Ensure that the CSS file does not contain '$', and try again", e);
+        }
+    }
+
+    /**
+     * Compress a stylesheet by chunks while it is read, with a memory bounded by the size of a few chunks
+     * (see {@link StreamingCssCompressor}), for stylesheets too large to be loaded as a whole.
+     *
+     * @return false if the stylesheet must be compressed in one pass (what was written to out must be discarded)
+     */
+    public boolean compressCssStream(Reader in, Writer out) throws Exception {
+        if (options_.linebreakpos >= 0) {
+            return false;
+        }
+        ExecutorService executor = SharedExecutor.newLane();
+        try {
+            return new StreamingCssCompressor(executor, MIN_CSS_CHUNK_SIZE, SharedExecutor.getThreadCnt() + 1).compress(in, out);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "Unexpected characters found in CSS file. Ensure that the CSS file does not contain '$', and try again", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void compressCssInParallel(String css, Writer out) throws Exception {
+        ExecutorService executor = SharedExecutor.newLane();
+        try {
+            int chunkSize = Math.max(MIN_CSS_CHUNK_SIZE, css.length() / SharedExecutor.getThreadCnt());
+            new ParallelCssCompressor(executor, chunkSize).compress(css, out, options_.linebreakpos);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replace the url() references to small images of a stylesheet by data URIs, to save a request per image.
+ *
+ * References are resolved relative to the directory of the stylesheet, or to the root directory for absolute paths (eg: "/img/a.png").
+ * Remote urls, urls with a query or a fragment, non image files and images bigger than the max size are kept.
+ * Images referenced more than maxReferences times by the same stylesheet are kept too, the stylesheet would grow
+ * by the size of the image for every reference.
+ * Encoded images are cached, so images shared by several stylesheets are read and encoded once.
+ */
+class CssImageInliner {
+    private static final Pattern URL = Pattern.compile("url\\(\\s*(['\"]?)([^'\")]+?)\\1\\s*\\)");
+    private static final Map<String, String> MIME_TYPES = new HashMap<String, String>();
+
+    static {
+        MIME_TYPES.put("png", "image/png");
+        MIME_TYPES.put("gif", "image/gif");
+        MIME_TYPES.put("jpg", "image/jpeg");
+        MIME_TYPES.put("jpeg", "image/jpeg");
+        MIME_TYPES.put("svg", "image/svg+xml");
+        MIME_TYPES.put("webp", "image/webp");
+        MIME_TYPES.put("ico", "image/x-icon");
+    }
+
+    private final long maxImageSize_;
+    private final int maxReferences_;
+    private final Map<File, String> dataUris_ = new ConcurrentHashMap<File, String>();
+    private int inlinedCnt_ = 0;
+
+    /**
+     * @param maxImageSize max size (in bytes) of an image to inline
+     * @param maxReferences max number of references to the same image in a stylesheet to inline it
+     */
+    public CssImageInliner(long maxImageSize, int maxReferences) {
+        maxImageSize_ = maxImageSize;
+        maxReferences_ = maxReferences;
+    }
+
+    /**
+     * @return the number of references replaced since the creation of the inliner
+     */
+    public int getInlinedCnt() {
+        return inlinedCnt_;
+    }
+
+    /**
+     * @param cssFile the stylesheet (used to resolve relative references)
+     * @param rootDir the directory used to resolve absolute references, null to keep them
+     * @return css with the references to small images replaced by data URIs
+     */
+    public String inline(String css, File cssFile, File rootDir) throws Exception {
+        Map<File, Integer> references = new HashMap<File, Integer>();
+        for (File image : listImages(css, cssFile, rootDir)) {
+            Integer nb = references.get(image);
+            references.put(image, (nb == null) ? 1 : (nb + 1));
+        }
+        if (references.isEmpty()) {
+            return css;
+        }
+        Matcher m = URL.matcher(css);
+        StringBuffer back = new StringBuffer(css.length());
+        while (m.find()) {
+            File image = resolve(m.group(2), cssFile, rootDir);
+            String replacement = m.group();
+            if ((image != null) && (references.get(image) <= maxReferences_) && (image.length() <= maxImageSize_)) {
+                replacement = "url(\"" + toDataUri(image) + "\")";
+                inlinedCnt_++;
+            }
+            m.appendReplacement(back, Matcher.quoteReplacement(replacement));
+        }
+        m.appendTail(back);
+        return back.toString();
+    }
+
+    /**
+     * @return every local image referenced by css (once per reference)
+     */
+    public static List<File> listImages(String css, File cssFile, File rootDir) throws Exception {
+        List<File> back = new ArrayList<File>();
+        Matcher m = URL.matcher(css);
+        while (m.find()) {
+            File image = resolve(m.group(2), cssFile, rootDir);
+            if (image != null) {
+                back.add(image);
+            }
+        }
+        return back;
+    }
+
+    private static File resolve(String url, File cssFile, File rootDir) throws Exception {
+        url = url.trim();
+        if ((url.indexOf(':') > -1) || url.startsWith("//") || (url.indexOf('?') > -1) || (url.indexOf('#') > -1)) {
+            return null;
+        }
+        int sep = url.lastIndexOf('.');
+        if ((sep < 0) || !MIME_TYPES.containsKey(url.substring(sep + 1).toLowerCase())) {
+            return null;
+        }
+        File back;
+        if (url.startsWith("/")) {
+            if (rootDir == null) {
+                return null;
+            }
+            back = new File(rootDir, url.substring(1));
+        } else {
+            back = new File(cssFile.getParentFile(), url);
+        }
+        back = back.getCanonicalFile();
+        return back.isFile() ? back : null;
+    }
+
+    private String toDataUri(File image) throws Exception {
+        String back = dataUris_.get(image);
+        if (back == null) {
+            String name = image.getName();
+            String mimeType = MIME_TYPES.get(name.substring(name.lastIndexOf('.') + 1).toLowerCase());
+            back = "data:" + mimeType + ";base64," + Base64.getEncoder().encodeToString(OutputFiles.readBytes(image));
+            dataUris_.put(image, back);
+        }
+        return back;
+    }
+}
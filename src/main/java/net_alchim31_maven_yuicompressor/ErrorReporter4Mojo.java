@@ -6,6 +6,8 @@ import org.mozilla.javascript.EvaluatorException;
 import org.sonatype.plexus.build.incremental.BuildContext;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ErrorReporter4Mojo implements ErrorReporter {
 
@@ -16,6 +18,8 @@ public class ErrorReporter4Mojo implements ErrorReporter {
     private int errorCnt_;
     private BuildContext buildContext_;
     private File sourceFile_;
+    private final List<String> errors_ = new ArrayList<String>();
+    private final List<String> warnings_ = new ArrayList<String>();
 
     public ErrorReporter4Mojo(Log log, boolean jswarn, BuildContext buildContext) {
         log_ = log;
@@ -42,6 +46,7 @@ public class ErrorReporter4Mojo implements ErrorReporter {
         String fullMessage = newMessage(message, sourceName, line, lineSource, lineOffset);
         buildContext_.addMessage(sourceFile_, line, lineOffset, message, BuildContext.SEVERITY_ERROR, null);
         log_.error(fullMessage);
+        errors_.add(newSummaryLine(message, sourceName, line, lineOffset));
         errorCnt_++;
     }
 
@@ -55,10 +60,35 @@ public class ErrorReporter4Mojo implements ErrorReporter {
             String fullMessage = newMessage(message, sourceName, line, lineSource, lineOffset);
             buildContext_.addMessage(sourceFile_, line, lineOffset, message, BuildContext.SEVERITY_WARNING, null);
             log_.warn(fullMessage);
+            warnings_.add(newSummaryLine(message, sourceName, line, lineOffset));
             warningCnt_++;
         }
     }
 
+    /**
+     * @param maxLines max number of errors and warnings listed (the others are only counted)
+     * @return the errors then the warnings reported so far, one per line
+     */
+    public String getSummary(int maxLines) {
+        StringBuilder back = new StringBuilder();
+        back.append(String.format("%d error(s), %d warning(s)", errorCnt_, warningCnt_));
+        List<String> lines = new ArrayList<String>(errors_);
+        lines.addAll(warnings_);
+        for (int i = 0; i < lines.size(); i++) {
+            if (i == maxLines) {
+                back.append("\n  ... (").append(lines.size() - maxLines).append(" more, see log)");
+                break;
+            }
+            back.append("\n  ").append(lines.get(i));
+        }
+        return back.toString();
+    }
+
+    private String newSummaryLine(String message, String sourceName, int line, int lineOffset) {
+        String file = (sourceFile_ != null) ? sourceFile_.getPath() : ((sourceName == null) || (sourceName.length() == 0)) ? defaultFilename_ : sourceName;
+        return String.format("%s [%d:%d]: %s", file, line, lineOffset, ((message != null) && (message.length() != 0)) ? message : "unknown error");
+    }
+
     private String newMessage(String message, String sourceName, int line, String lineSource, int lineOffset) {
         StringBuilder back = new StringBuilder();
         if ((sourceName == null) || (sourceName.length() == 0)) {
@@ -0,0 +1,346 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Stages around the compression of the sources, so the I/O (slow disks, network file systems) overlaps the compression :
+ * reader threads read the next sources ahead (in the order they will be processed), a writer thread publishes the outputs
+ * (rename, gzip, declaration,...) in the order they were submitted, and the mojo thread compresses one source at a time
+ * (so errors are reported in order, and fail fast stops at the same file as without pipeline).
+ *
+ * Both sides are bounded by depth (sources read and not taken yet, outputs waiting to be written) : a full stage blocks
+ * its producer. The sources read ahead also hold their size in {@link SharedExecutor#tryAcquireBytes(long)} until they are
+ * taken, a source that doesn't fit is left to the mojo thread. Every stage records its busy time and the time the mojo thread waited for it (see {@link #getSummary()}).
+ * The compression threads are the ones of {@link SharedExecutor}, the threads of the pipeline only wait for I/O.
+ */
+class FilePipeline {
+    private static final int READER_CNT = 2;
+
+    private final int depth_;
+    private final long startTime_ = System.nanoTime();
+    private final Stage read_ = new Stage("read", READER_CNT);
+    private final Stage write_ = new Stage("write", 1);
+    private final List<Thread> threads_ = new ArrayList<Thread>();
+
+    // guarded by this
+    private final LinkedList<Prefetch> prefetches_ = new LinkedList<Prefetch>();
+    private int readAheadCnt_ = 0;
+    private final LinkedList<Callable<?>> writes_ = new LinkedList<Callable<?>>();
+    private boolean writing_ = false;
+    private Exception writeFailure_ = null;
+    private boolean closed_ = false;
+
+    /**
+     * @param depth max number of sources read ahead, and of outputs waiting to be written
+     */
+    public FilePipeline(int depth) {
+        depth_ = Math.max(1, depth);
+        for (int i = 0; i < READER_CNT; i++) {
+            threads_.add(new Thread(new Runnable() {
+                public void run() {
+                    readLoop();
+                }
+            }, "yuicompressor-read"));
+        }
+        threads_.add(new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "yuicompressor-write"));
+        for (Thread thread : threads_) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Schedule the read of file, files must be scheduled in the order they will be taken.
+     */
+    public synchronized void prefetch(File file) {
+        prefetches_.add(new Prefetch(file.getAbsoluteFile()));
+        notifyAll();
+    }
+
+    /**
+     * The files scheduled before file and not taken are dropped (sources skipped by the mojo).
+     *
+     * @return the content of file, or null if it was not read ahead (not scheduled, or the read failed : the caller reads
+     * it again and reports the error)
+     */
+    public byte[] take(File file) throws InterruptedException {
+        File key = file.getAbsoluteFile();
+        long start = System.nanoTime();
+        boolean waited = false;
+        synchronized (this) {
+            int index = 0;
+            for (Prefetch p : prefetches_) {
+                if (p.file.equals(key)) {
+                    break;
+                }
+                index++;
+            }
+            if (index == prefetches_.size()) {
+                return null;
+            }
+            for (int i = 0; i < index; i++) {
+                drop(prefetches_.removeFirst());
+            }
+            Prefetch p = prefetches_.removeFirst();
+            if (p.state == Prefetch.QUEUED) {
+                return null;
+            }
+            while (p.state == Prefetch.READING) {
+                waited = true;
+                wait();
+            }
+            readAheadCnt_--;
+            notifyAll();
+            byte[] content = p.content;
+            release(p);
+            if (content == null) {
+                return null;
+            }
+            read_.item();
+            if (waited) {
+                read_.waited(System.nanoTime() - start);
+            }
+            return content;
+        }
+    }
+
+    // called with this locked
+    private void drop(Prefetch p) {
+        if (p.state == Prefetch.READING) {
+            p.dropped = true;
+        } else if (p.state == Prefetch.DONE) {
+            release(p);
+            readAheadCnt_--;
+            notifyAll();
+        }
+    }
+
+    // called with this locked
+    private void release(Prefetch p) {
+        if (p.content != null) {
+            p.content = null;
+            SharedExecutor.releaseBytes(p.bytes);
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (true) {
+                Prefetch p = null;
+                synchronized (this) {
+                    while (!closed_ && ((readAheadCnt_ >= depth_) || ((p = nextToRead()) == null))) {
+                        wait();
+                    }
+                    if (closed_) {
+                        return;
+                    }
+                    p.state = Prefetch.READING;
+                    readAheadCnt_++;
+                }
+                long start = System.nanoTime();
+                byte[] content = null;
+                long bytes = p.file.length();
+                if (SharedExecutor.tryAcquireBytes(bytes)) {
+                    try {
+                        content = OutputFiles.readBytes(p.file);
+                    } catch (Exception exc) {
+                        // read again by the mojo thread, that reports the error
+                    }
+                    if (content == null) {
+                        SharedExecutor.releaseBytes(bytes);
+                    }
+                }
+                read_.busy(System.nanoTime() - start);
+                synchronized (this) {
+                    p.state = Prefetch.DONE;
+                    p.content = content;
+                    p.bytes = bytes;
+                    if (p.dropped) {
+                        release(p);
+                        readAheadCnt_--;
+                    }
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException exc) {
+            // stop
+        }
+    }
+
+    // called with this locked
+    private Prefetch nextToRead() {
+        for (Prefetch p : prefetches_) {
+            if (p.state == Prefetch.QUEUED) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Queue task to the writer thread (waits while depth outputs are waiting to be written).
+     * Once a task failed, the next ones are skipped and its failure is thrown by the next call (or {@link #flush()}).
+     */
+    public void write(Callable<?> task) throws Exception {
+        long start = System.nanoTime();
+        boolean waited = false;
+        synchronized (this) {
+            while ((writeFailure_ == null) && (writes_.size() >= depth_)) {
+                waited = true;
+                wait();
+            }
+            if (writeFailure_ != null) {
+                throw writeFailure_;
+            }
+            writes_.add(task);
+            notifyAll();
+        }
+        if (waited) {
+            write_.waited(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Wait until every queued task is written.
+     */
+    public void flush() throws Exception {
+        long start = System.nanoTime();
+        synchronized (this) {
+            while ((writeFailure_ == null) && (!writes_.isEmpty() || writing_)) {
+                wait();
+            }
+            if (writeFailure_ != null) {
+                throw writeFailure_;
+            }
+        }
+        write_.waited(System.nanoTime() - start);
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Callable<?> task;
+                synchronized (this) {
+                    while (!closed_ && writes_.isEmpty()) {
+                        wait();
+                    }
+                    if (writes_.isEmpty()) {
+                        return;
+                    }
+                    task = writes_.removeFirst();
+                    writing_ = (writeFailure_ == null);
+                    notifyAll();
+                    if (!writing_) {
+                        continue;
+                    }
+                }
+                long start = System.nanoTime();
+                try {
+                    task.call();
+                    write_.item();
+                } catch (Exception exc) {
+                    synchronized (this) {
+                        writeFailure_ = exc;
+                    }
+                }
+                write_.busy(System.nanoTime() - start);
+                synchronized (this) {
+                    writing_ = false;
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException exc) {
+            // stop
+        }
+    }
+
+    /**
+     * Stop the readers, and wait for the writer to finish the queued tasks (their failures are ignored, see {@link #flush()}).
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            closed_ = true;
+            for (Prefetch p : prefetches_) {
+                drop(p);
+            }
+            prefetches_.clear();
+            notifyAll();
+        }
+        for (Thread thread : threads_) {
+            thread.join();
+        }
+    }
+
+    /**
+     * @return the number of sources read (or being read) ahead and not taken yet
+     */
+    synchronized int getReadAheadCnt() {
+        return readAheadCnt_;
+    }
+
+    /**
+     * @return the activity of the stages, eg: "read: 120 file(s) [busy 35%, compression waited 120 ms], write: ..."
+     */
+    public String getSummary() {
+        long elapsed = Math.max(1, System.nanoTime() - startTime_);
+        return read_.toString(elapsed) + ", " + write_.toString(elapsed);
+    }
+
+    private static class Prefetch {
+        static final int QUEUED = 0;
+        static final int READING = 1;
+        static final int DONE = 2;
+
+        final File file;
+        int state = QUEUED;
+        boolean dropped = false;
+        byte[] content;
+        long bytes;
+
+        Prefetch(File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Activity of the threads of a stage.
+     */
+    private static class Stage {
+        private final String name_;
+        private final int threadCnt_;
+        private int itemCnt_ = 0;
+        private long busyNanos_ = 0;
+        private long waitNanos_ = 0;
+
+        Stage(String name, int threadCnt) {
+            name_ = name;
+            threadCnt_ = threadCnt;
+        }
+
+        synchronized void item() {
+            itemCnt_++;
+        }
+
+        synchronized void busy(long nanos) {
+            busyNanos_ += nanos;
+        }
+
+        synchronized void waited(long nanos) {
+            waitNanos_ += nanos;
+        }
+
+        synchronized String toString(long elapsed) {
+            return String.format(Locale.ROOT, "%s: %d file(s) [busy %d%%, compression waited %d ms]",
+                    name_, itemCnt_, (busyNanos_ * 100) / (elapsed * threadCnt_), waitNanos_ / 1000000);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A task submitted to a lane of {@link SharedExecutor} while the bytes of its input are held with
+ * {@link SharedExecutor#tryAcquireBytes(long)}, or run in the calling thread when they are not available (then nothing is held).
+ * The bytes are released once by {@link #release()}, the only way the stages (archive, zstd, output profiles) submit their work.
+ */
+final class HeldTask<T> {
+    private final Future<T> future_;
+    // guarded by this
+    private long heldBytes_;
+
+    private HeldTask(Future<T> future, long heldBytes) {
+        future_ = future;
+        heldBytes_ = heldBytes;
+    }
+
+    /**
+     * @param bytes the size of the input of task
+     * @param runInline run task in the calling thread when the bytes are not available
+     * @return the task submitted or run, null if the bytes are not available and runInline is false
+     */
+    static <T> HeldTask<T> submit(ExecutorService lane, Callable<T> task, long bytes, boolean runInline) {
+        if (SharedExecutor.tryAcquireBytes(bytes)) {
+            return new HeldTask<T>(lane.submit(task), bytes);
+        }
+        if (!runInline) {
+            return null;
+        }
+        FutureTask<T> inline = new FutureTask<T>(task);
+        inline.run();
+        return new HeldTask<T>(inline, 0);
+    }
+
+    /**
+     * @return the result of the task (the exception of a failed task is thrown as is)
+     */
+    T get() throws Exception {
+        try {
+            return future_.get();
+        } catch (ExecutionException exc) {
+            throw (exc.getCause() instanceof Exception) ? (Exception) exc.getCause() : exc;
+        }
+    }
+
+    /**
+     * Cancel the task (if still running) and release its bytes, can be called several times.
+     */
+    synchronized void release() {
+        future_.cancel(true);
+        if (heldBytes_ > 0) {
+            SharedExecutor.releaseBytes(heldBytes_);
+            heldBytes_ = 0;
+        }
+    }
+
+    /**
+     * Tasks submitted in order and taken in the same order, a bounded number of them ahead of the one taken.
+     * When the bytes of a task are not available, it waits for the tasks before it to be taken, or runs in the calling thread
+     * if there is none (the bytes are held by other users).
+     */
+    static final class Queue<T> {
+        private final ExecutorService lane_;
+        private final int maxPending_;
+        // null for a task without work (see addDone)
+        private final LinkedList<HeldTask<T>> pending_ = new LinkedList<HeldTask<T>>();
+
+        Queue(ExecutorService lane, int maxPending) {
+            lane_ = lane;
+            maxPending_ = maxPending;
+        }
+
+        /**
+         * @return false if task was not submitted (too many tasks pending, or bytes not available) : take a result before
+         * offering it again
+         */
+        boolean offer(Callable<T> task, long bytes) {
+            if (pending_.size() >= maxPending_) {
+                return false;
+            }
+            HeldTask<T> submitted = submit(lane_, task, bytes, pending_.isEmpty());
+            if (submitted == null) {
+                return false;
+            }
+            pending_.add(submitted);
+            return true;
+        }
+
+        /**
+         * Add a task already submitted (its bytes are released once taken).
+         *
+         * @return false if too many tasks are pending
+         */
+        boolean offer(HeldTask<T> task) {
+            if (pending_.size() >= maxPending_) {
+                return false;
+            }
+            pending_.add(task);
+            return true;
+        }
+
+        /**
+         * Add a task without work, taken as null.
+         *
+         * @return false if too many tasks are pending
+         */
+        boolean offerNothing() {
+            if (pending_.size() >= maxPending_) {
+                return false;
+            }
+            pending_.add(null);
+            return true;
+        }
+
+        boolean isEmpty() {
+            return pending_.isEmpty();
+        }
+
+        /**
+         * @return the result of the oldest task (null for a task without work), its bytes released
+         */
+        T take() throws Exception {
+            HeldTask<T> task = pending_.removeFirst();
+            if (task == null) {
+                return null;
+            }
+            try {
+                return task.get();
+            } finally {
+                task.release();
+            }
+        }
+
+        /**
+         * Cancel the pending tasks and release their bytes.
+         */
+        void cancel() {
+            for (HeldTask<T> task : pending_) {
+                if (task != null) {
+                    task.release();
+                }
+            }
+            pending_.clear();
+        }
+    }
+}
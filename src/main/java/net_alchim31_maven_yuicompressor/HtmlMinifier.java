@@ -0,0 +1,80 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.mozilla.javascript.ErrorReporter;
+
+/**
+ * Conservative minification of html and jsp : comments are removed (except conditional comments, server side includes
+ * and knockout bindings), whitespace runs are collapsed to a single space (or a single newline if the run contains one),
+ * so the rendering is unchanged. The content of pre, textarea, script and style, jsp scriptlets/directives
+ * and quoted attribute values are kept as is. Jsp comments are removed.
+ */
+class HtmlMinifier extends MarkupMinifier {
+    private static final String[] RAW_ELEMENTS = {"pre", "textarea", "script", "style"};
+    private static final String[] KEPT_COMMENTS = {"<!--[if", "<!--<![endif]", "<!--#", "<!-- ko ", "<!-- /ko"};
+
+    public String minify(String source, ErrorReporter reporter) throws Exception {
+        StringBuilder out = new StringBuilder(source.length());
+        int n = source.length();
+        int i = 0;
+        while (i < n) {
+            char c = source.charAt(i);
+            if (source.startsWith("<%--", i)) {
+                i = skipPast(source, "--%>", i + 4);
+            } else if (source.startsWith("<%", i)) {
+                i = copyPast(source, "%>", i, out);
+            } else if (source.startsWith("<!--", i)) {
+                int next = skipPast(source, "-->", i + 4);
+                if (isKeptComment(source, i)) {
+                    out.append(source, i, next);
+                }
+                i = next;
+            } else if ((c == '<') && isTagStart(source, i)) {
+                String name = tagName(source, i);
+                boolean closing = isClosingTag(source, i);
+                i = copyTag(source, i, out);
+                if (!closing && isRawElement(name) && !endsWithSelfClosingTag(out)) {
+                    int end = indexOfIgnoreCase(source, "</" + name, i);
+                    end = (end < 0) ? n : end;
+                    out.append(source, i, end);
+                    i = end;
+                }
+            } else if (isSpace(c)) {
+                int end = skipSpaces(source, i);
+                int newline = source.indexOf('\n', i);
+                char space = ((newline >= 0) && (newline < end)) ? '\n' : ' ';
+                int last = out.length() - 1;
+                if ((last >= 0) && ((out.charAt(last) == ' ') || (out.charAt(last) == '\n'))) {
+                    // merged with the whitespace before a removed comment
+                    if (space == '\n') {
+                        out.setCharAt(last, space);
+                    }
+                } else {
+                    out.append(space);
+                }
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isKeptComment(String source, int i) {
+        for (String prefix : KEPT_COMMENTS) {
+            if (source.startsWith(prefix, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRawElement(String name) {
+        for (String raw : RAW_ELEMENTS) {
+            if (raw.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
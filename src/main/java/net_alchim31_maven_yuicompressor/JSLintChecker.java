@@ -31,7 +31,12 @@ class JSLintChecker {
         String[] args = new String[2];
         args[0] = jslintPath_;
         args[1] = jsFile.getAbsolutePath();
-        BasicRhinoShell.exec(args, reporter);
+        Tracing.Span span = Tracing.start("lint", jsFile.getPath()).type(".js").inputSize(jsFile.length());
+        try {
+            BasicRhinoShell.exec(args, reporter);
+        } finally {
+            span.end();
+        }
         //if (Main.exec(args) != 0) {
         //    reporter.warning("warnings during checking of :" + jsFile.getAbsolutePath(), null, -1, null, -1);
         //}
@@ -0,0 +1,113 @@
+package net_alchim31_maven_yuicompressor;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Implementation of {@link Tracing} with Java Flight Recorder events.
+ * Only loaded when the JVM provides jdk.jfr (java 11+, or java 8 update 262+), so the plugin still runs on older JVM.
+ * When no recording is running, an event is only begun and ended (no field copied, no commit).
+ */
+final class JfrTracing {
+
+    private JfrTracing() {
+    }
+
+    static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    static Tracing.Span start(String phase, String path) {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return Tracing.Span.NOOP;
+        }
+        event.phase = phase;
+        event.path = path;
+        event.begin();
+        return new JfrSpan(event);
+    }
+
+    @Name("net_alchim31_maven_yuicompressor.Phase")
+    @Label("YUI Compressor Phase")
+    @Category({"Maven", "YUI Compressor"})
+    @Description("A phase of the processing of a file or a directory by yuicompressor-maven-plugin")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Path")
+        String path;
+
+        @Label("Type")
+        @Description("Extension of the file")
+        String type;
+
+        @Label("Engine")
+        @Description("How the phase was done (eg: in-process, daemon, remote-cache, parallel)")
+        String engine;
+
+        @Label("Input Size")
+        @DataAmount
+        long inputSize;
+
+        @Label("Output Size")
+        @DataAmount
+        long outputSize;
+
+        @Label("Count")
+        @Description("Number of files processed by the phase")
+        long count;
+    }
+
+    private static class JfrSpan extends Tracing.Span {
+        private final PhaseEvent event_;
+
+        JfrSpan(PhaseEvent event) {
+            event_ = event;
+        }
+
+        @Override
+        Tracing.Span type(String v) {
+            event_.type = v;
+            return this;
+        }
+
+        @Override
+        Tracing.Span engine(String v) {
+            event_.engine = v;
+            return this;
+        }
+
+        @Override
+        Tracing.Span inputSize(long v) {
+            event_.inputSize = v;
+            return this;
+        }
+
+        @Override
+        Tracing.Span outputSize(long v) {
+            event_.outputSize = v;
+            return this;
+        }
+
+        @Override
+        Tracing.Span count(long v) {
+            event_.count = v;
+            return this;
+        }
+
+        @Override
+        void end() {
+            event_.end();
+            if (event_.shouldCommit()) {
+                event_.commit();
+            }
+        }
+    }
+}
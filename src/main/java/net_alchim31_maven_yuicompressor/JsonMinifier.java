@@ -0,0 +1,44 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.mozilla.javascript.ErrorReporter;
+
+/**
+ * Remove the whitespace outside of strings (and a leading byte order mark). The document is not validated,
+ * except that strings must be closed on their line.
+ */
+class JsonMinifier implements Minifier {
+
+    public String minify(String source, ErrorReporter reporter) throws Exception {
+        StringBuilder out = new StringBuilder(source.length());
+        int line = 1;
+        int lineStart = 0;
+        int n = source.length();
+        int i = ((n > 0) && (source.charAt(0) == '\uFEFF')) ? 1 : 0;
+        while (i < n) {
+            char c = source.charAt(i);
+            if (c == '"') {
+                int start = i;
+                i++;
+                while ((i < n) && (source.charAt(i) != '"') && (source.charAt(i) != '\n')) {
+                    i += (source.charAt(i) == '\\') ? 2 : 1;
+                }
+                if (i >= n || source.charAt(i) != '"') {
+                    int lineEnd = source.indexOf('\n', lineStart);
+                    String lineSource = source.substring(lineStart, (lineEnd < 0) ? n : lineEnd);
+                    throw reporter.runtimeError("unterminated string", null, line, lineSource, start - lineStart);
+                }
+                i++;
+                out.append(source, start, i);
+                continue;
+            }
+            if (c == '\n') {
+                line++;
+                lineStart = i + 1;
+            } else if ((c != ' ') && (c != '\t') && (c != '\r')) {
+                out.append(c);
+            }
+            i++;
+        }
+        return out.toString();
+    }
+}
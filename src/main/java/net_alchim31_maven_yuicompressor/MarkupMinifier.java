@@ -0,0 +1,121 @@
+package net_alchim31_maven_yuicompressor;
+
+/**
+ * Scanning helpers shared by the minifiers of markup (html, svg). Sources are not parsed into a tree,
+ * they are copied tag by tag, so a malformed document is minified as far as possible and never rejected.
+ */
+abstract class MarkupMinifier implements Minifier {
+
+    static boolean isSpace(char c) {
+        return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r') || (c == '\f');
+    }
+
+    static int skipSpaces(String source, int i) {
+        while ((i < source.length()) && isSpace(source.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return true if the '<' at i starts a tag (and not a '<' in text, like "a < b")
+     */
+    static boolean isTagStart(String source, int i) {
+        if (i + 1 >= source.length()) {
+            return false;
+        }
+        char c = source.charAt(i + 1);
+        return Character.isLetter(c) || (c == '/') || (c == '!') || (c == '?');
+    }
+
+    /**
+     * @return the name of the tag starting at i (without the '/' of a closing tag)
+     */
+    static String tagName(String source, int i) {
+        int start = i + 1;
+        if ((start < source.length()) && (source.charAt(start) == '/')) {
+            start++;
+        }
+        int end = start;
+        while (end < source.length()) {
+            char c = source.charAt(end);
+            if (!(Character.isLetterOrDigit(c) || (c == ':') || (c == '-') || (c == '_') || (c == '.'))) {
+                break;
+            }
+            end++;
+        }
+        return source.substring(start, end);
+    }
+
+    static boolean isClosingTag(String source, int i) {
+        return (i + 1 < source.length()) && (source.charAt(i + 1) == '/');
+    }
+
+    static int indexOfIgnoreCase(String source, String token, int from) {
+        for (int i = from, last = source.length() - token.length(); i <= last; i++) {
+            if (source.regionMatches(true, i, token, 0, token.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index after the end token (searched from i), or the end of the source if the token is missing
+     */
+    static int skipPast(String source, String end, int i) {
+        int pos = source.indexOf(end, i);
+        return (pos < 0) ? source.length() : pos + end.length();
+    }
+
+    /**
+     * Copy as is, from i to the end token (included).
+     *
+     * @return the index after the end token
+     */
+    static int copyPast(String source, String end, int i, StringBuilder out) {
+        int next = skipPast(source, end, i);
+        out.append(source, i, next);
+        return next;
+    }
+
+    /**
+     * Copy the tag starting at i, with every whitespace run outside of quoted values replaced by a single space
+     * (or removed before the closing '>').
+     *
+     * @return the index after the tag
+     */
+    static int copyTag(String source, int i, StringBuilder out) {
+        int n = source.length();
+        char quote = 0;
+        while (i < n) {
+            char c = source.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if ((c == '"') || (c == '\'')) {
+                quote = c;
+            } else if (isSpace(c)) {
+                i = skipSpaces(source, i);
+                if ((i < n) && (source.charAt(i) != '>')) {
+                    out.append(' ');
+                }
+                continue;
+            } else if (c == '>') {
+                out.append(c);
+                return i + 1;
+            }
+            out.append(c);
+            i++;
+        }
+        return n;
+    }
+
+    /**
+     * @return true if the last tag copied into out is self closing ("<x/>")
+     */
+    static boolean endsWithSelfClosingTag(StringBuilder out) {
+        return (out.length() > 1) && (out.charAt(out.length() - 1) == '>') && (out.charAt(out.length() - 2) == '/');
+    }
+}
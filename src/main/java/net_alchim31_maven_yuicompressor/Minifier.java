@@ -0,0 +1,14 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.mozilla.javascript.ErrorReporter;
+
+/**
+ * Minifier for a type of source not handled by YUI Compressor (registered by extension in {@link CompressorEngine}).
+ * Implementations are stateless (shared by every thread).
+ */
+interface Minifier {
+    /**
+     * @param reporter receive the errors of the source (a syntax error must be reported with runtimeError, that throws)
+     */
+    String minify(String source, ErrorReporter reporter) throws Exception;
+}
@@ -0,0 +1,249 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.codehaus.plexus.util.IOUtil;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Servlet filter that serves the js, css, json, svg and html files of a webapp minified (and gzipped for the clients that accept it),
+ * compressed on their first request, eg: to serve the sources of the webapp without running the maven plugin.
+ *
+ * Compressed files are kept in memory, in a LRU cache bounded by size and keyed by path, last modification and options,
+ * so a modified file is compressed again on its next request. Concurrent requests for a file not yet in the cache
+ * share a single compression. A file that fails to compress is served as is (by the rest of the chain), and the error is logged.
+ * Files already minified (name ending by "-min.js", ".min.css",...) and jsp are served as is.
+ *
+ * <pre>
+ * &lt;filter&gt;
+ *   &lt;filter-name&gt;minify&lt;/filter-name&gt;
+ *   &lt;filter-class&gt;net_alchim31_maven_yuicompressor.MinifyFilter&lt;/filter-class&gt;
+ *   &lt;init-param&gt;
+ *     &lt;param-name&gt;cacheSize&lt;/param-name&gt;
+ *     &lt;param-value&gt;33554432&lt;/param-value&gt;
+ *   &lt;/init-param&gt;
+ * &lt;/filter&gt;
+ * &lt;filter-mapping&gt;
+ *   &lt;filter-name&gt;minify&lt;/filter-name&gt;
+ *   &lt;url-pattern&gt;*.js&lt;/url-pattern&gt;
+ * &lt;/filter-mapping&gt;
+ * &lt;filter-mapping&gt;
+ *   &lt;filter-name&gt;minify&lt;/filter-name&gt;
+ *   &lt;url-pattern&gt;*.css&lt;/url-pattern&gt;
+ * &lt;/filter-mapping&gt;
+ * </pre>
+ *
+ * Init parameters (same meaning as the parameters of the compress goal) :
+ * encoding (UTF-8), nomunge (false), linebreakpos (-1), preserveAllSemiColons (false), disableOptimizations (false),
+ * gzip (true), level (9, the gzip level) and cacheSize (32MB, the max number of bytes kept in memory).
+ */
+public class MinifyFilter implements Filter {
+    private static final String[] MINIFIED_SUFFIXES = {"-min", ".min"};
+    private static final Map<String, String> DEFAULT_MIME_TYPES = new HashMap<String, String>();
+
+    static {
+        DEFAULT_MIME_TYPES.put(".js", "application/javascript");
+        DEFAULT_MIME_TYPES.put(".css", "text/css");
+        DEFAULT_MIME_TYPES.put(".json", "application/json");
+        DEFAULT_MIME_TYPES.put(".svg", "image/svg+xml");
+        DEFAULT_MIME_TYPES.put(".html", "text/html");
+        DEFAULT_MIME_TYPES.put(".htm", "text/html");
+    }
+
+    private ServletContext context_;
+    private CompressorEngine engine_;
+    private TextCodec codec_;
+    private boolean gzip_;
+    private int level_;
+    private SizedLruCache<String, Asset> cache_;
+
+    public void init(FilterConfig config) throws ServletException {
+        context_ = config.getServletContext();
+        try {
+            codec_ = new TextCodec(param(config, "encoding", "UTF-8"));
+        } catch (IllegalArgumentException exc) {
+            throw new ServletException("unsupported encoding : " + config.getInitParameter("encoding"));
+        }
+        CompressionOptions options = new CompressionOptions(
+                Integer.parseInt(param(config, "linebreakpos", "-1")),
+                !Boolean.valueOf(param(config, "nomunge", "false")),
+                false,
+                Boolean.valueOf(param(config, "preserveAllSemiColons", "false")),
+                Boolean.valueOf(param(config, "disableOptimizations", "false"))
+        );
+        engine_ = new CompressorEngine(options, -1);
+        gzip_ = Boolean.valueOf(param(config, "gzip", "true"));
+        level_ = Integer.parseInt(param(config, "level", String.valueOf(Deflater.BEST_COMPRESSION)));
+        cache_ = new SizedLruCache<String, Asset>(Long.parseLong(param(config, "cacheSize", String.valueOf(32L * 1024 * 1024))), new SizedLruCache.Weigher<Asset>() {
+            public long weigh(Asset value) {
+                return value.size();
+            }
+        });
+    }
+
+    private static String param(FilterConfig config, String name, String defaultValue) {
+        String back = config.getInitParameter(name);
+        return ((back == null) || (back.trim().length() == 0)) ? defaultValue : back.trim();
+    }
+
+    public void destroy() {
+        if (cache_ != null) {
+            context_.log("[yuicompressor] minify cache : " + cache_.getHitCnt() + " hit(s), " + cache_.getLoadCnt() + " compression(s)");
+            cache_.clear();
+        }
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse res = (HttpServletResponse) response;
+        String path = req.getServletPath() + ((req.getPathInfo() == null) ? "" : req.getPathInfo());
+        int dot = path.lastIndexOf('.');
+        String extension = (dot < 0) ? "" : path.substring(dot);
+        if (!("GET".equals(req.getMethod()) || "HEAD".equals(req.getMethod())) || !CompressorEngine.accept(extension) || ".jsp".equalsIgnoreCase(extension) || isMinified(path, dot)) {
+            // jsp are rendered by the container, their source must not be served
+            chain.doFilter(request, response);
+            return;
+        }
+        URL url = context_.getResource(path);
+        if (url == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        Asset asset;
+        try {
+            asset = find(url, path, extension);
+        } catch (Exception exc) {
+            context_.log("[yuicompressor] failed to minify " + path + ", served as is", exc);
+            chain.doFilter(request, response);
+            return;
+        }
+        serve(req, res, path, asset);
+    }
+
+    private static boolean isMinified(String path, int dot) {
+        for (String suffix : MINIFIED_SUFFIXES) {
+            if (path.startsWith(suffix, dot - suffix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Asset find(final URL url, final String path, final String extension) throws Exception {
+        return cache_.get(path + "|" + lastModified(url, path), new Callable<Asset>() {
+            public Asset call() throws Exception {
+                InputStream in = url.openStream();
+                byte[] source;
+                try {
+                    source = IOUtil.toByteArray(in);
+                } finally {
+                    IOUtil.close(in);
+                }
+                CompressorDaemon.RecordingErrorReporter reporter = new CompressorDaemon.RecordingErrorReporter();
+                byte[] content = codec_.encode(engine_.compress(extension, codec_.decode(source), reporter));
+                return new Asset(content, gzip_ ? gzip(content, level_) : null);
+            }
+        });
+    }
+
+    private long lastModified(URL url, String path) throws IOException {
+        String realPath = context_.getRealPath(path);
+        if (realPath != null) {
+            return new File(realPath).lastModified();
+        }
+        // a connection is opened to read the headers (eg: for a file in a jar), close it
+        URLConnection connection = url.openConnection();
+        try {
+            return connection.getLastModified();
+        } finally {
+            IOUtil.close(connection.getInputStream());
+        }
+    }
+
+    private void serve(HttpServletRequest req, HttpServletResponse res, String path, Asset asset) throws IOException {
+        String mimeType = context_.getMimeType(path);
+        if (mimeType == null) {
+            mimeType = DEFAULT_MIME_TYPES.get(path.substring(path.lastIndexOf('.')).toLowerCase());
+        }
+        res.setContentType(mimeType + ";charset=" + codec_.getCharset().name());
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        boolean gzipped = (asset.gzipped != null) && (acceptEncoding != null) && acceptEncoding.contains("gzip");
+        // a strong ETag identifies the bytes sent : each encoding has its own
+        String etag = gzipped ? asset.gzipEtag : asset.etag;
+        res.setHeader("ETag", etag);
+        if (asset.gzipped != null) {
+            res.setHeader("Vary", "Accept-Encoding");
+        }
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if ((ifNoneMatch != null) && (ifNoneMatch.contains(etag) || "*".equals(ifNoneMatch.trim()))) {
+            res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        byte[] body = asset.content;
+        if (gzipped) {
+            body = asset.gzipped;
+            res.setHeader("Content-Encoding", "gzip");
+        }
+        res.setContentLength(body.length);
+        if (!"HEAD".equals(req.getMethod())) {
+            res.getOutputStream().write(body);
+        }
+    }
+
+    static byte[] gzip(byte[] content, final int level) throws IOException {
+        ByteArrayOutputStream back = new ByteArrayOutputStream(content.length / 3 + 32);
+        GZIPOutputStream out = new GZIPOutputStream(back) {
+            {
+                def.setLevel(level);
+            }
+        };
+        out.write(content);
+        out.close();
+        return back.toByteArray();
+    }
+
+    /**
+     * A file as served by the filter.
+     */
+    static class Asset {
+        final byte[] content;
+        final byte[] gzipped;
+        final String etag;
+        /** ETag of the gzipped version, suffixed like the gzip variant of {@link StaticMetadata} */
+        final String gzipEtag;
+
+        Asset(byte[] content, byte[] gzipped) throws Exception {
+            this.content = content;
+            this.gzipped = gzipped;
+            String hash = OutputFiles.toHex(OutputFiles.digest(content));
+            this.etag = "\"" + hash + "\"";
+            this.gzipEtag = "\"" + hash + "-gz\"";
+        }
+
+        long size() {
+            return content.length + ((gzipped == null) ? 0 : gzipped.length) + etag.length() + gzipEtag.length();
+        }
+    }
+}
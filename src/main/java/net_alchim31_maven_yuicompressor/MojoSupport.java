@@ -5,11 +5,12 @@ import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
-import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.Scanner;
+import org.mozilla.javascript.EvaluatorException;
 import org.sonatype.plexus.build.incremental.BuildContext;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -21,6 +22,7 @@ import java.util.List;
 // @SuppressWarnings("unchecked")
 public abstract class MojoSupport extends AbstractMojo {
     private static final String[] EMPTY_STRING_ARRAY = {};
+    private static final int MAX_SUMMARY_LINES = 50;
 
     /**
      * Javascript source directory. (result will be put to outputDirectory).
@@ -121,12 +123,22 @@ public abstract class MojoSupport extends AbstractMojo {
      */
     protected boolean failOnWarning;
 
+    /**
+     * when to stop processing the remaining files (and skip the aggregations, gzip,...) of a build that will fail:
+     * "error" at the first error, "warning" also at the first warning (with failOnWarning),
+     * "none" to process every file and report all the errors. Errors and warnings found so far are listed in the failure.
+     *
+     * @parameter property="maven.yuicompressor.failFast" default-value="error"
+     */
+    protected String failFast;
+
     /**
      * @component
      */
     protected BuildContext buildContext;
 
     protected ErrorReporter4Mojo jsErrorReporter_;
+    private int failedFileCnt_;
 
     public void execute() throws MojoExecutionException, MojoFailureException {
         try {
@@ -134,28 +146,37 @@ public abstract class MojoSupport extends AbstractMojo {
                 getLog().debug("run of yuicompressor-maven-plugin skipped");
                 return;
             }
+            if (!"none".equals(failFast) && !"error".equals(failFast) && !"warning".equals(failFast)) {
+                throw new MojoExecutionException("unsupported failFast '" + failFast + "', expected none, error or warning");
+            }
             if (failOnWarning) {
                 jswarn = true;
             }
             jsErrorReporter_ = new ErrorReporter4Mojo(getLog(), jswarn, buildContext);
+            failedFileCnt_ = 0;
+            if (isUpToDate()) {
+                getLog().info("nothing to do, inputs and outputs are the same as the previous build");
+                return;
+            }
             beforeProcess();
-            processDir(sourceDirectory, outputDirectory, null, useProcessedResources);
-            if (!excludeResources) {
-                for (Resource resource : resources) {
-                    File destRoot = outputDirectory;
-                    if (resource.getTargetPath() != null) {
-                        destRoot = new File(outputDirectory, resource.getTargetPath());
-                    }
-                    processDir(new File(resource.getDirectory()), destRoot, resource.getExcludes(), useProcessedResources);
+            boolean processed = false;
+            try {
+                for (SourceDir dir : getSourceDirs()) {
+                    processDir(dir.srcRoot, dir.destRoot, dir.excludes, useProcessedResources);
+                }
+                if (failedFileCnt_ > 0) {
+                    throw new MojoFailureException(String.format("errors on %s, %d file(s) failed => failure ! %s", this.getClass().getSimpleName(), failedFileCnt_, jsErrorReporter_.getSummary(MAX_SUMMARY_LINES)));
+                }
+                processed = true;
+            } finally {
+                if (!processed) {
+                    abortProcess();
                 }
-            }
-            if (!excludeWarSourceDirectory) {
-                processDir(warSourceDirectory, webappDirectory, null, useProcessedResources);
             }
             afterProcess();
             getLog().info(String.format("nb warnings: %d, nb errors: %d", jsErrorReporter_.getWarningCnt(), jsErrorReporter_.getErrorCnt()));
             if (failOnWarning && (jsErrorReporter_.getWarningCnt() > 0)) {
-                throw new MojoFailureException("warnings on " + this.getClass().getSimpleName() + "=> failure ! (see log)");
+                throw new MojoFailureException("warnings on " + this.getClass().getSimpleName() + " => failure ! " + jsErrorReporter_.getSummary(MAX_SUMMARY_LINES));
             }
         } catch (RuntimeException exc) {
             throw exc;
@@ -168,12 +189,90 @@ public abstract class MojoSupport extends AbstractMojo {
         }
     }
 
+    private List<SourceDir> getSourceDirs() {
+        List<SourceDir> back = new ArrayList<>();
+        back.add(new SourceDir(sourceDirectory, outputDirectory, null));
+        if (!excludeResources) {
+            for (Resource resource : resources) {
+                File destRoot = outputDirectory;
+                if (resource.getTargetPath() != null) {
+                    destRoot = new File(outputDirectory, resource.getTargetPath());
+                }
+                back.add(new SourceDir(new File(resource.getDirectory()), destRoot, resource.getExcludes()));
+            }
+        }
+        if (!excludeWarSourceDirectory) {
+            back.add(new SourceDir(warSourceDirectory, webappDirectory, null));
+        }
+        return back;
+    }
+
+    /**
+     * @return the path (with '/' as separator) of file relative to the webapp or the output directory that contains it,
+     * or its name if it's outside both
+     */
+    protected String toOutputPath(File file) {
+        String back = toRelativeOutputPath(file);
+        return (back == null) ? file.getName() : back;
+    }
+
+    /**
+     * @return the path of file relative to webappDirectory or outputDirectory (with '/' as separator), null if file is outside of them
+     */
+    protected String toRelativeOutputPath(File file) {
+        String path = file.getAbsolutePath();
+        for (File root : new File[]{webappDirectory, outputDirectory}) {
+            if (root == null) {
+                continue;
+            }
+            String rootPath = root.getAbsolutePath() + File.separator;
+            if (path.startsWith(rootPath)) {
+                return path.substring(rootPath.length()).replace(File.separatorChar, '/');
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Scan every source directory (without processing).
+     *
+     * @return the files that would be processed
+     */
+    protected List<SourceFile> scanSources() throws Exception {
+        List<SourceFile> back = new ArrayList<>();
+        for (SourceDir dir : getSourceDirs()) {
+            if ((dir.srcRoot == null) || !dir.srcRoot.exists() || (dir.destRoot == null)) {
+                continue;
+            }
+            for (String name : scan(dir.srcRoot, dir.excludes)) {
+                back.add(new SourceFile(dir.srcRoot, dir.destRoot, name, useProcessedResources));
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Called before any processing.
+     *
+     * @return true if the previous execution is still valid, and nothing need to be processed
+     */
+    protected boolean isUpToDate() throws Exception {
+        return false;
+    }
+
     protected abstract String[] getDefaultIncludes() throws Exception;
 
     protected abstract void beforeProcess() throws Exception;
 
     protected abstract void afterProcess() throws Exception;
 
+    /**
+     * Called instead of afterProcess when the processing of files was stopped (error, fail-fast),
+     * to cancel the work in progress and release the resources allocated by beforeProcess.
+     */
+    protected void abortProcess() throws Exception {
+    }
+
     /**
      * Force to use defaultIncludes (ignore srcIncludes) to avoid processing resources/includes from other type than *.css or *.js
      *
@@ -191,47 +290,95 @@ public abstract class MojoSupport extends AbstractMojo {
         if (destRoot == null) {
             throw new MojoFailureException("destination directory for " + srcRoot + " is null");
         }
-        Scanner scanner;
-        if (!buildContext.isIncremental()) {
-            DirectoryScanner dScanner = new DirectoryScanner();
-            dScanner.setBasedir(srcRoot);
-            scanner = dScanner;
-        } else {
-            scanner = buildContext.newScanner(srcRoot);
+        String[] includedFiles = scan(srcRoot, srcExcludes);
+        if (includedFiles == null || includedFiles.length == 0) {
+            if (buildContext.isIncremental()) {
+                getLog().info("No files have changed, so skipping the processing");
+            } else {
+                getLog().info("No files to be processed");
+            }
+            return;
         }
-
-        if (includes == null) {
-            scanner.setIncludes(getDefaultIncludes());
-        } else {
-            scanner.setIncludes(includes.toArray(new String[0]));
+        Tracing.Span span = Tracing.start("process-dir", srcRoot.getPath()).count(includedFiles.length);
+        try {
+            List<SourceFile> srcs = new ArrayList<>(includedFiles.length);
+            for (String name : includedFiles) {
+                srcs.add(new SourceFile(srcRoot, destRoot, name, destAsSource));
+            }
+            prefetch(srcs);
+            for (SourceFile src : srcs) {
+                jsErrorReporter_.setDefaultFileName("..." + src.toFile().getAbsolutePath().substring(src.toFile().getAbsolutePath().lastIndexOf('/') + 1));
+                jsErrorReporter_.setFile(src.toFile());
+                try {
+                    processFile(src);
+                } catch (EvaluatorException exc) {
+                    // already reported
+                    failedFileCnt_++;
+                    if (!"none".equals(failFast)) {
+                        throw new MojoFailureException("error on " + this.getClass().getSimpleName() + ", remaining files not processed => failure ! " + jsErrorReporter_.getSummary(MAX_SUMMARY_LINES));
+                    }
+                }
+                if ("warning".equals(failFast) && failOnWarning && (jsErrorReporter_.getWarningCnt() > 0)) {
+                    throw new MojoFailureException("warnings on " + this.getClass().getSimpleName() + ", remaining files not processed => failure ! " + jsErrorReporter_.getSummary(MAX_SUMMARY_LINES));
+                }
+            }
+        } finally {
+            span.end();
         }
+    }
 
+    /**
+     * Full builds reuse the listing of srcRoot made by a previous execution of the plugin in the module, if still valid (see {@link ScanCache}).
+     */
+    private String[] scan(File srcRoot, List<String> srcExcludes) throws Exception {
+        String[] scanIncludes = (includes == null) ? getDefaultIncludes() : includes.toArray(EMPTY_STRING_ARRAY);
+        String[] scanExcludes = null;
         if ((srcExcludes != null) && !srcExcludes.isEmpty()) {
-            scanner.setExcludes(srcExcludes.toArray(EMPTY_STRING_ARRAY));
+            scanExcludes = srcExcludes.toArray(EMPTY_STRING_ARRAY);
         }
         if ((excludes != null) && !excludes.isEmpty()) {
-            scanner.setExcludes(excludes.toArray(EMPTY_STRING_ARRAY));
+            scanExcludes = excludes.toArray(EMPTY_STRING_ARRAY);
+        }
+        if (!buildContext.isIncremental()) {
+            ScanCache cache = ScanCache.from(getPluginContext());
+            int walkCnt = cache.getWalkCnt();
+            String[] back = cache.scan(srcRoot, scanIncludes, scanExcludes);
+            if (cache.getWalkCnt() == walkCnt) {
+                getLog().debug("reuse the listing of " + srcRoot + " (unchanged since a previous execution)");
+            }
+            return back;
+        }
+
+        Scanner scanner = buildContext.newScanner(srcRoot);
+        scanner.setIncludes(scanIncludes);
+        if (scanExcludes != null) {
+            scanner.setExcludes(scanExcludes);
         }
         scanner.addDefaultExcludes();
 
         scanner.scan();
 
-        String[] includedFiles = scanner.getIncludedFiles();
-        if (includedFiles == null || includedFiles.length == 0) {
-            if (buildContext.isIncremental()) {
-                getLog().info("No files have changed, so skipping the processing");
-            } else {
-                getLog().info("No files to be processed");
-            }
-            return;
-        }
-        for (String name : includedFiles) {
-            SourceFile src = new SourceFile(srcRoot, destRoot, name, destAsSource);
-            jsErrorReporter_.setDefaultFileName("..." + src.toFile().getAbsolutePath().substring(src.toFile().getAbsolutePath().lastIndexOf('/') + 1));
-            jsErrorReporter_.setFile(src.toFile());
-            processFile(src);
-        }
+        String[] back = scanner.getIncludedFiles();
+        return (back == null) ? EMPTY_STRING_ARRAY : back;
+    }
+
+    /**
+     * Called with the files of a directory before they are processed (in the same order), to read ahead their sources.
+     */
+    protected void prefetch(List<SourceFile> srcs) throws Exception {
     }
 
     protected abstract void processFile(SourceFile src) throws Exception;
+
+    private static class SourceDir {
+        final File srcRoot;
+        final File destRoot;
+        final List<String> excludes;
+
+        SourceDir(File srcRoot, File destRoot, List<String> excludes) {
+            this.srcRoot = srcRoot;
+            this.destRoot = destRoot;
+            this.excludes = excludes;
+        }
+    }
 }
@@ -0,0 +1,176 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.zip.Deflater;
+
+/**
+ * Helpers to compare a freshly generated output with the one already on disk,
+ * so identical outputs can be left untouched (no mtime change, no refresh).
+ */
+final class OutputFiles {
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private OutputFiles() {
+    }
+
+    /**
+     * @return true if both files exist and have the same size and the same content hash
+     */
+    static boolean sameContent(File file, File existing) throws Exception {
+        if (!file.isFile() || !existing.isFile() || (file.length() != existing.length())) {
+            return false;
+        }
+        return MessageDigest.isEqual(digest(file), digest(existing));
+    }
+
+    /**
+     * @return true if existing is a file with exactly the given content (size, then content hash)
+     */
+    static boolean sameContent(byte[] content, File existing) throws Exception {
+        if (!existing.isFile() || (content.length != existing.length())) {
+            return false;
+        }
+        return MessageDigest.isEqual(digest(content), digest(existing));
+    }
+
+    /**
+     * @return a digest of the algorithm used to compare contents (eg: to hash an output as it's written)
+     */
+    static MessageDigest newDigest() throws Exception {
+        return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    }
+
+    static byte[] digest(byte[]... contents) throws Exception {
+        MessageDigest md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        for (byte[] content : contents) {
+            md.update(content);
+        }
+        return md.digest();
+    }
+
+    static byte[] digest(File file) throws Exception {
+        return digest(new byte[0], file);
+    }
+
+    /**
+     * @return the digest of prefix followed by the content of file (read by blocks, not loaded in memory)
+     */
+    static byte[] digest(byte[] prefix, File file) throws Exception {
+        MessageDigest md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        md.update(prefix);
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                md.update(buffer, 0, n);
+            }
+        } finally {
+            IOUtil.close(in);
+        }
+        return md.digest();
+    }
+
+    /**
+     * Read file in one call, into an array of its size (no intermediate buffer to grow and copy).
+     */
+    static byte[] readBytes(File file) throws Exception {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            long length = in.length();
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new IOException("file too large to be read in memory : " + file);
+            }
+            byte[] back = new byte[(int) length];
+            in.readFully(back);
+            return back;
+        } finally {
+            in.close();
+        }
+    }
+
+    static void writeBytes(File file, byte[] content) throws Exception {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            IOUtil.close(out);
+        }
+    }
+
+    /**
+     * Copy file at the byte level, with {@link FileChannel#transferTo} (done by the kernel when possible).
+     */
+    static void copy(File from, File to) throws Exception {
+        FileInputStream in = new FileInputStream(from);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(to);
+            FileChannel src = in.getChannel();
+            FileChannel dest = out.getChannel();
+            long size = src.size();
+            long position = 0;
+            while (position < size) {
+                position += src.transferTo(position, size - position, dest);
+            }
+        } finally {
+            IOUtil.close(in);
+            IOUtil.close(out);
+        }
+    }
+
+    /**
+     * Create to as a hard link to from.
+     *
+     * @return false if the file system doesn't support it (or from and to are on different file systems)
+     */
+    static boolean link(File from, File to) {
+        try {
+            Files.createLink(to.toPath(), from.toPath());
+            return true;
+        } catch (UnsupportedOperationException | IOException exc) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the size of content once deflated with the best compression (without the gzip header and trailer)
+     */
+    static long deflatedSize(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            long back = 0;
+            while (!deflater.finished()) {
+                back += deflater.deflate(buffer);
+            }
+            return back;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] back = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            back[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            back[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(back);
+    }
+}
@@ -0,0 +1,23 @@
+package net_alchim31_maven_yuicompressor;
+
+/**
+ * An additional output produced for every compressed source, with its own suffix and compressor settings
+ * (eg: a "-debug" version not munged, one statement per line).
+ */
+public class OutputProfile {
+    public String suffix;
+    public boolean nomunge = false;
+    public int linebreakpos = -1;
+    public boolean preserveAllSemiColons = false;
+    public boolean disableOptimizations = false;
+    public boolean gzip = false;
+
+    CompressionOptions toOptions(boolean jswarn) {
+        return new CompressionOptions(linebreakpos, !nomunge, jswarn, preserveAllSemiColons, disableOptimizations);
+    }
+
+    @Override
+    public String toString() {
+        return suffix + "|" + nomunge + "|" + linebreakpos + "|" + preserveAllSemiColons + "|" + disableOptimizations + "|" + gzip;
+    }
+}
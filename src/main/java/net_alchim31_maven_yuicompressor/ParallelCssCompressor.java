@@ -0,0 +1,148 @@
+package net_alchim31_maven_yuicompressor;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Compress a (large) stylesheet by splitting it at top-level block boundaries
+ * (after a '}' closing a rule or an at-rule like '@media', outside comments, strings and parenthesis)
+ * and running {@link CssCompressor} on every chunk in parallel.
+ *
+ * The split is only done when the concatenation of the compressed chunks is the same as the single-pass result,
+ * else (line break requested, '@charset' not in the first chunk, comment hacks, unbalanced input,...)
+ * the whole stylesheet is compressed in one pass.
+ */
+class ParallelCssCompressor {
+    private final ExecutorService executor_;
+    private final int chunkSize_;
+
+    public ParallelCssCompressor(ExecutorService executor, int chunkSize) {
+        executor_ = executor;
+        chunkSize_ = chunkSize;
+    }
+
+    public void compress(String css, Writer out, int linebreakpos) throws Exception {
+        List<String> chunks = (linebreakpos < 0) ? split(css, chunkSize_) : null;
+        if ((chunks == null) || (chunks.size() < 2)) {
+            compressChunk(css, out, linebreakpos);
+            return;
+        }
+        List<Future<String>> results = new ArrayList<>(chunks.size());
+        try {
+            for (final String chunk : chunks) {
+                results.add(executor_.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        StringWriter back = new StringWriter(chunk.length());
+                        compressChunk(chunk, back, -1);
+                        return back.toString();
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                out.write(result.get());
+            }
+        } catch (ExecutionException exc) {
+            throw (exc.getCause() instanceof Exception) ? (Exception) exc.getCause() : exc;
+        } finally {
+            for (Future<String> result : results) {
+                result.cancel(true);
+            }
+        }
+    }
+
+    private static void compressChunk(String css, Writer out, int linebreakpos) throws IOException {
+        new CssCompressor(new StringReader(css)).compress(out, linebreakpos);
+    }
+
+    /**
+     * @return the chunks (of at least chunkSize chars, except the last one) or null if css can't be split safely
+     */
+    static List<String> split(String css, int chunkSize) {
+        List<String> back = new ArrayList<>();
+        int length = css.length();
+        int depth = 0;
+        int parens = 0;
+        int start = 0;
+        int i = 0;
+        while (i < length) {
+            char c = css.charAt(i);
+            if ((c == '/') && css.startsWith("/*", i)) {
+                // like CssCompressor, comments are found before strings
+                int end = css.indexOf("*/", i + 2);
+                if ((end < 0) || (css.charAt(end - 1) == '\\')) {
+                    // unterminated comment or "\*/" hack (depends on the next comment)
+                    return null;
+                }
+                i = end + 2;
+                continue;
+            }
+            if ((c == '"') || (c == '\'')) {
+                int end = endOfString(css, i);
+                if ((end < 0) || (css.substring(i, end).contains("/*"))) {
+                    return null;
+                }
+                i = end;
+                continue;
+            }
+            if (c == '(') {
+                parens++;
+            } else if (c == ')') {
+                parens--;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if ((depth == 0) && (parens == 0) && (i + 1 - start >= chunkSize)) {
+                    back.add(css.substring(start, i + 1));
+                    start = i + 1;
+                }
+            }
+            if ((depth < 0) || (parens < 0)) {
+                return null;
+            }
+            i++;
+        }
+        if ((depth != 0) || (parens != 0)) {
+            return null;
+        }
+        if (start < length) {
+            back.add(css.substring(start));
+        }
+        for (int j = 1; j < back.size(); j++) {
+            // CssCompressor moves the last @charset of the whole stylesheet at the beginning
+            if (back.get(j).contains("@charset")) {
+                return null;
+            }
+        }
+        return back;
+    }
+
+    /**
+     * @return the index after the closing quote of the string starting at start, or -1 if the string is not closed
+     */
+    private static int endOfString(String css, int start) {
+        char quote = css.charAt(start);
+        int i = start + 1;
+        while (i < css.length()) {
+            char c = css.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+}
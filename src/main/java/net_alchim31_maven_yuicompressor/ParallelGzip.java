@@ -0,0 +1,145 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip writer that deflates blocks of the input on several threads (like pigz).
+ *
+ * Each block is deflated independently, using the tail of the previous block as preset dictionary,
+ * and ended with a sync flush (the last one with a finish), so the concatenation of blocks is a single
+ * standard deflate stream wrapped into one gzip member.
+ */
+class ParallelGzip {
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] HEADER = {(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final int level_;
+    private final int blockSize_;
+    private final ExecutorService executor_;
+    private final int maxPendingBlocks_;
+
+    /**
+     * @param maxPendingBlocks number of blocks read ahead of the writer (bound the memory used)
+     */
+    public ParallelGzip(int level, int blockSize, ExecutorService executor, int maxPendingBlocks) {
+        level_ = level;
+        blockSize_ = blockSize;
+        executor_ = executor;
+        maxPendingBlocks_ = Math.max(1, maxPendingBlocks);
+    }
+
+    public void compress(InputStream in, OutputStream out) throws Exception {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        out.write(HEADER);
+        try {
+            byte[] previous = null;
+            byte[] current = readBlock(in);
+            if (current == null) {
+                current = new byte[0];
+            }
+            while (current != null) {
+                byte[] next = readBlock(in);
+                pending.addLast(executor_.submit(new DeflateBlock(current, previous, next == null)));
+                crc.update(current, 0, current.length);
+                size += current.length;
+                while (pending.size() >= maxPendingBlocks_) {
+                    out.write(pending.removeFirst().get());
+                }
+                previous = current;
+                current = next;
+            }
+            while (!pending.isEmpty()) {
+                out.write(pending.removeFirst().get());
+            }
+        } catch (ExecutionException exc) {
+            throw (exc.getCause() instanceof Exception) ? (Exception) exc.getCause() : exc;
+        } finally {
+            for (Future<byte[]> f : pending) {
+                f.cancel(true);
+            }
+        }
+        writeIntLE(out, crc.getValue());
+        writeIntLE(out, size);
+    }
+
+    private byte[] readBlock(InputStream in) throws IOException {
+        byte[] block = new byte[blockSize_];
+        int len = 0;
+        int n;
+        while ((len < block.length) && ((n = in.read(block, len, block.length - len)) != -1)) {
+            len += n;
+        }
+        if (len == 0) {
+            return null;
+        }
+        if (len < block.length) {
+            byte[] back = new byte[len];
+            System.arraycopy(block, 0, back, 0, len);
+            block = back;
+        }
+        return block;
+    }
+
+    private static void writeIntLE(OutputStream out, long v) throws IOException {
+        out.write((int) (v & 0xff));
+        out.write((int) ((v >> 8) & 0xff));
+        out.write((int) ((v >> 16) & 0xff));
+        out.write((int) ((v >> 24) & 0xff));
+    }
+
+    private class DeflateBlock implements Callable<byte[]> {
+        private final byte[] block_;
+        private final byte[] dictionary_;
+        private final boolean last_;
+
+        DeflateBlock(byte[] block, byte[] dictionary, boolean last) {
+            block_ = block;
+            dictionary_ = dictionary;
+            last_ = last;
+        }
+
+        public byte[] call() throws Exception {
+            Deflater def = new Deflater(level_, true);
+            try {
+                if (dictionary_ != null) {
+                    int len = Math.min(DICTIONARY_SIZE, dictionary_.length);
+                    def.setDictionary(dictionary_, dictionary_.length - len, len);
+                }
+                def.setInput(block_);
+                ByteArrayOutputStream back = new ByteArrayOutputStream(block_.length / 2 + 64);
+                byte[] buffer = new byte[16 * 1024];
+                if (last_) {
+                    def.finish();
+                    while (!def.finished()) {
+                        int n = def.deflate(buffer);
+                        back.write(buffer, 0, n);
+                    }
+                } else {
+                    int n;
+                    do {
+                        n = def.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        back.write(buffer, 0, n);
+                    } while (n == buffer.length);
+                }
+                return back.toByteArray();
+            } finally {
+                def.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Compress a source once for every output profile (see the outputProfiles parameter of {@link YuiCompressorMojo}),
+ * in parallel while the default output is compressed.
+ * Every profile has its own compressor (the parse of a js source can't be shared, it's altered by the compression)
+ * and its own error reporter (messages are replayed when the output is finished).
+ */
+class ProfileStage {
+    private final OutputProfile[] profiles_;
+    private final List<CompressorEngine> engines_ = new ArrayList<CompressorEngine>();
+    private final TextCodec codec_;
+    private final String encoding_;
+    private final RemoteCache remoteCache_;
+    private ExecutorService executor_ = SharedExecutor.newLane();
+
+    /**
+     * @param remoteCache where to look for outputs compressed by other builds (null for none)
+     */
+    ProfileStage(OutputProfile[] profiles, boolean jswarn, long cssParallelThreshold, TextCodec codec, String encoding, RemoteCache remoteCache) {
+        profiles_ = profiles;
+        for (OutputProfile profile : profiles) {
+            engines_.add(new CompressorEngine(profile.toOptions(jswarn), cssParallelThreshold));
+        }
+        codec_ = codec;
+        encoding_ = encoding;
+        remoteCache_ = remoteCache;
+    }
+
+    OutputProfile[] getProfiles() {
+        return profiles_;
+    }
+
+    /**
+     * @param index the index of the profile in {@link #getProfiles()}
+     */
+    Output newOutput(int index, File outFile) {
+        return new Output(profiles_[index], engines_.get(index), outFile);
+    }
+
+    /**
+     * Start the compression of every output, except those found in the remote cache.
+     * An output is compressed in the calling thread when the size of the source is not available in {@link SharedExecutor}.
+     *
+     * @param raw the content of the source
+     * @param text the content of the source, decoded
+     */
+    void start(final String extension, final byte[] raw, final String text, List<Output> outputs) throws Exception {
+        for (final Output po : outputs) {
+            if (remoteCache_ != null) {
+                po.cacheKey = po.engine.cacheKey(extension, encoding_, raw);
+                po.result = remoteCache_.getResult(po.cacheKey);
+                if (po.result != null) {
+                    continue;
+                }
+            }
+            po.task = HeldTask.submit(executor_, new Callable<CompressorDaemon.Result>() {
+                public CompressorDaemon.Result call() throws Exception {
+                    CompressorDaemon.RecordingErrorReporter reporter = new CompressorDaemon.RecordingErrorReporter();
+                    byte[] output = null;
+                    Tracing.Span span = Tracing.start("compress", po.outFile.getPath()).type(extension).engine("profile " + po.profile.suffix).inputSize(raw.length);
+                    try {
+                        output = codec_.encode(po.engine.compress(extension, text, reporter));
+                        span.outputSize(output.length);
+                    } catch (EvaluatorException exc) {
+                        // already recorded as an error
+                    } finally {
+                        span.end();
+                    }
+                    return new CompressorDaemon.Result(output, reporter.messages);
+                }
+            }, raw.length, true);
+        }
+    }
+
+    /**
+     * Wait for the output of po, replay its messages into reporter and push it to the remote cache.
+     *
+     * @param inFile the source (for the error message)
+     * @return the compressed output
+     */
+    byte[] finish(Output po, File inFile, ErrorReporter reporter) throws Exception {
+        boolean fromCache = (po.result != null);
+        CompressorDaemon.Result result = fromCache ? po.result : po.task.get();
+        for (CompressorDaemon.Message m : result.messages) {
+            m.replay(reporter);
+        }
+        if (result.output == null) {
+            throw new EvaluatorException("failed to compress " + inFile + " for the output profile " + po.profile.suffix);
+        }
+        if ((po.cacheKey != null) && !fromCache) {
+            remoteCache_.putResult(po.cacheKey, result);
+        }
+        return result.output;
+    }
+
+    /**
+     * Cancel the outputs still in progress and release their bytes.
+     */
+    void cancel(List<Output> outputs) {
+        for (Output po : outputs) {
+            if (po.task != null) {
+                po.task.release();
+            }
+        }
+    }
+
+    void close() {
+        if (executor_ != null) {
+            executor_.shutdownNow();
+            executor_ = null;
+        }
+    }
+
+    /**
+     * The output of a source for a profile.
+     */
+    static class Output {
+        final OutputProfile profile;
+        final CompressorEngine engine;
+        final File outFile;
+        String cacheKey;
+        CompressorDaemon.Result result;
+        HeldTask<CompressorDaemon.Result> task;
+
+        Output(OutputProfile profile, CompressorEngine engine, File outFile) {
+            this.profile = profile;
+            this.engine = engine;
+            this.outFile = outFile;
+        }
+    }
+}
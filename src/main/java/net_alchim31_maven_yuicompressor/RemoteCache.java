@@ -0,0 +1,174 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Client of a remote cache of compressed outputs, using a plain http protocol :
+ * GET {baseUrl}/{key} returns the value (404 if missing), PUT {baseUrl}/{key} stores it.
+ *
+ * The first failure to reach the server disables the cache for the rest of the build (compression is done locally).
+ * Compressed outputs are stored with the warnings and errors of their compression (see {@link #getResult(String)}),
+ * so a hit reports the same messages as a local compression.
+ * see {@link RemoteCacheServer} for a reference implementation of the server.
+ */
+class RemoteCache {
+    // the entries of results are kept apart from the raw outputs stored by previous versions
+    private static final String RESULT_PREFIX = "result1-";
+
+    private final String baseUrl_;
+    private final int connectTimeout_;
+    private final int readTimeout_;
+    private final boolean push_;
+    private final Log log_;
+    private volatile boolean available_ = true;
+    private int hitCnt_;
+    private int missCnt_;
+
+    public RemoteCache(String baseUrl, int connectTimeout, int readTimeout, boolean push, Log log) {
+        baseUrl_ = baseUrl.endsWith("/") ? baseUrl : (baseUrl + "/");
+        connectTimeout_ = connectTimeout;
+        readTimeout_ = readTimeout;
+        push_ = push;
+        log_ = log;
+    }
+
+    /**
+     * @return the cached value or null (missing or cache unavailable)
+     */
+    public byte[] get(String key) {
+        if (!available_) {
+            return null;
+        }
+        HttpURLConnection cnx = null;
+        try {
+            cnx = open(key, "GET");
+            int status = cnx.getResponseCode();
+            if (status == HttpURLConnection.HTTP_OK) {
+                InputStream in = cnx.getInputStream();
+                try {
+                    byte[] back = IOUtil.toByteArray(in);
+                    synchronized (this) {
+                        hitCnt_++;
+                    }
+                    return back;
+                } finally {
+                    IOUtil.close(in);
+                }
+            }
+            if (status != HttpURLConnection.HTTP_NOT_FOUND) {
+                log_.debug("remote cache GET " + key + " : http status " + status);
+            }
+        } catch (IOException exc) {
+            disable(exc);
+        } finally {
+            if (cnx != null) {
+                cnx.disconnect();
+            }
+        }
+        synchronized (this) {
+            missCnt_++;
+        }
+        return null;
+    }
+
+    public void put(String key, byte[] value) {
+        if (!available_ || !push_) {
+            return;
+        }
+        HttpURLConnection cnx = null;
+        try {
+            cnx = open(key, "PUT");
+            cnx.setDoOutput(true);
+            cnx.setFixedLengthStreamingMode(value.length);
+            cnx.setRequestProperty("Content-Type", "application/octet-stream");
+            OutputStream out = cnx.getOutputStream();
+            try {
+                out.write(value);
+            } finally {
+                IOUtil.close(out);
+            }
+            int status = cnx.getResponseCode();
+            if ((status / 100) != 2) {
+                log_.debug("remote cache PUT " + key + " : http status " + status);
+            }
+        } catch (IOException exc) {
+            disable(exc);
+        } finally {
+            if (cnx != null) {
+                cnx.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @return the cached output of a compression and its messages, or null (missing, unreadable or cache unavailable)
+     */
+    public CompressorDaemon.Result getResult(String key) {
+        byte[] value = get(RESULT_PREFIX + key);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return CompressorDaemon.Result.readFrom(new DataInputStream(new ByteArrayInputStream(value)));
+        } catch (IOException exc) {
+            log_.debug("remote cache GET " + key + " : invalid entry (" + exc + ")");
+            return null;
+        }
+    }
+
+    /**
+     * @param result a successful compression (with an output)
+     */
+    public void putResult(String key, CompressorDaemon.Result result) {
+        if (!available_ || !push_) {
+            return;
+        }
+        ByteArrayOutputStream value = new ByteArrayOutputStream(result.output.length + 64);
+        try {
+            result.writeTo(new DataOutputStream(value));
+        } catch (IOException exc) {
+            // not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(exc);
+        }
+        put(RESULT_PREFIX + key, value.toByteArray());
+    }
+
+    public synchronized int getHitCnt() {
+        return hitCnt_;
+    }
+
+    public synchronized int getMissCnt() {
+        return missCnt_;
+    }
+
+    public boolean isAvailable() {
+        return available_;
+    }
+
+    private HttpURLConnection open(String key, String method) throws IOException {
+        HttpURLConnection cnx = (HttpURLConnection) new URL(baseUrl_ + key).openConnection();
+        cnx.setRequestMethod(method);
+        cnx.setConnectTimeout(connectTimeout_);
+        cnx.setReadTimeout(readTimeout_);
+        cnx.setUseCaches(false);
+        return cnx;
+    }
+
+    private void disable(IOException exc) {
+        if (available_) {
+            available_ = false;
+            log_.warn("remote cache " + baseUrl_ + " not available (" + exc + "), compress locally");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package net_alchim31_maven_yuicompressor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal implementation of the remote cache protocol (see {@link RemoteCache}),
+ * for tests and self-hosting. Entries are stored in a directory, or in memory if no directory is given.
+ *
+ * Usage: java -cp ... net_alchim31_maven_yuicompressor.RemoteCacheServer [port [directory]]
+ */
+public class RemoteCacheServer {
+    private static final Pattern KEY = Pattern.compile("[0-9A-Za-z_-][0-9A-Za-z._-]{0,199}");
+
+    private final HttpServer server_;
+    private final File directory_;
+    private final Map<String, byte[]> memory_ = new ConcurrentHashMap<>();
+
+    /**
+     * @param port port to listen (0 for any free port)
+     * @param directory where to store entries, null to keep them in memory
+     */
+    public RemoteCacheServer(int port, File directory) throws IOException {
+        directory_ = directory;
+        if (directory_ != null) {
+            directory_.mkdirs();
+        }
+        server_ = HttpServer.create(new InetSocketAddress(port), 0);
+        server_.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } catch (IOException exc) {
+                    throw exc;
+                } catch (Exception exc) {
+                    throw new IOException(exc);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server_.setExecutor(Executors.newCachedThreadPool());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 8080;
+        File directory = (args.length > 1) ? new File(args[1]) : null;
+        RemoteCacheServer server = new RemoteCacheServer(port, directory);
+        server.start();
+        System.out.println("yuicompressor remote cache listening on " + server.getUrl() + ((directory == null) ? " (in memory)" : (" (" + directory + ")")));
+    }
+
+    public void start() {
+        server_.start();
+    }
+
+    public void stop() {
+        server_.stop(0);
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server_.getAddress().getPort() + "/";
+    }
+
+    private void serve(HttpExchange exchange) throws Exception {
+        String key = exchange.getRequestURI().getPath().substring(1);
+        if (!KEY.matcher(key).matches()) {
+            sendEmptyResponse(exchange, 400);
+            return;
+        }
+        String method = exchange.getRequestMethod();
+        if ("GET".equals(method)) {
+            byte[] value = read(key);
+            if (value == null) {
+                sendEmptyResponse(exchange, 404);
+                return;
+            }
+            exchange.sendResponseHeaders(200, value.length);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(value);
+            } finally {
+                IOUtil.close(out);
+            }
+        } else if ("PUT".equals(method)) {
+            write(key, IOUtil.toByteArray(exchange.getRequestBody()));
+            sendEmptyResponse(exchange, 201);
+        } else {
+            sendEmptyResponse(exchange, 405);
+        }
+    }
+
+    /**
+     * Responses without body close the connection, else the jdk's HttpURLConnection could
+     * reuse it for the next request (eg: a PUT after a 404) and fail with an "unexpected end of file".
+     */
+    private static void sendEmptyResponse(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Connection", "close");
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private byte[] read(String key) throws Exception {
+        if (directory_ == null) {
+            return memory_.get(key);
+        }
+        File file = new File(directory_, key);
+        return file.isFile() ? OutputFiles.readBytes(file) : null;
+    }
+
+    private void write(String key, byte[] value) throws Exception {
+        if (directory_ == null) {
+            memory_.put(key, value);
+            return;
+        }
+        File tmp = File.createTempFile(".put", ".tmp", directory_);
+        OutputFiles.writeBytes(tmp, value);
+        File dest = new File(directory_, key);
+        if (!tmp.renameTo(dest)) {
+            dest.delete();
+            tmp.renameTo(dest);
+        }
+    }
+}
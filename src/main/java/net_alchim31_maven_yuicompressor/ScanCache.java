@@ -0,0 +1,205 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.codehaus.plexus.util.AbstractScanner;
+import org.codehaus.plexus.util.SelectorUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Listings of the files under the source directories, shared by the executions of the plugin in a module
+ * (stored in the plugin context), so several executions (compress with different settings, jslint,...)
+ * over the same directories walk them once. Includes and excludes are applied to the listing for every scan.
+ *
+ * A listing is reused while the last modification time of every directory in it is unchanged (adding, removing
+ * or renaming a file changes the time of its directory), so checking it costs a stat by directory, not by file.
+ * A directory modified in the last seconds before the walk could be modified again with the same time
+ * (coarse timestamps), its listing is never reused.
+ * The directories excluded with all their content (eg: "**&#47;node_modules/**") are not walked.
+ */
+class ScanCache {
+    private static final String CONTEXT_KEY = ScanCache.class.getName();
+    private static final long RACY_WINDOW = 2000;
+
+    // guarded by this
+    private final Map<File, Listing> listings_ = new HashMap<File, Listing>();
+    private int reuseCnt_ = 0;
+    private int walkCnt_ = 0;
+
+    /**
+     * @param pluginContext the context shared by the executions of the plugin in the module (null for none)
+     */
+    static ScanCache from(Map<?, ?> pluginContext) {
+        if (pluginContext == null) {
+            return new ScanCache();
+        }
+        // the context is declared as a raw Map by the plugin api
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> context = (Map<Object, Object>) pluginContext;
+        synchronized (context) {
+            ScanCache back = (ScanCache) context.get(CONTEXT_KEY);
+            if (back == null) {
+                back = new ScanCache();
+                context.put(CONTEXT_KEY, back);
+            }
+            return back;
+        }
+    }
+
+    /**
+     * @return the files under root (relative paths, like DirectoryScanner) matching includes and not excludes (null for none),
+     * default excludes are always applied
+     */
+    public String[] scan(File root, String[] includes, String[] excludes) throws IOException {
+        String[] includePatterns = normalize((includes == null) ? new String[]{"**"} : includes, null);
+        String[] excludePatterns = normalize(excludes, AbstractScanner.DEFAULTEXCLUDES);
+        Set<String> pruned = toPrunedDirs(excludePatterns);
+        Listing listing;
+        synchronized (this) {
+            File key = root.getAbsoluteFile();
+            listing = listings_.get(key);
+            // a listing pruned of fewer directories still has every file of this scan
+            if ((listing != null) && pruned.containsAll(listing.pruned) && listing.isValid()) {
+                reuseCnt_++;
+            } else {
+                listing = Listing.walk(key, pruned);
+                listings_.put(key, listing);
+                walkCnt_++;
+            }
+        }
+        List<String> back = new ArrayList<String>();
+        for (String name : listing.files) {
+            if (matches(includePatterns, name) && !matches(excludePatterns, name)) {
+                back.add(name);
+            }
+        }
+        return back.toArray(new String[back.size()]);
+    }
+
+    /**
+     * Patterns as normalized by DirectoryScanner (platform separator, "dir/" means "dir/**").
+     * The matching is implemented here, as the version of plexus-utils available at runtime depends on the version of maven.
+     */
+    private static String[] normalize(String[] patterns, String[] defaults) {
+        List<String> back = new ArrayList<String>();
+        if (patterns != null) {
+            back.addAll(Arrays.asList(patterns));
+        }
+        if (defaults != null) {
+            back.addAll(Arrays.asList(defaults));
+        }
+        for (int i = 0; i < back.size(); i++) {
+            String pattern = back.get(i).trim().replace('/', File.separatorChar).replace('\\', File.separatorChar);
+            if (pattern.endsWith(File.separator)) {
+                pattern += "**";
+            }
+            back.set(i, pattern);
+        }
+        return back.toArray(new String[back.size()]);
+    }
+
+    /**
+     * @return the patterns of the directories excluded with all their content ("dir/**" gives "dir"), not walked
+     */
+    private static Set<String> toPrunedDirs(String[] excludePatterns) {
+        Set<String> back = new TreeSet<String>();
+        String suffix = File.separator + "**";
+        for (String pattern : excludePatterns) {
+            if (pattern.endsWith(suffix) && (pattern.length() > suffix.length())) {
+                back.add(pattern.substring(0, pattern.length() - suffix.length()));
+            }
+        }
+        return back;
+    }
+
+    private static boolean matches(String[] patterns, String name) {
+        for (String pattern : patterns) {
+            if (SelectorUtils.matchPath(pattern, name, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int getReuseCnt() {
+        return reuseCnt_;
+    }
+
+    public synchronized int getWalkCnt() {
+        return walkCnt_;
+    }
+
+    /**
+     * Every file under a root (except under the pruned directories), and the modification time of every directory
+     * at the time of the walk.
+     */
+    private static class Listing {
+        final Set<String> pruned;
+        final String[] prunedPatterns;
+        final List<String> files = new ArrayList<String>();
+        final List<File> dirs = new ArrayList<File>();
+        final List<FileTime> dirTimes = new ArrayList<FileTime>();
+        boolean reusable = true;
+
+        private Listing(Set<String> pruned) {
+            this.pruned = pruned;
+            prunedPatterns = pruned.toArray(new String[pruned.size()]);
+        }
+
+        static Listing walk(File root, Set<String> pruned) throws IOException {
+            Listing back = new Listing(pruned);
+            long start = System.currentTimeMillis();
+            back.walk(root, "", start);
+            return back;
+        }
+
+        private void walk(File dir, String prefix, long start) throws IOException {
+            FileTime time = Files.getLastModifiedTime(dir.toPath());
+            if (time.toMillis() >= start - RACY_WINDOW) {
+                reusable = false;
+            }
+            dirs.add(dir);
+            dirTimes.add(time);
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                String name = prefix + child.getName();
+                if (child.isDirectory()) {
+                    if (!matches(prunedPatterns, name)) {
+                        walk(child, name + File.separator, start);
+                    }
+                } else {
+                    files.add(name);
+                }
+            }
+        }
+
+        boolean isValid() {
+            if (!reusable) {
+                return false;
+            }
+            for (int i = 0; i < dirs.size(); i++) {
+                try {
+                    if (!dirTimes.get(i).equals(Files.getLastModifiedTime(dirs.get(i).toPath()))) {
+                        return false;
+                    }
+                } catch (IOException exc) {
+                    // removed
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM-wide pool of worker threads shared by every execution of the plugin in a build (eg: modules built in parallel
+ * with "mvn -T 8"), so the number of compression threads stays bounded for the whole reactor.
+ *
+ * Every user (an execution, a parallel gzip, a parallel stylesheet compression,...) submits its tasks to its own {@link Lane},
+ * idle workers take the next task of the lanes in round robin, so a module with thousands of files doesn't delay the others.
+ * Tasks submitted from a worker (eg: the chunks of a stylesheet compressed for an output profile) run in the submitting thread,
+ * so a worker never waits for tasks queued behind it.
+ *
+ * Workers are started on demand (while queued tasks outnumber the idle workers) and stop after a minute without task.
+ * Their number is the number of processors, or the system property "maven.yuicompressor.threads".
+ *
+ * The bytes held in flight are bounded with {@link #acquireBytes(long)} (system property "maven.yuicompressor.maxInFlightBytes",
+ * default a quarter of the max heap) by the archive entries, the blocks of a parallel gzip, the output profiles and the sources
+ * read ahead by {@link FilePipeline}. A user that already holds bytes only tries to acquire more ({@link #tryAcquireBytes(long)})
+ * and does the work in its own thread when they are not available, so users never wait for each other.
+ */
+final class SharedExecutor {
+    private static final int THREAD_CNT = Math.max(1, Integer.getInteger("maven.yuicompressor.threads", Runtime.getRuntime().availableProcessors()));
+    private static final long IDLE_TIMEOUT = 60 * 1000;
+    private static final int MAX_PERMITS = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Long.getLong("maven.yuicompressor.maxInFlightBytes", Runtime.getRuntime().maxMemory() / 4) / 1024));
+
+    private static final Object LOCK = new Object();
+    private static final ThreadLocal<Boolean> WORKER = new ThreadLocal<Boolean>();
+    private static final Semaphore BYTES = new Semaphore(MAX_PERMITS, true);
+
+    // guarded by LOCK : the lanes with tasks to run, in the order they will be served
+    private static final LinkedList<Lane> ready_ = new LinkedList<Lane>();
+    private static int workerCnt_ = 0;
+    private static int idleCnt_ = 0;
+    // workers started and not waiting for a task yet
+    private static int startingCnt_ = 0;
+    private static int queuedCnt_ = 0;
+
+    private SharedExecutor() {
+    }
+
+    /**
+     * @return the max number of tasks running at the same time
+     */
+    public static int getThreadCnt() {
+        return THREAD_CNT;
+    }
+
+    public static Lane newLane() {
+        return new Lane();
+    }
+
+    /**
+     * Wait until the tasks in flight (of every execution) hold less than the max number of bytes.
+     * Every call must be followed by {@link #releaseBytes(long)} with the same value.
+     */
+    public static void acquireBytes(long bytes) throws InterruptedException {
+        BYTES.acquire(toPermits(bytes));
+    }
+
+    /**
+     * @return false if bytes are not available now (the caller should release bytes it holds before waiting)
+     */
+    public static boolean tryAcquireBytes(long bytes) {
+        return BYTES.tryAcquire(toPermits(bytes));
+    }
+
+    public static void releaseBytes(long bytes) {
+        BYTES.release(toPermits(bytes));
+    }
+
+    // for tests
+    static int availableBytePermits() {
+        return BYTES.availablePermits();
+    }
+
+    /**
+     * A value larger than the max is bounded to the max, so a single large file can always be processed.
+     * No byte takes no permit, so a caller that records 0 bytes doesn't need to tell apart what it acquired.
+     */
+    private static int toPermits(long bytes) {
+        if (bytes <= 0) {
+            return 0;
+        }
+        return (int) Math.max(1, Math.min(MAX_PERMITS, bytes / 1024));
+    }
+
+    // called with LOCK held
+    private static void signalWork() {
+        if (idleCnt_ > 0) {
+            LOCK.notifyAll();
+        }
+        // every idle or starting worker takes a task, start new ones for the remaining tasks
+        while ((queuedCnt_ > (idleCnt_ + startingCnt_)) && (workerCnt_ < THREAD_CNT)) {
+            workerCnt_++;
+            startingCnt_++;
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    work();
+                }
+            }, "yuicompressor-worker");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private static void work() {
+        WORKER.set(Boolean.TRUE);
+        boolean started = false;
+        while (true) {
+            Lane lane;
+            Runnable task;
+            synchronized (LOCK) {
+                if (!started) {
+                    startingCnt_--;
+                    started = true;
+                }
+                long idleSince = System.currentTimeMillis();
+                while (ready_.isEmpty()) {
+                    long remaining = IDLE_TIMEOUT - (System.currentTimeMillis() - idleSince);
+                    if (remaining <= 0) {
+                        workerCnt_--;
+                        return;
+                    }
+                    idleCnt_++;
+                    try {
+                        LOCK.wait(remaining);
+                    } catch (InterruptedException exc) {
+                        // a cancelled task interrupted this worker after its end, ignore
+                    } finally {
+                        idleCnt_--;
+                    }
+                }
+                lane = ready_.removeFirst();
+                task = lane.tasks_.removeFirst();
+                queuedCnt_--;
+                if (!lane.tasks_.isEmpty()) {
+                    ready_.addLast(lane);
+                }
+                lane.runningCnt_++;
+            }
+            try {
+                task.run();
+            } catch (Throwable exc) {
+                // tasks submitted as Callable or Future keep their failure, others have no one to report to
+            } finally {
+                Thread.interrupted();
+                synchronized (LOCK) {
+                    lane.runningCnt_--;
+                    LOCK.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * The tasks of one user of the shared workers. Shutting down a lane only affects its own tasks.
+     */
+    static final class Lane extends AbstractExecutorService {
+        // guarded by LOCK
+        private final LinkedList<Runnable> tasks_ = new LinkedList<Runnable>();
+        private int runningCnt_ = 0;
+        private boolean shutdown_ = false;
+
+        private Lane() {
+        }
+
+        public void execute(Runnable task) {
+            if (WORKER.get() != null) {
+                task.run();
+                return;
+            }
+            synchronized (LOCK) {
+                if (shutdown_) {
+                    throw new RejectedExecutionException("executor is shut down");
+                }
+                tasks_.add(task);
+                queuedCnt_++;
+                if (tasks_.size() == 1) {
+                    ready_.addLast(this);
+                }
+                signalWork();
+            }
+        }
+
+        public void shutdown() {
+            synchronized (LOCK) {
+                shutdown_ = true;
+            }
+        }
+
+        /**
+         * Remove the tasks not started (and cancel them if they are futures, so no one waits for them).
+         * Running tasks are not interrupted, cancel their futures for that.
+         */
+        public List<Runnable> shutdownNow() {
+            List<Runnable> back;
+            synchronized (LOCK) {
+                shutdown_ = true;
+                back = new ArrayList<Runnable>(tasks_);
+                queuedCnt_ -= tasks_.size();
+                tasks_.clear();
+                ready_.remove(this);
+            }
+            for (Runnable task : back) {
+                if (task instanceof Future) {
+                    ((Future<?>) task).cancel(false);
+                }
+            }
+            return back;
+        }
+
+        public boolean isShutdown() {
+            synchronized (LOCK) {
+                return shutdown_;
+            }
+        }
+
+        public boolean isTerminated() {
+            synchronized (LOCK) {
+                return shutdown_ && tasks_.isEmpty() && (runningCnt_ == 0);
+            }
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (LOCK) {
+                while (!(shutdown_ && tasks_.isEmpty() && (runningCnt_ == 0))) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LOCK.wait(remaining);
+                }
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package net_alchim31_maven_yuicompressor;
+
+/**
+ * Max sizes allowed for the outputs that match a path pattern (relative to the webapp or the output directory,
+ * eg: "js/*-min.js", or "static/all-*.js" for the chunks of an aggregation).
+ */
+public class SizeBudget {
+    public String pattern;
+    /** max size (in bytes) of the output, negative for no limit */
+    public long maxSize = -1;
+    /** max size (in bytes) of the gzipped output (estimated if the output is not gzipped), negative for no limit */
+    public long maxGzipSize = -1;
+    /** apply the budget to the sum of the sizes of every matching output, instead of to each output */
+    public boolean total = false;
+    /** report an exceeded budget as an error that fails the build, else as a warning */
+    public boolean failOnExceed = true;
+
+    @Override
+    public String toString() {
+        return pattern + "|" + maxSize + "|" + maxGzipSize + "|" + total + "|" + failOnExceed;
+    }
+}
@@ -0,0 +1,93 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Sizes (raw and gzipped) of every output of an execution, by output path.
+ * Saved at the end of the execution, so the next one could report the deltas.
+ */
+class SizeReport {
+    static class Entry {
+        final File file;
+        final long size;
+        long gzipSize;
+
+        Entry(File file, long size, long gzipSize) {
+            this.file = file;
+            this.size = size;
+            this.gzipSize = gzipSize;
+        }
+
+        /**
+         * @return the size of the gzipped version, estimated if there is no gzipped version
+         */
+        long getGzipSize() throws Exception {
+            if (gzipSize < 0) {
+                gzipSize = OutputFiles.deflatedSize(OutputFiles.readBytes(file)) + 18;
+            }
+            return gzipSize;
+        }
+    }
+
+    private final Map<String, Entry> entries_ = new TreeMap<String, Entry>();
+
+    /**
+     * @param gzipSize size of the gzipped version, negative if none
+     */
+    public void add(String path, File file, long size, long gzipSize) {
+        entries_.put(path, new Entry(file, size, gzipSize));
+    }
+
+    public Map<String, Entry> getEntries() {
+        return entries_;
+    }
+
+    /**
+     * @return the sizes saved by a previous execution ({size, gzipSize} by path), empty if none
+     */
+    public static Map<String, long[]> load(File file) throws Exception {
+        Map<String, long[]> back = new TreeMap<String, long[]>();
+        if (!file.isFile()) {
+            return back;
+        }
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            IOUtil.close(in);
+        }
+        for (String path : props.stringPropertyNames()) {
+            String[] values = props.getProperty(path).split(",");
+            try {
+                back.put(path, new long[]{Long.parseLong(values[0]), Long.parseLong(values[1])});
+            } catch (RuntimeException exc) {
+                // ignore malformed entry
+            }
+        }
+        return back;
+    }
+
+    public void store(File file) throws Exception {
+        Properties props = new Properties();
+        for (Map.Entry<String, Entry> entry : entries_.entrySet()) {
+            props.setProperty(entry.getKey(), entry.getValue().size + "," + entry.getValue().gzipSize);
+        }
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            props.store(out, "yuicompressor-maven-plugin sizes of outputs (size,gzipSize), used to report deltas");
+        } finally {
+            IOUtil.close(out);
+        }
+    }
+}
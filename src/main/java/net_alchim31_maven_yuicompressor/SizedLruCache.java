@@ -0,0 +1,103 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Cache bounded by the total size (eg: in bytes) of its values, that evicts the least recently used values first.
+ * Concurrent requests for the same missing key share a single load (the first caller loads, the others wait for its result).
+ * Failed loads are not cached. A value larger than the max size is returned but not cached.
+ */
+class SizedLruCache<K, V> {
+
+    interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    private final long maxSize_;
+    private final Weigher<V> weigher_;
+    // guarded by this
+    private final LinkedHashMap<K, V> entries_ = new LinkedHashMap<K, V>(16, 0.75f, true);
+    private long size_ = 0;
+    private long hitCnt_ = 0;
+    private long loadCnt_ = 0;
+    private final ConcurrentHashMap<K, FutureTask<V>> loading_ = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    public SizedLruCache(long maxSize, Weigher<V> weigher) {
+        maxSize_ = maxSize;
+        weigher_ = weigher;
+    }
+
+    public V get(K key, Callable<V> loader) throws Exception {
+        synchronized (this) {
+            V back = entries_.get(key);
+            if (back != null) {
+                hitCnt_++;
+                return back;
+            }
+        }
+        FutureTask<V> task = new FutureTask<V>(loader);
+        FutureTask<V> current = loading_.putIfAbsent(key, task);
+        if (current == null) {
+            current = task;
+            try {
+                task.run();
+                put(key, task.get());
+            } catch (ExecutionException exc) {
+                // rethrown below (to every caller)
+            } finally {
+                loading_.remove(key, task);
+            }
+        }
+        try {
+            return current.get();
+        } catch (ExecutionException exc) {
+            throw (exc.getCause() instanceof Exception) ? (Exception) exc.getCause() : exc;
+        }
+    }
+
+    private synchronized void put(K key, V value) {
+        loadCnt_++;
+        long weight = weigher_.weigh(value);
+        if (weight > maxSize_) {
+            return;
+        }
+        V previous = entries_.put(key, value);
+        if (previous != null) {
+            size_ -= weigher_.weigh(previous);
+        }
+        size_ += weight;
+        Iterator<Map.Entry<K, V>> it = entries_.entrySet().iterator();
+        while ((size_ > maxSize_) && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            size_ -= weigher_.weigh(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    public synchronized long getSize() {
+        return size_;
+    }
+
+    public synchronized int getEntryCnt() {
+        return entries_.size();
+    }
+
+    public synchronized long getHitCnt() {
+        return hitCnt_;
+    }
+
+    public synchronized long getLoadCnt() {
+        return loadCnt_;
+    }
+
+    public synchronized void clear() {
+        entries_.clear();
+        size_ = 0;
+    }
+}
@@ -39,6 +39,30 @@ public class SourceFile {
         return new File(destRoot_, rpath_ + suffix + extension_);
     }
 
+    /**
+     * @return the path of the file relative to its source root
+     */
+    public String getRelativePath() {
+        return rpath_ + extension_;
+    }
+
+    /**
+     * @return the root directory of the file returned by {@link #toFile()}
+     */
+    public File toFileRoot() {
+        if (destAsSource_) {
+            File defaultDest = new File(destRoot_, rpath_ + extension_);
+            if (defaultDest.exists() && defaultDest.canRead()) {
+                return destRoot_;
+            }
+        }
+        return srcRoot_;
+    }
+
+    public File getDestRoot() {
+        return destRoot_;
+    }
+
     public String getExtension() {
         return extension_;
     }
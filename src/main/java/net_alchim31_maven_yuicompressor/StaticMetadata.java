@@ -0,0 +1,134 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JSON table of the metadata a server needs to answer conditional and Accept-Encoding requests
+ * without reading the outputs, eg:
+ * <pre>
+ * {
+ *   "js/app-min.js" : { "etag" : "\"3f9a1c2b...\"", "contentType" : "application/javascript; charset=UTF-8", "length" : 1234,
+ *     "encodings" : { "gzip" : { "path" : "js/app-min.js.gz", "etag" : "\"3f9a1c2b...-gz\"", "length" : 456 },
+ *       "zstd" : { "path" : "js/app-min.js.zst", "etag" : "\"3f9a1c2b...-zst\"", "length" : 401, "dictionary" : "static/assets.dict" } } }
+ * }
+ * </pre>
+ * The strong ETag is the hash of the content. A version compressed with a dictionary can only be served to clients that
+ * have it. Entries are sorted by path, so the file is stable between builds.
+ */
+class StaticMetadata {
+    private static final Map<String, String> CONTENT_TYPES = new TreeMap<String, String>();
+
+    static {
+        CONTENT_TYPES.put("js", "application/javascript");
+        CONTENT_TYPES.put("css", "text/css");
+        CONTENT_TYPES.put("json", "application/json");
+        CONTENT_TYPES.put("html", "text/html");
+        CONTENT_TYPES.put("htm", "text/html");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("xml", "application/xml");
+        CONTENT_TYPES.put("txt", "text/plain");
+    }
+
+    private final String charset_;
+    private final Map<String, Entry> entries_ = new TreeMap<String, Entry>();
+
+    /**
+     * @param charset charset of the text outputs
+     */
+    public StaticMetadata(String charset) {
+        charset_ = Charset.forName(charset).name();
+    }
+
+    /**
+     * @param hash hash of the content (hexadecimal)
+     * @param gzipPath path of the gzipped version, null if none
+     */
+    public void add(String path, String hash, long length, String gzipPath, long gzipLength) {
+        entries_.put(path, new Entry(hash, length));
+        if (gzipPath != null) {
+            addEncoding(path, "gzip", gzipPath, gzipLength, null);
+        }
+    }
+
+    /**
+     * Add a precompressed version of path (ignored if path was not added), its ETag is suffixed by the extension
+     * of encodedPath (eg: "-zst").
+     *
+     * @param dictionary path of the dictionary needed to decompress it, null if none
+     */
+    public void addEncoding(String path, String encoding, String encodedPath, long length, String dictionary) {
+        Entry entry = entries_.get(path);
+        if (entry == null) {
+            return;
+        }
+        String suffix = encodedPath.substring(encodedPath.lastIndexOf('.') + 1);
+        StringBuilder json = new StringBuilder();
+        json.append("{ \"path\" : ").append(AssetManifest.quote(encodedPath))
+                .append(", \"etag\" : ").append(AssetManifest.quote("\"" + entry.hash + "-" + suffix + "\""))
+                .append(", \"length\" : ").append(length);
+        if (dictionary != null) {
+            json.append(", \"dictionary\" : ").append(AssetManifest.quote(dictionary));
+        }
+        entry.encodings.put(encoding, json.append(" }").toString());
+    }
+
+    String contentType(String path) {
+        String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase();
+        String back = CONTENT_TYPES.get(extension);
+        if (back == null) {
+            return "application/octet-stream";
+        }
+        return (back.startsWith("text/") || back.startsWith("application/")) ? (back + "; charset=" + charset_) : back;
+    }
+
+    public String toJson() {
+        StringBuilder back = new StringBuilder("{\n");
+        String sep = "";
+        for (Map.Entry<String, Entry> entry : entries_.entrySet()) {
+            back.append(sep).append("  ").append(AssetManifest.quote(entry.getKey())).append(" : ");
+            Entry e = entry.getValue();
+            back.append("{ \"etag\" : ").append(AssetManifest.quote("\"" + e.hash + "\""))
+                    .append(", \"contentType\" : ").append(AssetManifest.quote(contentType(entry.getKey())))
+                    .append(", \"length\" : ").append(e.length)
+                    .append(", \"encodings\" : {");
+            String encodingSep = " ";
+            for (Map.Entry<String, String> encoding : e.encodings.entrySet()) {
+                back.append(encodingSep).append(AssetManifest.quote(encoding.getKey())).append(" : ").append(encoding.getValue());
+                encodingSep = ", ";
+            }
+            back.append(e.encodings.isEmpty() ? "" : " ").append("} }");
+            sep = ",\n";
+        }
+        return back.append("\n}\n").toString();
+    }
+
+    /**
+     * Write the table, except if file already has the same content.
+     *
+     * @return true if file was (re)written
+     */
+    public boolean writeTo(File file) throws Exception {
+        byte[] content = toJson().getBytes("UTF-8");
+        if (OutputFiles.sameContent(content, file)) {
+            return false;
+        }
+        file.getParentFile().mkdirs();
+        OutputFiles.writeBytes(file, content);
+        return true;
+    }
+
+    private static class Entry {
+        final String hash;
+        final long length;
+        // json of the precompressed versions, by encoding
+        final Map<String, String> encodings = new TreeMap<String, String>();
+
+        Entry(String hash, long length) {
+            this.hash = hash;
+            this.length = length;
+        }
+    }
+}
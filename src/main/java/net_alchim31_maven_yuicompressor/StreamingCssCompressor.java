@@ -0,0 +1,279 @@
+package net_alchim31_maven_yuicompressor;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compress a stylesheet from a Reader to a Writer with a memory bounded by the size of a few chunks, whatever the size of the stylesheet.
+ *
+ * The source is read char by char and cut at top-level block boundaries (like {@link ParallelCssCompressor}), as soon as
+ * the current chunk reaches the chunk size. Every chunk is compressed by {@link CssCompressor} (a few in parallel) and written
+ * in order. The tokenizer follows the order of CssCompressor (data urls, then comments, then strings), so a chunk never ends inside
+ * one of them, nor between a "\*&#47;" comment hack and the comment that closes it : the concatenation of the compressed chunks
+ * is the output of a single pass.
+ *
+ * A stylesheet that can only be compressed as a whole (a '@charset' after the first chunk, that CssCompressor moves to the top,
+ * or unbalanced braces/parenthesis) is detected while streaming : {@link #compress(Reader, Writer)} then returns false, and the caller
+ * must compress the whole stylesheet again in one pass (the output written so far must be discarded).
+ * Line breaks (linebreakpos) depend on the whole output, they are not supported.
+ */
+class StreamingCssCompressor {
+    private static final Pattern DATA_URL_START = Pattern.compile("url\\(\\s*([\"']?)data:$");
+    private static final String CHARSET = "@charset";
+
+    private static final int NORMAL = 0;
+    private static final int COMMENT = 1;
+    private static final int STRING = 2;
+    private static final int DATA_URL = 3;
+
+    private final ExecutorService executor_;
+    private final int chunkSize_;
+    private final int maxChunksInFlight_;
+
+    public StreamingCssCompressor(ExecutorService executor, int chunkSize, int maxChunksInFlight) {
+        executor_ = executor;
+        chunkSize_ = chunkSize;
+        maxChunksInFlight_ = Math.max(1, maxChunksInFlight);
+    }
+
+    /**
+     * @return false if the stylesheet can't be compressed by chunks (out contains a partial output, in is partially read)
+     */
+    public boolean compress(Reader in, Writer out) throws Exception {
+        LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
+        try {
+            Tokenizer tokenizer = new Tokenizer();
+            StringBuilder chunk = new StringBuilder(chunkSize_ + 1024);
+            boolean first = true;
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                for (int i = 0; i < n; i++) {
+                    chunk.append(buffer[i]);
+                    if (!tokenizer.next(chunk)) {
+                        return false;
+                    }
+                    if (tokenizer.charsetFound && !first) {
+                        return false;
+                    }
+                    if (tokenizer.atBoundary && (chunk.length() >= chunkSize_)) {
+                        submit(chunk.toString(), pending, out);
+                        chunk.setLength(0);
+                        first = false;
+                    }
+                }
+            }
+            if (!tokenizer.isBalanced()) {
+                return false;
+            }
+            if (chunk.length() > 0) {
+                submit(chunk.toString(), pending, out);
+            }
+            while (!pending.isEmpty()) {
+                out.write(pending.removeFirst().get());
+            }
+            return true;
+        } catch (ExecutionException exc) {
+            throw (exc.getCause() instanceof Exception) ? (Exception) exc.getCause() : exc;
+        } finally {
+            for (Future<String> result : pending) {
+                result.cancel(true);
+            }
+        }
+    }
+
+    private void submit(final String chunk, LinkedList<Future<String>> pending, Writer out) throws Exception {
+        while (pending.size() >= maxChunksInFlight_) {
+            out.write(pending.removeFirst().get());
+        }
+        pending.add(executor_.submit(new Callable<String>() {
+            public String call() throws Exception {
+                StringWriter back = new StringWriter(chunk.length() / 2 + 16);
+                compressChunk(chunk, back);
+                return back.toString();
+            }
+        }));
+    }
+
+    private static void compressChunk(String css, Writer out) throws IOException {
+        new CssCompressor(new StringReader(css)).compress(out, -1);
+    }
+
+    /**
+     * State of the scan, updated by every char appended to the current chunk.
+     * CssCompressor finds data urls in the raw text, then comments (even inside strings), then strings
+     * (a backslash before a quote doesn't prevent it to start a string).
+     */
+    private static class Tokenizer {
+        int state = NORMAL;
+        int commentReturnState = NORMAL;
+        int dataUrlReturnState = NORMAL;
+        boolean dataUrlInParens = false;
+        char quote = 0;
+        int stringStart = -1;
+        char terminator = 0;
+        boolean terminatorFound = false;
+        boolean escaped = false;
+        char commentFirst = 0;
+        int commentLength = 0;
+        boolean commentHack = false;
+        char previous = 0;
+        int depth = 0;
+        int parens = 0;
+        /** the last char is a '}' where the chunk can end */
+        boolean atBoundary = false;
+        /** the last char ends a '@charset' */
+        boolean charsetFound = false;
+
+        /**
+         * @return false if the stylesheet is unbalanced
+         */
+        boolean next(StringBuilder chunk) {
+            char c = chunk.charAt(chunk.length() - 1);
+            atBoundary = false;
+            charsetFound = false;
+            switch (state) {
+                case DATA_URL:
+                    // like CssCompressor.extractDataUrls : up to the first terminator not escaped, then up to the next ')'
+                    if (terminatorFound) {
+                        if (c == ')') {
+                            endDataUrl();
+                        }
+                    } else if ((c == terminator) && (previous != '\\')) {
+                        if (terminator == ')') {
+                            endDataUrl();
+                        } else {
+                            terminatorFound = true;
+                        }
+                    }
+                    break;
+                case COMMENT:
+                    commentLength++;
+                    if (commentLength == 1) {
+                        commentFirst = c;
+                    }
+                    if ((c == '/') && (previous == '*') && (commentLength >= 2)) {
+                        // a comment ended by "\*/" preserves the next one (whatever it is), they must stay in the same chunk
+                        if (commentHack) {
+                            commentHack = false;
+                        } else {
+                            commentHack = (commentLength >= 3) && (commentFirst != '!') && (chunk.charAt(chunk.length() - 3) == '\\');
+                        }
+                        state = commentReturnState;
+                        previous = 0;
+                        return true;
+                    }
+                    if ((c == ':') && startDataUrl(chunk)) {
+                        dataUrlReturnState = COMMENT;
+                    }
+                    break;
+                case STRING:
+                    if ((c == '*') && (previous == '/')) {
+                        startComment(STRING);
+                    } else if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == quote) {
+                        state = NORMAL;
+                    } else if ((c == ':') && startDataUrl(chunk)) {
+                        // url("data:...") is a data url (and no more a string), "...url(data:...)..." is a data url in a string
+                        boolean quoted = (terminator != ')') && (chunk.lastIndexOf(String.valueOf(terminator)) == stringStart);
+                        dataUrlReturnState = quoted ? NORMAL : STRING;
+                        dataUrlInParens = quoted;
+                    }
+                    break;
+                default:
+                    if ((c == '*') && (previous == '/')) {
+                        startComment(NORMAL);
+                    } else if ((c == '"') || (c == '\'')) {
+                        state = STRING;
+                        quote = c;
+                        stringStart = chunk.length() - 1;
+                        escaped = false;
+                    } else if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '(') {
+                        parens++;
+                    } else if (c == ')') {
+                        parens--;
+                    } else if (c == '{') {
+                        depth++;
+                    } else if (c == '}') {
+                        depth--;
+                        atBoundary = (depth == 0) && (parens == 0) && !commentHack;
+                    } else if ((c == ':') && startDataUrl(chunk)) {
+                        dataUrlReturnState = NORMAL;
+                        dataUrlInParens = true;
+                    }
+                    if ((c == 't') && endsWith(chunk, CHARSET)) {
+                        charsetFound = true;
+                    }
+                    if ((depth < 0) || (parens < 0)) {
+                        return false;
+                    }
+                    break;
+            }
+            previous = c;
+            return true;
+        }
+
+        boolean isBalanced() {
+            return (depth == 0) && (parens == 0) && (state == NORMAL) && !commentHack;
+        }
+
+        private void startComment(int returnState) {
+            state = COMMENT;
+            commentReturnState = returnState;
+            commentLength = 0;
+            escaped = false;
+        }
+
+        /**
+         * @return true if the chunk ends with the start of a data url ("url(data:", "url('data:",...), then the state is DATA_URL
+         */
+        private boolean startDataUrl(StringBuilder chunk) {
+            if (!endsWith(chunk, "data:")) {
+                return false;
+            }
+            int start = chunk.lastIndexOf("url(");
+            if (start < 0) {
+                return false;
+            }
+            Matcher m = DATA_URL_START.matcher(chunk.subSequence(start, chunk.length()));
+            if (!m.find()) {
+                return false;
+            }
+            state = DATA_URL;
+            terminator = (m.group(1).length() == 0) ? ')' : m.group(1).charAt(0);
+            terminatorFound = false;
+            return true;
+        }
+
+        private void endDataUrl() {
+            state = dataUrlReturnState;
+            if ((state == NORMAL) && dataUrlInParens) {
+                parens--;
+            }
+        }
+
+        private static boolean endsWith(StringBuilder chunk, String suffix) {
+            int start = chunk.length() - suffix.length();
+            return (start >= 0) && (chunk.indexOf(suffix, start) == start);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.mozilla.javascript.ErrorReporter;
+
+/**
+ * Minification of svg : comments and metadata elements are removed, whitespace between tags is removed
+ * and whitespace inside tags is collapsed. The content of text elements (text, tspan,...), style, script,
+ * CDATA sections, processing instructions and quoted attribute values are kept as is.
+ */
+class SvgMinifier extends MarkupMinifier {
+    private static final String[] TEXT_ELEMENTS = {"text", "tspan", "textPath", "title", "desc", "style", "script"};
+
+    public String minify(String source, ErrorReporter reporter) throws Exception {
+        StringBuilder out = new StringBuilder(source.length());
+        int n = source.length();
+        int i = 0;
+        int textDepth = 0;
+        while (i < n) {
+            char c = source.charAt(i);
+            if (source.startsWith("<!--", i)) {
+                i = skipPast(source, "-->", i + 4);
+            } else if (source.startsWith("<![CDATA[", i)) {
+                i = copyPast(source, "]]>", i, out);
+            } else if (source.startsWith("<?", i)) {
+                i = copyPast(source, "?>", i, out);
+            } else if (source.startsWith("<!", i)) {
+                // doctype, with its internal subset if any
+                int bracket = source.indexOf('[', i);
+                int gt = source.indexOf('>', i);
+                i = ((bracket >= 0) && (bracket < gt)) ? copyPast(source, "]>", i, out) : copyTag(source, i, out);
+            } else if ((c == '<') && isTagStart(source, i)) {
+                String name = tagName(source, i);
+                boolean closing = isClosingTag(source, i);
+                if (!closing && "metadata".equals(name)) {
+                    int end = skipPast(source, ">", i);
+                    if (source.charAt(end - 2) != '/') {
+                        int close = source.indexOf("</metadata", end);
+                        end = (close < 0) ? n : skipPast(source, ">", close);
+                    }
+                    i = end;
+                    continue;
+                }
+                i = copyTag(source, i, out);
+                if (isTextElement(name)) {
+                    if (closing) {
+                        textDepth = Math.max(0, textDepth - 1);
+                    } else if (!endsWithSelfClosingTag(out)) {
+                        textDepth++;
+                    }
+                }
+            } else if (isSpace(c) && (textDepth == 0)) {
+                int end = skipSpaces(source, i);
+                boolean betweenTags = ((out.length() == 0) || (out.charAt(out.length() - 1) == '>')) && ((end >= n) || (source.charAt(end) == '<'));
+                if (!betweenTags) {
+                    out.append(source, i, end);
+                }
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isTextElement(String name) {
+        for (String text : TEXT_ELEMENTS) {
+            if (text.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
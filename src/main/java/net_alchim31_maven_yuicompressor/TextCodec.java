@@ -0,0 +1,60 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.nio.charset.Charset;
+
+/**
+ * Decode sources and encode outputs in one step, from and to byte arrays.
+ *
+ * Most js and css files are pure ascii. When the charset encodes ascii as itself (utf-8, iso-8859-x, windows-125x,...),
+ * a fast scan detects them and they are converted as latin1 (a plain copy of bytes to chars),
+ * without the generic decoder/encoder of the charset.
+ */
+class TextCodec {
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    private final Charset charset_;
+    private final boolean asciiCompatible_;
+
+    public TextCodec(String encoding) {
+        charset_ = Charset.forName(encoding);
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        asciiCompatible_ = charset_.canEncode() && new String(ascii, charset_).equals(new String(ascii, LATIN1));
+    }
+
+    public Charset getCharset() {
+        return charset_;
+    }
+
+    public String decode(byte[] raw) {
+        if (asciiCompatible_ && isAscii(raw)) {
+            return new String(raw, LATIN1);
+        }
+        return new String(raw, charset_);
+    }
+
+    public byte[] encode(String text) {
+        if (asciiCompatible_ && isAscii(text)) {
+            return text.getBytes(LATIN1);
+        }
+        return text.getBytes(charset_);
+    }
+
+    static boolean isAscii(byte[] raw) {
+        int acc = 0;
+        for (int i = 0; i < raw.length; i++) {
+            acc |= raw[i];
+        }
+        return acc >= 0;
+    }
+
+    static boolean isAscii(String text) {
+        int acc = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            acc |= text.charAt(i);
+        }
+        return acc < 0x80;
+    }
+}
@@ -0,0 +1,70 @@
+package net_alchim31_maven_yuicompressor;
+
+/**
+ * Spans of the phases of the plugin (scan, read, compress, write, gzip, aggregate, lint), recorded as
+ * Java Flight Recorder events (see {@link JfrTracing}) when the JVM provides JFR, else ignored.
+ *
+ * Usage:
+ * <pre>
+ * Tracing.Span span = Tracing.start("gzip", file.getPath());
+ * try {
+ *     ...
+ *     span.inputSize(in).outputSize(out);
+ * } finally {
+ *     span.end();
+ * }
+ * </pre>
+ */
+final class Tracing {
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return JfrTracing.isAvailable();
+        } catch (Throwable exc) {
+            return false;
+        }
+    }
+
+    private Tracing() {
+    }
+
+    /**
+     * @param phase name of the phase (eg: "compress")
+     * @param path the file or directory processed by the phase
+     */
+    static Span start(String phase, String path) {
+        return JFR_AVAILABLE ? JfrTracing.start(phase, path) : Span.NOOP;
+    }
+
+    /**
+     * Data of a phase, setters do nothing if the span is not recorded.
+     */
+    static class Span {
+        static final Span NOOP = new Span();
+
+        Span type(String v) {
+            return this;
+        }
+
+        Span engine(String v) {
+            return this;
+        }
+
+        Span inputSize(long v) {
+            return this;
+        }
+
+        Span outputSize(long v) {
+            return this;
+        }
+
+        Span count(long v) {
+            return this;
+        }
+
+        void end() {
+        }
+    }
+}
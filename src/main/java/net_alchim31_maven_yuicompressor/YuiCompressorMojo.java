@@ -1,15 +1,36 @@
 package net_alchim31_maven_yuicompressor;
 
-import com.yahoo.platform.yui.compressor.CssCompressor;
-import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.SelectorUtils;
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+import org.sonatype.plexus.build.incremental.BuildContext;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -24,6 +45,8 @@ import java.util.zip.GZIPOutputStream;
 // @SuppressWarnings("unchecked")
 public class YuiCompressorMojo extends MojoSupport {
 
+    /** extensions of files already compressed, stored as is into archive */
+
     /**
      * Read the input file using "encoding".
      *
@@ -80,6 +103,36 @@ public class YuiCompressorMojo extends MojoSupport {
      */
     private boolean disableOptimizations;
 
+    /**
+     * [css only] size (in bytes) from which a stylesheet is split at top-level rule boundaries
+     * and the chunks are compressed in parallel (the result is the same as a single pass).
+     * A negative value disables the parallel compression.
+     *
+     * @parameter property="maven.yuicompressor.cssParallelThreshold" default-value="524288"
+     */
+    private long cssParallelThreshold;
+
+    /**
+     * [css only] size (in bytes) from which a stylesheet is compressed by chunks while it is read and the output written,
+     * so the memory used doesn't depend on the size of the stylesheet (the result is the same as a single pass).
+     * Not used with linebreakpos, cssImageInliner or outputProfiles (they need the whole source), nor for a stylesheet with
+     * a '@charset' after the first chunk. With useSmallestFile or remoteCache, the key of the stylesheet is hashed from the file
+     * before the compression (a second sequential read). A negative value disables the streaming.
+     *
+     * @parameter property="maven.yuicompressor.cssStreamThreshold" default-value="4194304"
+     */
+    private long cssStreamThreshold;
+
+    /**
+     * other types of files to minify with the js and css files (when includes is not set), a comma separated list of :
+     * json (whitespace removed), svg (comments, metadata and whitespace between tags removed),
+     * html (*.html and *.htm) and jsp (comments removed and whitespace collapsed, except in pre, textarea, script and style).
+     * With includes, every included file of these types is minified.
+     *
+     * @parameter property="maven.yuicompressor.types"
+     */
+    private String types;
+
     /**
      * force the compression of every files,
      * else if compressed file already exists and is younger than source file, nothing is done.
@@ -111,6 +164,14 @@ public class YuiCompressorMojo extends MojoSupport {
      */
     private int level;
 
+    /**
+     * size (in bytes) from which the gzipped version is created by deflating blocks on several threads.
+     * A negative value disables the parallel gzip.
+     *
+     * @parameter property="maven.yuicompressor.gzipParallelThreshold" default-value="1048576"
+     */
+    private long gzipParallelThreshold;
+
     /**
      * show statistics (compression ratio).
      *
@@ -132,8 +193,315 @@ public class YuiCompressorMojo extends MojoSupport {
      */
     private boolean useSmallestFile;
 
+    /**
+     * when a file is used as is (nocompress, or useSmallestFile when the compressed file is larger), create the output
+     * as a hard link to the source instead of a copy (if the file system supports it, else the file is copied).
+     * Don't use it if the outputs are modified in place later in the build, the sources would be modified too.
+     *
+     * @parameter property="maven.yuicompressor.passThroughLinks" default-value="false"
+     */
+    private boolean passThroughLinks;
+
+    /**
+     * number of sources read ahead, and of outputs waiting to be written, while a source is compressed : reads and writes
+     * (rename, gzip, content hashed copies,...) run on their own threads, so slow disks or network file systems don't leave
+     * the compression idle. 0 to process every file serially. Not used by incremental builds (IDE).
+     *
+     * @parameter property="maven.yuicompressor.pipelineDepth" default-value="4"
+     */
+    private int pipelineDepth;
+
+    /**
+     * compress js and css files in a long-lived local daemon process (shared by maven invocations),
+     * to avoid the warm-up of the compressors on every build. Compression is done in process if the daemon
+     * is not available.
+     *
+     * @parameter property="maven.yuicompressor.daemon" default-value="false"
+     */
+    private boolean daemon;
+
+    /**
+     * loopback port of the compressor daemon.
+     *
+     * @parameter property="maven.yuicompressor.daemonPort" default-value="17531"
+     */
+    private int daemonPort;
+
+    /**
+     * start the compressor daemon (in background) if it is not running.
+     *
+     * @parameter property="maven.yuicompressor.daemonAutoStart" default-value="true"
+     */
+    private boolean daemonAutoStart;
+
+    /**
+     * base url of a remote cache of compressed (and gzipped) outputs, eg: http://buildcache:8080/yuicompressor/ .
+     * Entries are read with GET {url}{key} and stored with PUT {url}{key}, the key is a hash of
+     * the source content and the compressor options. Without response, files are compressed locally.
+     *
+     * @parameter property="maven.yuicompressor.remoteCacheUrl"
+     */
+    private String remoteCacheUrl;
+
+    /**
+     * store locally compressed outputs into the remote cache (else the remote cache is only read).
+     *
+     * @parameter property="maven.yuicompressor.remoteCachePush" default-value="true"
+     */
+    private boolean remoteCachePush;
+
+    /**
+     * timeout (in milliseconds) to connect to the remote cache.
+     *
+     * @parameter property="maven.yuicompressor.remoteCacheConnectTimeout" default-value="1000"
+     */
+    private int remoteCacheConnectTimeout;
+
+    /**
+     * timeout (in milliseconds) to read a response of the remote cache.
+     *
+     * @parameter property="maven.yuicompressor.remoteCacheReadTimeout" default-value="5000"
+     */
+    private int remoteCacheReadTimeout;
+
+    /**
+     * compute a fingerprint of the effective inputs (content of the scanned sources and of the aggregated files,
+     * aggregations and compressor options) and skip the execution when it is the same as the previous execution
+     * and the outputs of the previous execution are still present.
+     * The plugin skips itself : it isn't integrated with a build cache extension. The fingerprint is saved with
+     * the list of outputs into stateDirectory, and exposed as the project property "yuicompressor.[executionId].fingerprint"
+     * (eg: to be used by a later plugin of the build).
+     *
+     * @parameter property="maven.yuicompressor.fingerprint" default-value="false"
+     */
+    private boolean fingerprint;
+
+    /**
+     * directory where the state (fingerprint and outputs) of every execution is saved.
+     *
+     * @parameter default-value="${project.build.directory}/yuicompressor"
+     */
+    private File stateDirectory;
+
+    /**
+     * @parameter default-value="${mojoExecution}"
+     * @readonly
+     */
+    private MojoExecution mojoExecution;
+
+    /**
+     * @parameter default-value="${plugin.version}"
+     * @readonly
+     */
+    private String pluginVersion;
+
+    private String fingerprint_;
+    private final Set<File> outputs_ = new TreeSet<File>();
+
+    private RemoteCache remoteCache_;
+
+    /**
+     * additional outputs to produce for every js and css file, each with its own suffix and compressor settings.
+     * Every source is read once, and its outputs are compressed in parallel, eg:
+     * <pre>
+     * &lt;outputProfiles&gt;
+     *   &lt;outputProfile&gt;
+     *     &lt;suffix&gt;-debug&lt;/suffix&gt;
+     *     &lt;nomunge&gt;true&lt;/nomunge&gt;
+     *     &lt;linebreakpos&gt;0&lt;/linebreakpos&gt;
+     *   &lt;/outputProfile&gt;
+     * &lt;/outputProfiles&gt;
+     * </pre>
+     *
+     * @parameter
+     */
+    private OutputProfile[] outputProfiles;
+
+    /**
+     * also publish every output (and its gzipped version) under a name that includes a hash of its content
+     * (eg: app-min.js is copied to app-min.3f9a1c2b.js), so it could be served with a far-future cache lifetime.
+     * The logical names are mapped to the hashed names into assetManifest.
+     *
+     * @parameter property="maven.yuicompressor.contentHashNames" default-value="false"
+     */
+    private boolean contentHashNames;
+
+    /**
+     * number of hexadecimal characters of the content hash inserted into file names (1 to 40).
+     *
+     * @parameter property="maven.yuicompressor.contentHashLength" default-value="8"
+     */
+    private int contentHashLength;
+
+    /**
+     * JSON file that maps the logical name of every output to its content hashed name and size (used with contentHashNames).
+     *
+     * @parameter property="maven.yuicompressor.assetManifest" default-value="${project.build.directory}/yuicompressor/asset-manifest.json"
+     */
+    private File assetManifest;
+
+    /**
+     * replace the url() references of stylesheets to small local images (png, gif, jpg, svg, webp, ico) by data URIs,
+     * to save a request per image. References are resolved relative to the stylesheet, or to its source root for absolute paths.
+     *
+     * @parameter property="maven.yuicompressor.inlineCssImages" default-value="false"
+     */
+    private boolean inlineCssImages;
+
+    /**
+     * max size (in bytes) of an image to inline into a stylesheet.
+     *
+     * @parameter property="maven.yuicompressor.inlineCssImagesMaxSize" default-value="4096"
+     */
+    private long inlineCssImagesMaxSize;
+
+    /**
+     * max number of references to the same image in a stylesheet to inline it
+     * (the stylesheet grows by the size of the image for every reference).
+     *
+     * @parameter property="maven.yuicompressor.inlineCssImagesMaxReferences" default-value="1"
+     */
+    private int inlineCssImagesMaxReferences;
+
+    private CssImageInliner cssImageInliner_;
+
+    /**
+     * max sizes of outputs, checked at the end of the execution (after aggregations), eg:
+     * <pre>
+     * &lt;budgets&gt;
+     *   &lt;budget&gt;
+     *     &lt;pattern&gt;static/all-*.js&lt;/pattern&gt;
+     *     &lt;maxGzipSize&gt;204800&lt;/maxGzipSize&gt;
+     *     &lt;total&gt;true&lt;/total&gt;
+     *   &lt;/budget&gt;
+     * &lt;/budgets&gt;
+     * </pre>
+     *
+     * @parameter
+     */
+    private SizeBudget[] budgets;
+
+    /**
+     * file where the sizes of outputs are saved, to report the deltas with the previous execution
+     * (default "[stateDirectory]/[executionId]-size-report.properties", so executions don't compare their outputs
+     * with the ones of another execution).
+     *
+     * @parameter
+     */
+    private File sizeReport;
+
+    private final SizeReport sizeReport_ = new SizeReport();
+
+    /**
+     * write a table of the metadata a server needs to answer conditional and Accept-Encoding requests
+     * without reading the outputs : for every output, its strong ETag (content hash), content type, length,
+     * and its precompressed variants (path, ETag and length).
+     *
+     * @parameter property="maven.yuicompressor.staticMetadata" default-value="false"
+     */
+    private boolean staticMetadata;
+
+    /**
+     * location of the static metadata table (JSON), eg: ${project.build.directory}/${project.build.finalName}/WEB-INF/static-metadata.json
+     * to make it available to a filter of the webapp.
+     *
+     * @parameter property="maven.yuicompressor.staticMetadataFile" default-value="${project.build.directory}/yuicompressor/static-metadata.json"
+     */
+    private File staticMetadataFile;
+
+    private StaticMetadata staticMetadata_;
+
+    /**
+     * request to create a Zstandard version (.zst) of the yuicompressed/aggregation files, done in parallel at the end of the execution.
+     * Files up to zstdDictionaryThreshold bytes are compressed with a dictionary trained on them (written into zstdDictionary),
+     * a client needs this dictionary to decompress them.
+     * Requires com.github.luben:zstd-jni in the dependencies of the plugin.
+     *
+     * @parameter property="maven.yuicompressor.zstd" default-value="false"
+     */
+    private boolean zstd;
+
+    /**
+     * zstd level (1 to 22).
+     *
+     * @parameter property="maven.yuicompressor.zstdLevel" default-value="19"
+     */
+    private int zstdLevel;
+
+    /**
+     * max size (in bytes) of the files used to train the zstd dictionary and compressed with it,
+     * bigger files have enough context of their own and are compressed without dictionary. 0 disables the dictionary.
+     *
+     * @parameter property="maven.yuicompressor.zstdDictionaryThreshold" default-value="16384"
+     */
+    private long zstdDictionaryThreshold;
+
+    /**
+     * max size (in bytes) of the trained zstd dictionary.
+     *
+     * @parameter property="maven.yuicompressor.zstdDictionarySize" default-value="112640"
+     */
+    private int zstdDictionarySize;
+
+    /**
+     * where to write the trained zstd dictionary (eg: into the webapp, to serve it to clients).
+     *
+     * @parameter property="maven.yuicompressor.zstdDictionary" default-value="${project.build.directory}/yuicompressor/zstd.dict"
+     */
+    private File zstdDictionary;
+
+    private final Set<File> zstdCandidates_ = new TreeSet<File>();
+
+    /**
+     * also pack every output (compressed files, gzipped and zstd versions, aggregations, content hashed copies,...)
+     * into this zip archive (eg: ${project.build.directory}/${project.build.finalName}-assets.jar for a webjar).
+     * Entries are deflated in parallel, precompressed versions (.gz, .zst, images) are stored as is,
+     * and entries are sorted by name with a fixed timestamp, so the archive is reproducible.
+     *
+     * @parameter property="maven.yuicompressor.archive"
+     */
+    private File archive;
+
+    /**
+     * path prefix of the entries of archive (eg: META-INF/resources/webjars/mylib/1.0/).
+     *
+     * @parameter property="maven.yuicompressor.archivePrefix" default-value=""
+     */
+    private String archivePrefix;
+
+    /**
+     * also write the outputs packed into archive as loose files (in webappDirectory and outputDirectory).
+     * When false, they are removed once packed : the next build compresses every source again (its up to date check
+     * needs the loose files), the archive is still only replaced if its content changed.
+     *
+     * @parameter property="maven.yuicompressor.archiveLooseFiles" default-value="true"
+     */
+    private boolean archiveLooseFiles;
+
+    private ArchiveStage archive_;
+    private final Set<File> sourceFiles_ = new HashSet<File>();
+
+    private AssetManifest assetManifest_;
+    // content hashed copy of every output (see publishContentHashed)
+    private final Map<File, File> contentHashed_ = new HashMap<File, File>();
+    // content hashed copies written by this execution and the previous ones (absolute), the only files recognized
+    // (and removed once stale) as copies : a source could be named like one (eg: lib.20231010.js)
+    private final Set<File> contentHashedFiles_ = Collections.synchronizedSet(new HashSet<File>());
+
+    private ProfileStage profiles_;
+    private CompressorEngine engine_;
+    private TextCodec codec_;
+    /** keys (see {@link CompressorEngine#cacheKey}) of the sources that were larger once compressed, at the previous and current execution */
+    private Set<String> previousPassThroughKeys_;
+    private final Set<String> passThroughKeys_ = new TreeSet<String>();
+    private CompressorDaemonClient daemonClient_;
+    private FilePipeline pipeline_;
+
     private long inSizeTotal_;
     private long outSizeTotal_;
+    private int unchangedOutputCnt_;
+    private int processedFileCnt_;
+    private long startTime_;
 
     /**
      * Keep track of updated files for aggregation on incremental builds
@@ -142,182 +510,1362 @@ public class YuiCompressorMojo extends MojoSupport {
 
     @Override
     protected String[] getDefaultIncludes() throws Exception {
-        return new String[]{"**/*.css", "**/*.js"};
-    }
-
-    @Override
-    public void beforeProcess() throws Exception {
-        if (nosuffix) {
-            suffix = "";
+        List<String> back = new ArrayList<String>(Arrays.asList("**/*.css", "**/*.js"));
+        if (types != null) {
+            for (String type : types.split(",")) {
+                type = type.trim().toLowerCase();
+                if (type.length() == 0) {
+                    continue;
+                }
+                if ("html".equals(type)) {
+                    back.add("**/*.htm");
+                } else if (!CompressorEngine.accept("." + type)) {
+                    throw new MojoExecutionException("unsupported type '" + type + "' in types, expected json, svg, html or jsp");
+                }
+                back.add("**/*." + type);
+            }
         }
-
-        if (preProcessAggregates) aggregate();
+        return back.toArray(new String[back.size()]);
     }
 
     @Override
-    protected void afterProcess() throws Exception {
-        if (statistics && (inSizeTotal_ > 0)) {
-            getLog().info(String.format("total input (%db) -> output (%db)[%d%%]", inSizeTotal_, outSizeTotal_, ((outSizeTotal_ * 100) / inSizeTotal_)));
+    protected boolean isUpToDate() throws Exception {
+        if (!fingerprint || force || buildContext.isIncremental()) {
+            return false;
         }
-
-        if (!preProcessAggregates) aggregate();
+        fingerprint_ = computeFingerprint();
+        project.getProperties().setProperty("yuicompressor." + mojoExecution.getExecutionId() + ".fingerprint", fingerprint_);
+        getLog().debug("fingerprint of inputs : " + fingerprint_);
+        return BuildFingerprint.isUpToDate(getStateFile(), fingerprint_);
     }
 
-    private void aggregate() throws Exception {
+    private String computeFingerprint() throws Exception {
+        BuildFingerprint back = new BuildFingerprint()
+                .add("plugin", pluginVersion)
+                .add("types", types)
+                .add("encoding", encoding)
+                .add("suffix", nosuffix ? "" : suffix)
+                .add("linebreakpos", linebreakpos)
+                .add("nocompress", nocompress)
+                .add("nomunge", nomunge)
+                .add("jswarn", jswarn)
+                .add("preserveAllSemiColons", preserveAllSemiColons)
+                .add("disableOptimizations", disableOptimizations)
+                .add("gzip", gzip)
+                .add("level", level)
+                .add("preProcessAggregates", preProcessAggregates)
+                .add("useSmallestFile", useSmallestFile)
+                .add("passThroughLinks", passThroughLinks)
+                .add("outputProfiles", outputProfiles)
+                .add("budgets", budgets)
+                .add("failFast", failFast)
+                .add("staticMetadata", staticMetadata ? staticMetadataFile : null)
+                .add("archive", (archive == null) ? null : archive + "," + archivePrefix + "," + archiveLooseFiles)
+                .add("zstd", zstd ? zstdLevel + "," + zstdDictionaryThreshold + "," + zstdDictionarySize + "," + zstdDictionary : "false")
+                .add("contentHashNames", contentHashNames ? String.valueOf(contentHashLength) + assetManifest : "false");
+        List<SourceFile> sources = scanSources();
+        Collections.sort(sources, new Comparator<SourceFile>() {
+            public int compare(SourceFile o1, SourceFile o2) {
+                return o1.toFile().getAbsolutePath().compareTo(o2.toFile().getAbsolutePath());
+            }
+        });
+        Set<File> images = new TreeSet<File>();
+        for (SourceFile src : sources) {
+            back.addFile("source:" + src.getDestRoot().getAbsolutePath() + ":" + src.getRelativePath(), src.toFile());
+            if (inlineCssImages && ".css".equalsIgnoreCase(src.getExtension())) {
+                images.addAll(CssImageInliner.listImages(new String(OutputFiles.readBytes(src.toFile()), encoding), src.toFile(), src.toFileRoot()));
+            }
+        }
+        back.add("inlineCssImages", inlineCssImages + "," + inlineCssImagesMaxSize + "," + inlineCssImagesMaxReferences);
+        for (File image : images) {
+            back.addFile("image", image);
+        }
         if (aggregations != null) {
-            Set<File> previouslyIncludedFiles = new HashSet<File>();
             for (Aggregation aggregation : aggregations) {
-                getLog().info("generate aggregation : " + aggregation.output);
-                Collection<File> aggregatedFiles = aggregation.run(previouslyIncludedFiles, buildContext, incrementalFiles);
-                previouslyIncludedFiles.addAll(aggregatedFiles);
-
-                File gzipped = gzipIfRequested(aggregation.output);
-                if (statistics) {
-                    if (gzipped != null) {
-                        getLog().info(String.format("%s (%db) -> %s (%db)[%d%%]", aggregation.output.getName(), aggregation.output.length(), gzipped.getName(), gzipped.length(), ratioOfSize(aggregation.output, gzipped)));
-                    } else if (aggregation.output.exists()) {
-                        getLog().info(String.format("%s (%db)", aggregation.output.getName(), aggregation.output.length()));
-                    } else {
-                        getLog().warn(String.format("%s not created", aggregation.output.getName()));
+                back.add("aggregation.output", aggregation.output)
+                        .add("aggregation.inputDir", aggregation.inputDir)
+                        .add("aggregation.includes", aggregation.includes)
+                        .add("aggregation.excludes", aggregation.excludes)
+                        .add("aggregation.flags", aggregation.removeIncluded + "," + aggregation.insertNewLine + "," + aggregation.insertFileHeader + "," + aggregation.fixLastSemicolon + "," + aggregation.autoExcludeWildcards)
+                        .add("aggregation.chunks", aggregation.maxChunkSize + "," + aggregation.splitBy + "," + aggregation.chunkManifest);
+                File inputDir = (aggregation.inputDir != null) ? aggregation.inputDir : aggregation.output.getParentFile();
+                if (inputDir.isDirectory()) {
+                    for (File file : aggregation.listIncludedFiles()) {
+                        back.addFile("aggregated", file);
                     }
                 }
             }
         }
+        return back.get();
     }
 
-    @Override
-    protected void processFile(SourceFile src) throws Exception {
-        File inFile = src.toFile();
-        getLog().debug("on incremental build only compress if input file has Delta");
-        if (buildContext.isIncremental()) {
-            if (!buildContext.hasDelta(inFile)) {
-                if (getLog().isInfoEnabled()) {
-                    getLog().info("nothing to do, " + inFile + " has no Delta");
-                }
-                return;
-            }
-            if (incrementalFiles == null) {
-                incrementalFiles = new HashSet<String>();
-            }
+    private File getStateFile() {
+        return new File(stateDirectory, mojoExecution.getExecutionId() + ".state");
+    }
+
+    private void declareOutput(File file) {
+        if (file == null) {
+            return;
+        }
+        if (fingerprint) {
+            outputs_.add(file.getAbsoluteFile());
+        }
+        String path = (archive_ == null) ? null : toRelativeOutputPath(file);
+        if (path != null) {
+            archive_.declare(path, file);
         }
+    }
 
-        if (getLog().isDebugEnabled()) {
-            getLog().debug("compress file :" + src.toFile() + " to " + src.toDestFile(suffix));
+    /**
+     * Deflate the entry of file from its content still in memory, while the build goes on (see {@link ArchiveStage#addContent(String, File, byte[])}).
+     * The entry is packed once file is declared (see {@link #declareOutput(File)}).
+     */
+    private void archiveContent(File file, byte[] content) {
+        String path = ((archive_ == null) || (content == null)) ? null : toRelativeOutputPath(file);
+        if (path != null) {
+            archive_.addContent(path, file, content);
         }
+    }
 
-        File outFile = src.toDestFile(suffix);
-        if (isMinifiedFile(inFile)) {
-            return;
+    /**
+     * Declare a final output and its gzipped version (if any), and publish them under a content hashed name if requested.
+     */
+    private void declareOutputs(File file, File gzipped) throws Exception {
+        if (zstd) {
+            zstdCandidates_.add(file.getAbsoluteFile());
         }
-        if (minifiedFileExistsInSource(inFile, outFile)) {
-            getLog().info("compressed file " + outFile.getAbsolutePath() + " already exists in the source directory: " + inFile.getAbsolutePath());
+        declareOutput(file);
+        declareOutput(gzipped);
+        if (!file.isFile()) {
             return;
         }
-        getLog().debug("only compress if input file is younger than existing output file");
-        if (!force && outFile.exists() && (outFile.lastModified() > inFile.lastModified())) {
-            if (getLog().isInfoEnabled()) {
-                getLog().info("nothing to do, " + outFile + " is younger than original, use 'force' option or clean your target");
-            }
+        gzipped = ((gzipped != null) && gzipped.isFile()) ? gzipped : null;
+        sizeReport_.add(toOutputPath(file), file, file.length(), (gzipped != null) ? gzipped.length() : -1);
+        if ((assetManifest_ == null) && (staticMetadata_ == null)) {
             return;
         }
-        InputStreamReader in = null;
-        OutputStreamWriter out = null;
-        File outFileTmp = new File(outFile.getAbsolutePath() + ".tmp");
-        FileUtils.forceDelete(outFileTmp);
-        try {
-            in = new InputStreamReader(new FileInputStream(inFile), encoding);
-            if (!outFile.getParentFile().exists() && !outFile.getParentFile().mkdirs()) {
-                throw new MojoExecutionException("Cannot create resource output directory: " + outFile.getParentFile());
-            }
-            getLog().debug("use a temporary outputfile (in case in == out)");
-
-            getLog().debug("start compression");
-            /* outFileTmp will be deleted create with FileOutputStream  */
-            out = new OutputStreamWriter(new FileOutputStream(outFileTmp), encoding);
-            if (nocompress) {
-                getLog().info("No compression is enabled");
-                IOUtil.copy(in, out);
-            } else if (".js".equalsIgnoreCase(src.getExtension())) {
-                JavaScriptCompressor compressor = new JavaScriptCompressor(in, jsErrorReporter_);
-                compressor.compress(out, linebreakpos, !nomunge, jswarn, preserveAllSemiColons, disableOptimizations);
-            } else if (".css".equalsIgnoreCase(src.getExtension())) {
-                compressCss(in, out);
-            }
-            getLog().debug("end compression");
-        } finally {
-            IOUtil.close(in);
-            IOUtil.close(out);
+        String hash = OutputFiles.toHex(OutputFiles.digest(file));
+        addStaticMetadata(file, gzipped, hash);
+        if (assetManifest_ != null) {
+            publishContentHashed(file, gzipped, hash);
         }
+    }
 
-        boolean outputIgnored = useSmallestFile && inFile.length() < outFile.length();
-        if (outputIgnored) {
-            FileUtils.forceDelete(outFileTmp);
-            FileUtils.copyFile(inFile, outFile);
-            getLog().debug("output greater than input, using original instead");
-        } else {
-            FileUtils.forceDelete(outFile);
-            FileUtils.rename(outFileTmp, outFile);
-            buildContext.refresh(outFile);
+    private void addStaticMetadata(File file, File gzipped, String hash) {
+        if (staticMetadata_ != null) {
+            staticMetadata_.add(toOutputPath(file), hash, file.length(), (gzipped == null) ? null : toOutputPath(gzipped), (gzipped == null) ? -1 : gzipped.length());
         }
+    }
 
-        if (buildContext.isIncremental()) {
-            incrementalFiles.add(outFile.getAbsolutePath());
+    /**
+     * Copy file (and gzipped) to a name that includes a hash of its content (eg: app-min.js to app-min.3f9a1c2b.js),
+     * remove the copies of previous contents, and register the names into the asset manifest.
+     */
+    private void publishContentHashed(File file, File gzipped, String fullHash) throws Exception {
+        String hash = fullHash.substring(0, contentHashLength);
+        String name = file.getName();
+        int sep = name.lastIndexOf('.');
+        String base = (sep > 0) ? name.substring(0, sep) : name;
+        String extension = (sep > 0) ? name.substring(sep) : "";
+        File hashed = new File(file.getParentFile(), base + "." + hash + extension);
+        copyIfChanged(file, hashed);
+        File hashedGzipped = null;
+        if (gzipped != null) {
+            hashedGzipped = new File(hashed.getAbsolutePath() + ".gz");
+            copyIfChanged(gzipped, hashedGzipped);
         }
 
-        File gzipped = gzipIfRequested(outFile);
-        if (statistics) {
-            inSizeTotal_ += inFile.length();
-            outSizeTotal_ += outFile.length();
-
-            String fileStatistics;
-            if (outputIgnored) {
-                fileStatistics = String.format("%s (%db) -> %s (%db)[compressed output discarded (exceeded input size)]", inFile.getName(), inFile.length(), outFile.getName(), outFile.length());
-            } else {
-                fileStatistics = String.format("%s (%db) -> %s (%db)[%d%%]", inFile.getName(), inFile.length(), outFile.getName(), outFile.length(), ratioOfSize(inFile, outFile));
+        Pattern previous = Pattern.compile(Pattern.quote(base) + "\\.[0-9a-f]{" + contentHashLength + "}" + Pattern.quote(extension) + "(\\.gz|\\.zst)?");
+        File[] siblings = file.getParentFile().listFiles();
+        for (File sibling : (siblings == null) ? new File[0] : siblings) {
+            // the zstd version of hashed is updated at the end of the execution (see declareZstd)
+            boolean current = sibling.equals(hashed) || sibling.equals(hashedGzipped) || (zstd && sibling.getName().equals(hashed.getName() + ".zst"));
+            if (previous.matcher(sibling.getName()).matches() && !current && contentHashedFiles_.remove(sibling.getAbsoluteFile())) {
+                getLog().debug("remove previous content hashed file " + sibling);
+                FileUtils.forceDelete(sibling);
             }
+        }
 
-            if (gzipped != null) {
-                fileStatistics = fileStatistics + String.format(" -> %s (%db)[%d%%]", gzipped.getName(), gzipped.length(), ratioOfSize(inFile, gzipped));
-            }
-            getLog().info(fileStatistics);
+        contentHashed_.put(file.getAbsoluteFile(), hashed);
+        contentHashedFiles_.add(hashed.getAbsoluteFile());
+        if (hashedGzipped != null) {
+            contentHashedFiles_.add(hashedGzipped.getAbsoluteFile());
         }
+        declareOutput(hashed);
+        declareOutput(hashedGzipped);
+        addStaticMetadata(hashed, hashedGzipped, fullHash);
+        assetManifest_.add(toOutputPath(file), toOutputPath(hashed), hashed.length(),
+                (hashedGzipped == null) ? null : toOutputPath(hashedGzipped), (hashedGzipped == null) ? -1 : hashedGzipped.length());
     }
 
-    private void compressCss(InputStreamReader in, OutputStreamWriter out)
-            throws IOException {
-        try {
-            CssCompressor compressor = new CssCompressor(in);
-            compressor.compress(out, linebreakpos);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException(
-                    "Unexpected characters found in CSS file. Ensure that the CSS file does not contain '$', and try again", e);
+    private void copyIfChanged(File src, File dest) throws Exception {
+        if (!OutputFiles.sameContent(src, dest)) {
+            FileUtils.copyFile(src, dest);
+            buildContext.refresh(dest);
         }
     }
 
-    protected File gzipIfRequested(File file) throws Exception {
-        if (!gzip || (file == null) || (!file.exists())) {
-            return null;
-        }
-        if (".gz".equalsIgnoreCase(FileUtils.getExtension(file.getName()))) {
-            return null;
-        }
-        File gzipped = new File(file.getAbsolutePath() + ".gz");
-        getLog().debug(String.format("create gzip version : %s", gzipped.getName()));
-        GZIPOutputStream out = null;
-        FileInputStream in = null;
+    /**
+     * @return true if file is a content hashed copy written by this execution or a previous one (eg: app-min.3f9a1c2b.js)
+     */
+    private boolean isContentHashedFile(File file) {
+        return contentHashedFiles_.contains(file.getAbsoluteFile());
+    }
+
+    private File getContentHashedListFile() {
+        return new File(stateDirectory, mojoExecution.getExecutionId() + ".hashed");
+    }
+
+    private void loadContentHashedFiles() throws Exception {
+        File file = getContentHashedListFile();
+        if (file.isFile()) {
+            for (String line : new String(OutputFiles.readBytes(file), "UTF-8").split("\n")) {
+                if (line.length() > 0) {
+                    contentHashedFiles_.add(new File(line).getAbsoluteFile());
+                }
+            }
+        }
+    }
+
+    /**
+     * Save the content hashed copies still present, so the next execution recognizes them (and removes them once stale).
+     */
+    private void saveContentHashedFiles() throws Exception {
+        if (!contentHashNames) {
+            return;
+        }
+        Set<String> paths = new TreeSet<String>();
+        synchronized (contentHashedFiles_) {
+            for (File hashed : contentHashedFiles_) {
+                if (hashed.isFile()) {
+                    paths.add(hashed.getPath());
+                }
+            }
+        }
+        StringBuilder content = new StringBuilder();
+        for (String path : paths) {
+            content.append(path).append('\n');
+        }
+        File file = getContentHashedListFile();
+        byte[] bytes = content.toString().getBytes("UTF-8");
+        if (!OutputFiles.sameContent(bytes, file)) {
+            file.getParentFile().mkdirs();
+            OutputFiles.writeBytes(file, bytes);
+        }
+    }
+
+    @Override
+    public void beforeProcess() throws Exception {
+        startTime_ = System.nanoTime();
+        codec_ = new TextCodec(encoding);
+        previousPassThroughKeys_ = (useSmallestFile && !nocompress) ? loadPassThroughKeys() : Collections.<String>emptySet();
+        if (nosuffix) {
+            suffix = "";
+        }
+        engine_ = new CompressorEngine(new CompressionOptions(linebreakpos, !nomunge, jswarn, preserveAllSemiColons, disableOptimizations), cssParallelThreshold);
+        if (daemon) {
+            daemonClient_ = connectDaemon();
+        }
+        if ((pipelineDepth > 0) && !buildContext.isIncremental()) {
+            // the build context of the IDE is bound to the mojo thread
+            pipeline_ = new FilePipeline(pipelineDepth);
+        }
+        if (zstd && !ZstdPrecompressor.isLibraryPresent()) {
+            throw new MojoExecutionException("zstd requires com.github.luben:zstd-jni in the dependencies of the plugin");
+        }
+        if (archive != null) {
+            archive_ = new ArchiveStage(archive, archivePrefix, level);
+        }
+        if ((remoteCacheUrl != null) && (remoteCacheUrl.trim().length() > 0)) {
+            remoteCache_ = new RemoteCache(remoteCacheUrl.trim(), remoteCacheConnectTimeout, remoteCacheReadTimeout, remoteCachePush, getLog());
+        }
+
+        if (contentHashNames) {
+            if ((contentHashLength < 1) || (contentHashLength > 40)) {
+                throw new MojoExecutionException("contentHashLength should be between 1 and 40 : " + contentHashLength);
+            }
+            assetManifest_ = new AssetManifest();
+            loadContentHashedFiles();
+            if (aggregations != null) {
+                for (Aggregation aggregation : aggregations) {
+                    aggregation.ignoredFiles = contentHashedFiles_;
+                }
+            }
+        }
+        if (staticMetadata) {
+            staticMetadata_ = new StaticMetadata(encoding);
+        }
+        if (inlineCssImages) {
+            cssImageInliner_ = new CssImageInliner(inlineCssImagesMaxSize, inlineCssImagesMaxReferences);
+        }
+        if ((outputProfiles != null) && (outputProfiles.length > 0)) {
+            for (OutputProfile profile : outputProfiles) {
+                if ((profile.suffix == null) || profile.suffix.equals(suffix)) {
+                    throw new MojoExecutionException("the suffix of an output profile is required and must be different from the suffix : " + profile);
+                }
+            }
+            profiles_ = new ProfileStage(outputProfiles, jswarn, cssParallelThreshold, codec_, encoding, remoteCache_);
+        }
+
+        if (preProcessAggregates) aggregate();
+    }
+
+    private CompressorDaemonClient connectDaemon() throws Exception {
+        CompressorDaemonClient back = CompressorDaemonClient.connect(daemonPort, 1000);
+        if ((back != null) && !back.isCompatible()) {
+            getLog().info("compressor daemon on port " + daemonPort + " runs version " + back.getDaemonVersion() + ", not " + CompressorDaemon.VERSION);
+            if (daemonAutoStart) {
+                back.stopDaemon();
+                for (int i = 0; (back != null) && (i < 50); i++) {
+                    back.close();
+                    Thread.sleep(100);
+                    back = CompressorDaemonClient.connect(daemonPort, 500);
+                }
+            }
+            if (back != null) {
+                back.close();
+                back = null;
+            }
+        }
+        if ((back == null) && daemonAutoStart) {
+            File logFile = new File(System.getProperty("java.io.tmpdir"), "yuicompressor-daemon-" + daemonPort + ".log");
+            getLog().info("start compressor daemon on port " + daemonPort + " (log: " + logFile + ")");
+            back = CompressorDaemonClient.startAndConnect(daemonPort, 20 * 1000, logFile);
+        }
+        if (back == null) {
+            getLog().warn("compressor daemon not available on port " + daemonPort + ", compress in process");
+        }
+        return back;
+    }
+
+    @Override
+    protected void afterProcess() throws Exception {
+        try {
+            flushPipeline();
+        } finally {
+            releaseResources();
+        }
         try {
-            out = new GZIPOutputStream(buildContext.newFileOutputStream(gzipped)) {
-                {
-                    def.setLevel(level);
+            postProcess();
+        } finally {
+            discardArchiveEntries();
+        }
+    }
+
+    private void postProcess() throws Exception {
+        if (statistics && (inSizeTotal_ > 0)) {
+            getLog().info(String.format("total input (%db) -> output (%db)[%d%%]", inSizeTotal_, outSizeTotal_, ((outSizeTotal_ * 100) / inSizeTotal_)));
+        }
+
+        if (!preProcessAggregates) aggregate();
+        zstdIfRequested();
+
+        if (statistics && (unchangedOutputCnt_ > 0)) {
+            getLog().info(String.format("%d output(s) unchanged, not rewritten", unchangedOutputCnt_));
+        }
+        if (statistics && (cssImageInliner_ != null)) {
+            getLog().info(String.format("%d image reference(s) inlined into stylesheets", cssImageInliner_.getInlinedCnt()));
+        }
+        if (statistics && (remoteCache_ != null)) {
+            getLog().info(String.format("remote cache: %d hit(s), %d miss(es)", remoteCache_.getHitCnt(), remoteCache_.getMissCnt()));
+        }
+        if ((assetManifest_ != null) && assetManifest_.writeTo(assetManifest)) {
+            buildContext.refresh(assetManifest);
+            getLog().info("asset manifest written : " + assetManifest);
+        }
+        declareOutput(assetManifest_ == null ? null : assetManifest);
+        if ((staticMetadata_ != null) && staticMetadata_.writeTo(staticMetadataFile)) {
+            buildContext.refresh(staticMetadataFile);
+            getLog().info("static metadata written : " + staticMetadataFile);
+        }
+        declareOutput(staticMetadata_ == null ? null : staticMetadataFile);
+        writeArchive();
+        checkSizes();
+        saveState();
+        savePassThroughKeys();
+        saveContentHashedFiles();
+        removeLooseFiles();
+        if (statistics) {
+            long duration = Math.max(1, (System.nanoTime() - startTime_) / 1000000);
+            getLog().info(String.format(Locale.ROOT, "processed %d file(s) in %d ms (%.1f file(s)/s), peak heap %d MB",
+                    processedFileCnt_, duration, processedFileCnt_ * 1000.0 / duration, peakHeapUsed() / (1024 * 1024)));
+        }
+    }
+
+    /**
+     * The build will fail: skip aggregations, gzip,... and don't save the state, the next build will process every file.
+     * Profile outputs in progress are cancelled by {@link #finishProfileOutputs(File, List)}, temporary files are removed
+     * by {@link #compressFile(SourceFile, File, File, SourceContent)}, outputs already queued in the pipeline are written.
+     */
+    @Override
+    protected void abortProcess() throws Exception {
+        releaseResources();
+        discardArchiveEntries();
+        // the copies already written are still recognized by the next build
+        saveContentHashedFiles();
+        getLog().info(String.format("%d file(s) processed, aggregations and post-processing skipped", processedFileCnt_));
+    }
+
+    /**
+     * Wait for the outputs still queued in the pipeline, before the post-processing that reads them.
+     */
+    private void flushPipeline() throws Exception {
+        if (pipeline_ == null) {
+            return;
+        }
+        pipeline_.flush();
+        String summary = "pipeline " + pipeline_.getSummary();
+        if (statistics) {
+            getLog().info(summary);
+        } else {
+            getLog().debug(summary);
+        }
+    }
+
+    private void releaseResources() throws Exception {
+        if (pipeline_ != null) {
+            pipeline_.close();
+            pipeline_ = null;
+        }
+        if (profiles_ != null) {
+            profiles_.close();
+        }
+        if (daemonClient_ != null) {
+            daemonClient_.close();
+            daemonClient_ = null;
+        }
+    }
+
+    /**
+     * @return the sum of the peak usages of the heap memory pools (since the start of the jvm)
+     */
+    private static long peakHeapUsed() {
+        long back = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ((pool.getType() == MemoryType.HEAP) && (pool.getPeakUsage() != null)) {
+                back += pool.getPeakUsage().getUsed();
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Report the deltas of sizes with the previous execution, save the sizes, then check the budgets.
+     */
+    private void checkSizes() throws Exception {
+        File reportFile = getSizeReportFile();
+        Map<String, long[]> previous = SizeReport.load(reportFile);
+        if (statistics && !previous.isEmpty()) {
+            long deltaTotal = 0;
+            for (Map.Entry<String, SizeReport.Entry> entry : sizeReport_.getEntries().entrySet()) {
+                long[] before = previous.get(entry.getKey());
+                long size = entry.getValue().size;
+                if ((before != null) && (before[0] != size)) {
+                    deltaTotal += size - before[0];
+                    getLog().info(String.format("%s (%db)[%+db since previous build]", entry.getKey(), size, size - before[0]));
                 }
-            };
-            in = new FileInputStream(file);
-            IOUtil.copy(in, out);
+            }
+            if (deltaTotal != 0) {
+                getLog().info(String.format("total size of outputs %+db since previous build", deltaTotal));
+            }
+        }
+        if (!sizeReport_.getEntries().isEmpty()) {
+            sizeReport_.store(reportFile);
+        }
+        if (budgets == null) {
+            return;
+        }
+        int errors = 0;
+        for (SizeBudget budget : budgets) {
+            if (budget.pattern == null) {
+                throw new MojoExecutionException("the pattern of a budget is required : " + budget);
+            }
+            String pattern = budget.pattern.replace('/', File.separatorChar);
+            Map<String, SizeReport.Entry> matched = new TreeMap<String, SizeReport.Entry>();
+            for (Map.Entry<String, SizeReport.Entry> entry : sizeReport_.getEntries().entrySet()) {
+                if (SelectorUtils.matchPath(pattern, entry.getKey().replace('/', File.separatorChar))) {
+                    matched.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (matched.isEmpty()) {
+                getLog().warn("size budget " + budget.pattern + " doesn't match any output");
+                continue;
+            }
+            if (budget.total) {
+                long size = 0;
+                long gzipSize = 0;
+                for (SizeReport.Entry entry : matched.values()) {
+                    size += entry.size;
+                    gzipSize += (budget.maxGzipSize >= 0) ? entry.getGzipSize() : 0;
+                }
+                SizeReport.Entry first = matched.values().iterator().next();
+                errors += checkBudget(budget, "total of " + budget.pattern, first.file, size, budget.maxSize, previousTotal(previous, matched.keySet(), 0), "size");
+                errors += checkBudget(budget, "total of " + budget.pattern, first.file, gzipSize, budget.maxGzipSize, previousTotal(previous, matched.keySet(), 1), "gzip size");
+            } else {
+                for (Map.Entry<String, SizeReport.Entry> entry : matched.entrySet()) {
+                    long[] before = previous.get(entry.getKey());
+                    SizeReport.Entry e = entry.getValue();
+                    errors += checkBudget(budget, entry.getKey(), e.file, e.size, budget.maxSize, (before == null) ? -1 : before[0], "size");
+                    if (budget.maxGzipSize >= 0) {
+                        errors += checkBudget(budget, entry.getKey(), e.file, e.getGzipSize(), budget.maxGzipSize, (before == null) ? -1 : before[1], "gzip size");
+                    }
+                }
+            }
+        }
+        if (errors > 0) {
+            throw new MojoFailureException(errors + " size budget(s) exceeded (see log)");
+        }
+    }
+
+    private static long previousTotal(Map<String, long[]> previous, Collection<String> paths, int index) {
+        long back = 0;
+        for (String path : paths) {
+            long[] before = previous.get(path);
+            if ((before == null) || (before[index] < 0)) {
+                return -1;
+            }
+            back += before[index];
+        }
+        return back;
+    }
+
+    /**
+     * @return 1 if value exceeds max and the budget should fail the build, else 0
+     */
+    private int checkBudget(SizeBudget budget, String name, File file, long value, long max, long previous, String what) {
+        if ((max < 0) || (value <= max)) {
+            return 0;
+        }
+        String delta = (previous < 0) ? "" : String.format(", %+db since previous build", value - previous);
+        String message = String.format("%s : %s %db exceeds the budget %db (+%db%s)", name, what, value, max, value - max, delta);
+        if (budget.failOnExceed) {
+            buildContext.addMessage(file, 0, 0, message, BuildContext.SEVERITY_ERROR, null);
+            getLog().error(message);
+            return 1;
+        }
+        buildContext.addMessage(file, 0, 0, message, BuildContext.SEVERITY_WARNING, null);
+        getLog().warn(message);
+        return 0;
+    }
+
+    private void saveState() throws Exception {
+        if ((fingerprint_ == null) || (jsErrorReporter_.getErrorCnt() > 0) || (failOnWarning && (jsErrorReporter_.getWarningCnt() > 0))) {
+            return;
+        }
+        BuildFingerprint.writeState(getStateFile(), fingerprint_, outputs_);
+    }
+
+    private File getSizeReportFile() {
+        return (sizeReport != null) ? sizeReport : new File(stateDirectory, mojoExecution.getExecutionId() + "-size-report.properties");
+    }
+
+    private File getPassThroughFile() {
+        return new File(stateDirectory, mojoExecution.getExecutionId() + ".passthrough");
+    }
+
+    private Set<String> loadPassThroughKeys() throws Exception {
+        Set<String> back = new HashSet<String>();
+        File file = getPassThroughFile();
+        if (file.isFile()) {
+            for (String line : new String(OutputFiles.readBytes(file), "UTF-8").split("\n")) {
+                if (line.length() > 0) {
+                    back.add(line);
+                }
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Save the keys of the sources used as is, so the next execution skips their compression if they are unchanged.
+     * Keys of the previous execution are kept on incremental builds (only the modified sources are processed).
+     */
+    private void savePassThroughKeys() throws Exception {
+        if (!useSmallestFile || nocompress) {
+            return;
+        }
+        Set<String> keys = new TreeSet<String>(passThroughKeys_);
+        if (buildContext.isIncremental()) {
+            keys.addAll(previousPassThroughKeys_);
+        }
+        StringBuilder content = new StringBuilder();
+        for (String key : keys) {
+            content.append(key).append('\n');
+        }
+        File file = getPassThroughFile();
+        byte[] bytes = content.toString().getBytes("UTF-8");
+        if (!OutputFiles.sameContent(bytes, file)) {
+            file.getParentFile().mkdirs();
+            OutputFiles.writeBytes(file, bytes);
+        }
+    }
+
+    private void aggregate() throws Exception {
+        if (aggregations != null) {
+            Set<File> previouslyIncludedFiles = new HashSet<File>();
+            for (Aggregation aggregation : aggregations) {
+                getLog().info("generate aggregation : " + aggregation.output);
+                Collection<File> aggregatedFiles = aggregation.run(previouslyIncludedFiles, buildContext, incrementalFiles);
+                previouslyIncludedFiles.addAll(aggregatedFiles);
+
+                List<File> outputs = aggregation.getOutputs().isEmpty() ? Collections.singletonList(aggregation.output) : aggregation.getOutputs();
+                for (File output : outputs) {
+                    boolean outputUnchanged = aggregation.isOutputUnchanged(output);
+                    if (outputUnchanged) {
+                        unchangedOutputCnt_++;
+                    }
+                    File gzipped = gzipIfRequested(output, outputUnchanged);
+                    declareOutputs(output, gzipped);
+                    if (statistics) {
+                        String unchanged = outputUnchanged ? "[unchanged]" : "";
+                        if (gzipped != null) {
+                            getLog().info(String.format("%s (%db) -> %s (%db)[%d%%]%s", output.getName(), output.length(), gzipped.getName(), gzipped.length(), ratioOfSize(output, gzipped), unchanged));
+                        } else if (output.exists()) {
+                            getLog().info(String.format("%s (%db)%s", output.getName(), output.length(), unchanged));
+                        } else {
+                            getLog().warn(String.format("%s not created", output.getName()));
+                        }
+                    }
+                }
+                if ((aggregation.getChunkManifest() != null) && aggregation.getChunkManifest().isFile()) {
+                    declareOutput(aggregation.getChunkManifest());
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void prefetch(List<SourceFile> srcs) throws Exception {
+        if (pipeline_ == null) {
+            return;
+        }
+        for (SourceFile src : srcs) {
+            if (willReadSource(src)) {
+                pipeline_.prefetch(src.toFile());
+            }
+        }
+    }
+
+    /**
+     * @return true if processFile will probably read the source of src (an approximation of its checks, a source read ahead
+     * and not used is dropped)
+     */
+    private boolean willReadSource(SourceFile src) {
+        File inFile = src.toFile();
+        if (nocompress || !CompressorEngine.accept(src.getExtension()) || isMinifiedFile(inFile)) {
+            return false;
+        }
+        File outFile = src.toDestFile(suffix);
+        boolean upToDate = !force && outFile.exists() && (outFile.lastModified() > inFile.lastModified());
+        if (upToDate) {
+            // a stylesheet is read to compare its images with the output
+            return inlinesCssImages(src) || ((outputProfiles != null) && (outputProfiles.length > 0));
+        }
+        boolean needsContent = (cssImageInliner_ != null) || ((outputProfiles != null) && (outputProfiles.length > 0));
+        return needsContent || !isStreamable(src, inFile);
+    }
+
+    @Override
+    protected void processFile(SourceFile src) throws Exception {
+        processedFileCnt_++;
+        File inFile = src.toFile();
+        if ((archive != null) && !archiveLooseFiles) {
+            sourceFiles_.add(inFile.getAbsoluteFile());
+        }
+        getLog().debug("on incremental build only compress if input file has Delta");
+        if (buildContext.isIncremental()) {
+            if (!buildContext.hasDelta(inFile)) {
+                if (getLog().isInfoEnabled()) {
+                    getLog().info("nothing to do, " + inFile + " has no Delta");
+                }
+                return;
+            }
+            if (incrementalFiles == null) {
+                incrementalFiles = new HashSet<String>();
+            }
+        }
+
+        if (getLog().isDebugEnabled()) {
+            getLog().debug("compress file :" + src.toFile() + " to " + src.toDestFile(suffix));
+        }
+
+        File outFile = src.toDestFile(suffix);
+        if (isMinifiedFile(inFile)) {
+            return;
+        }
+        if (minifiedFileExistsInSource(inFile, outFile)) {
+            getLog().info("compressed file " + outFile.getAbsolutePath() + " already exists in the source directory: " + inFile.getAbsolutePath());
+            return;
+        }
+        List<ProfileStage.Output> profileOutputs = listProfileOutputsToUpdate(src);
+        getLog().debug("only compress if input file is younger than existing output file");
+        boolean upToDate = !force && outFile.exists() && (outFile.lastModified() > inFile.lastModified());
+        String css = null;
+        if (upToDate && inlinesCssImages(src)) {
+            getLog().debug("and if the images inlined in the stylesheet are older than the existing output file");
+            css = codec_.decode(readSource(inFile));
+            upToDate = !hasNewerImage(css, src, outFile);
+        }
+        if (upToDate) {
+            publishOutputs(outFile, gzip ? new File(outFile.getAbsolutePath() + ".gz") : null);
+            if (getLog().isInfoEnabled()) {
+                getLog().info("nothing to do, " + outFile + " is younger than original, use 'force' option or clean your target");
+            }
+            if (profileOutputs.isEmpty()) {
+                return;
+            }
+        }
+        if (!outFile.getParentFile().exists() && !outFile.getParentFile().mkdirs()) {
+            throw new MojoExecutionException("Cannot create resource output directory: " + outFile.getParentFile());
+        }
+        SourceContent content = null;
+        if (inlinesCssImages(src)) {
+            if (css == null) {
+                css = codec_.decode(readSource(inFile));
+            }
+            content = new SourceContent(cssImageInliner_.inline(css, inFile, src.toFileRoot()), codec_);
+        }
+        if (!profileOutputs.isEmpty()) {
+            getLog().debug("read source once for every output profile");
+            if (content == null) {
+                content = new SourceContent(readSource(inFile), codec_);
+            }
+            profiles_.start(src.getExtension(), content.raw, content.text, profileOutputs);
+        }
+        if (!upToDate) {
+            try {
+                compressFile(src, inFile, outFile, content);
+            } catch (Exception exc) {
+                if (!profileOutputs.isEmpty()) {
+                    profiles_.cancel(profileOutputs);
+                }
+                throw exc;
+            }
+        }
+        finishProfileOutputs(inFile, profileOutputs);
+    }
+
+    private boolean inlinesCssImages(SourceFile src) {
+        return (cssImageInliner_ != null) && !nocompress && ".css".equalsIgnoreCase(src.getExtension());
+    }
+
+    /**
+     * @return true if an image referenced by css was modified after outFile
+     */
+    private boolean hasNewerImage(String css, SourceFile src, File outFile) throws Exception {
+        for (File image : CssImageInliner.listImages(css, src.toFile(), src.toFileRoot())) {
+            if (image.lastModified() >= outFile.lastModified()) {
+                if (getLog().isDebugEnabled()) {
+                    getLog().debug(image + " is younger than " + outFile);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compressFile(SourceFile src, File inFile, File outFile, SourceContent content) throws Exception {
+        File outFileTmp = new File(outFile.getAbsolutePath() + ".tmp");
+        FileUtils.forceDelete(outFileTmp);
+        boolean predicted = false;
+        String cacheKey = null;
+        byte[] output = null;
+        Tracing.Span span = Tracing.start("compress", inFile.getPath()).type(src.getExtension());
+        try {
+            String engine = "pass-through";
+            if (!nocompress && CompressorEngine.accept(src.getExtension()) && ((remoteCache_ != null) || useSmallestFile)) {
+                byte[] raw = null;
+                if ((content == null) && isStreamable(src, inFile)) {
+                    // hashed from the file, so the stylesheet is still compressed while it is read
+                    cacheKey = engine_.cacheKey(src.getExtension(), encoding, inFile);
+                } else {
+                    raw = (content != null) ? content.raw : readSource(inFile);
+                    cacheKey = engine_.cacheKey(src.getExtension(), encoding, raw);
+                }
+                if (previousPassThroughKeys_.contains(cacheKey)) {
+                    getLog().debug("larger once compressed at the previous execution, use the original");
+                    predicted = true;
+                } else {
+                    if (remoteCache_ != null) {
+                        engine = "remote-cache";
+                        CompressorDaemon.Result cached = remoteCache_.getResult(cacheKey);
+                        if (cached != null) {
+                            getLog().debug("use output from remote cache");
+                            for (CompressorDaemon.Message m : cached.messages) {
+                                m.replay(jsErrorReporter_);
+                            }
+                            output = cached.output;
+                            OutputFiles.writeBytes(outFileTmp, output);
+                        }
+                    }
+                    if ((content == null) && (raw != null)) {
+                        content = new SourceContent(raw, codec_);
+                    }
+                }
+            }
+            if (!nocompress && !predicted && !outFileTmp.exists()) {
+                // the messages are stored with the output, to be reported again on a hit
+                CompressorDaemon.RecordingErrorReporter recorder = ((remoteCache_ != null) && (cacheKey != null)) ? new CompressorDaemon.RecordingErrorReporter() : null;
+                try {
+                    output = compressTo(src, inFile, outFileTmp, content, (recorder != null) ? recorder : jsErrorReporter_);
+                } finally {
+                    if (recorder != null) {
+                        for (CompressorDaemon.Message m : recorder.messages) {
+                            m.replay(jsErrorReporter_);
+                        }
+                    }
+                }
+                boolean streamed = (output == null) && CompressorEngine.accept(src.getExtension());
+                engine = streamed ? "streaming" : (daemonClient_ != null) ? "daemon" : "in-process";
+                if (recorder != null) {
+                    remoteCache_.putResult(cacheKey, new CompressorDaemon.Result((output != null) ? output : OutputFiles.readBytes(outFileTmp), recorder.messages));
+                }
+            }
+            span.engine(engine).inputSize(inFile.length()).outputSize(outFileTmp.isFile() ? outFileTmp.length() : inFile.length());
+        } catch (Exception exc) {
+            FileUtils.forceDelete(outFileTmp);
+            throw exc;
+        } finally {
+            span.end();
+        }
+
+        final boolean ignore = !nocompress && (predicted || (useSmallestFile && (inFile.length() < outFileTmp.length())));
+        final String key = cacheKey;
+        final byte[] archived = (archive != null) ? output : null;
+        publish(new Callable<Void>() {
+            public Void call() throws Exception {
+                publishFile(inFile, outFile, outFileTmp, ignore, key, archived);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Replace outFile by outFileTmp (or by inFile if the output is ignored), gzip and declare it (see {@link #publish(Callable)}).
+     *
+     * @param output the content of outFileTmp if it's still in memory (fed to the archive), else null
+     */
+    private void publishFile(File inFile, File outFile, File outFileTmp, boolean outputIgnored, String cacheKey, byte[] output) throws Exception {
+        boolean outputUnchanged;
+        if (nocompress || outputIgnored) {
+            if (nocompress) {
+                getLog().info("No compression is enabled");
+            }
+            FileUtils.forceDelete(outFileTmp);
+            outputUnchanged = passThrough(inFile, outFile);
+            if (outputIgnored) {
+                getLog().debug("output greater than input, using original instead");
+                if (cacheKey != null) {
+                    passThroughKeys_.add(cacheKey);
+                }
+            }
+        } else {
+            outputUnchanged = replaceIfChanged(outFileTmp, outFile);
+            archiveContent(outFile, output);
+        }
+
+        if (buildContext.isIncremental()) {
+            incrementalFiles.add(outFile.getAbsolutePath());
+        }
+
+        File gzipped = gzipIfRequested(outFile, outputUnchanged);
+        declareOutputs(outFile, gzipped);
+        if (statistics) {
+            inSizeTotal_ += inFile.length();
+            outSizeTotal_ += outFile.length();
+
+            String fileStatistics;
+            if (outputIgnored) {
+                fileStatistics = String.format("%s (%db) -> %s (%db)[compressed output discarded (exceeded input size)]", inFile.getName(), inFile.length(), outFile.getName(), outFile.length());
+            } else {
+                fileStatistics = String.format("%s (%db) -> %s (%db)[%d%%]", inFile.getName(), inFile.length(), outFile.getName(), outFile.length(), ratioOfSize(inFile, outFile));
+            }
+            logFileStatistics(fileStatistics, inFile, gzipped, outputUnchanged);
+        }
+    }
+
+    /**
+     * Run task on the writer thread of the pipeline (in the order of the calls), or now without pipeline.
+     * The state updated by the publication of outputs (declared outputs, manifests, statistics,...) is only updated by such tasks
+     * while files are processed.
+     */
+    private void publish(Callable<?> task) throws Exception {
+        if (pipeline_ != null) {
+            pipeline_.write(task);
+        } else {
+            task.call();
+        }
+    }
+
+    private void publishOutputs(final File file, final File gzipped) throws Exception {
+        publish(new Callable<Void>() {
+            public Void call() throws Exception {
+                declareOutputs(file, gzipped);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Replace outFile by outFileTmp, except if they have the same content (then outFileTmp is removed).
+     *
+     * @return true if outFile was kept unchanged
+     */
+    private boolean replaceIfChanged(File outFileTmp, File outFile) throws Exception {
+        Tracing.Span span = Tracing.start("write", outFile.getPath()).outputSize(outFileTmp.length());
+        try {
+            boolean outputUnchanged = OutputFiles.sameContent(outFileTmp, outFile);
+            if (outputUnchanged) {
+                FileUtils.forceDelete(outFileTmp);
+                getLog().debug("output unchanged, keep existing " + outFile);
+                unchangedOutputCnt_++;
+                span.engine("unchanged");
+            } else {
+                FileUtils.forceDelete(outFile);
+                FileUtils.rename(outFileTmp, outFile);
+                buildContext.refresh(outFile);
+                span.engine("rename");
+            }
+            return outputUnchanged;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Make outFile a byte for byte copy of inFile (or a hard link to it, see passThroughLinks), except if it already is.
+     *
+     * @return true if outFile was kept unchanged
+     */
+    private boolean passThrough(File inFile, File outFile) throws Exception {
+        Tracing.Span span = Tracing.start("write", outFile.getPath()).outputSize(inFile.length());
+        try {
+            if (outFile.exists() && (Files.isSameFile(inFile.toPath(), outFile.toPath()) || OutputFiles.sameContent(inFile, outFile))) {
+                getLog().debug("output unchanged, keep existing " + outFile);
+                unchangedOutputCnt_++;
+                span.engine("unchanged");
+                return true;
+            }
+            FileUtils.forceDelete(outFile);
+            if (passThroughLinks && OutputFiles.link(inFile, outFile)) {
+                span.engine("link");
+            } else {
+                OutputFiles.copy(inFile, outFile);
+                span.engine("transfer");
+            }
+            buildContext.refresh(outFile);
+            return false;
+        } finally {
+            span.end();
+        }
+    }
+
+    private byte[] readSource(File inFile) throws Exception {
+        Tracing.Span span = Tracing.start("read", inFile.getPath());
+        try {
+            byte[] back = (pipeline_ != null) ? pipeline_.take(inFile) : null;
+            if (back != null) {
+                span.engine("prefetch");
+            } else {
+                back = OutputFiles.readBytes(inFile);
+            }
+            span.inputSize(back.length);
+            return back;
+        } finally {
+            span.end();
+        }
+    }
+
+    private void logFileStatistics(String fileStatistics, File inFile, File gzipped, boolean outputUnchanged) throws Exception {
+        if (gzipped != null) {
+            fileStatistics = fileStatistics + String.format(" -> %s (%db)[%d%%]", gzipped.getName(), gzipped.length(), ratioOfSize(inFile, gzipped));
+        }
+        if (outputUnchanged) {
+            fileStatistics = fileStatistics + "[unchanged]";
+        }
+        getLog().info(fileStatistics);
+    }
+
+    /**
+     * Write the output of src into outFileTmp (a temporary file, in case in == out).
+     * The source is read in one call and decoded in one step, the output is encoded in one step (see {@link TextCodec}).
+     * With nocompress, files are copied at the byte level (see {@link #passThrough(File, File)}).
+     * Large stylesheets are streamed (see {@link #cssStreamThreshold}).
+     *
+     * @return the output, or null if it was not held in memory (compressed while read, or copied)
+     */
+    private byte[] compressTo(SourceFile src, File inFile, File outFileTmp, SourceContent content, ErrorReporter reporter) throws Exception {
+        getLog().debug("start compression");
+        boolean streamed = false;
+        byte[] output = null;
+        if (CompressorEngine.accept(src.getExtension())) {
+            if ((content == null) && isStreamable(src, inFile)) {
+                streamed = compressStreamTo(inFile, outFileTmp);
+            }
+            if (!streamed) {
+                if (content == null) {
+                    content = new SourceContent(readSource(inFile), codec_);
+                }
+                StringWriter out = new StringWriter(content.text.length() / 2 + 16);
+                compress(src.getExtension(), new StringReader(content.text), out, content.raw.length, reporter);
+                output = codec_.encode(out.toString());
+                OutputFiles.writeBytes(outFileTmp, output);
+            }
+        } else {
+            getLog().warn("no minifier for the type of " + inFile + ", copied as is");
+            OutputFiles.copy(inFile, outFileTmp);
+        }
+        getLog().debug("end compression");
+        return output;
+    }
+
+    private boolean isStreamable(SourceFile src, File inFile) {
+        return (cssStreamThreshold >= 0) && (linebreakpos < 0) && ".css".equalsIgnoreCase(src.getExtension()) && (inFile.length() >= cssStreamThreshold);
+    }
+
+    /**
+     * @return false if the stylesheet can't be compressed while it is read (then outFileTmp is removed)
+     */
+    private boolean compressStreamTo(File inFile, File outFileTmp) throws Exception {
+        boolean done = false;
+        Reader in = null;
+        Writer out = null;
+        try {
+            in = new InputStreamReader(new FileInputStream(inFile), codec_.getCharset());
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFileTmp), codec_.getCharset()), 64 * 1024);
+            done = engine_.compressCssStream(in, out);
+            out.flush();
         } finally {
             IOUtil.close(in);
             IOUtil.close(out);
+            if (!done) {
+                FileUtils.forceDelete(outFileTmp);
+            }
+        }
+        if (!done) {
+            getLog().debug("can't be compressed while read, compress in one pass");
+        } else {
+            getLog().debug("compressed while read: " + inFile);
+        }
+        return done;
+    }
+
+    private void compress(String extension, Reader in, Writer out, long size, ErrorReporter reporter) throws Exception {
+        if (daemonClient_ != null) {
+            String source = IOUtil.toString(in);
+            try {
+                out.write(daemonClient_.compress(engine_.getOptions(), cssParallelThreshold, Collections.singletonList(extension), Collections.singletonList(source), reporter).get(0));
+                return;
+            } catch (IOException exc) {
+                getLog().warn("compressor daemon failed, compress in process : " + exc.getMessage());
+                daemonClient_.close();
+                daemonClient_ = null;
+            }
+            in = new StringReader(source);
+        }
+        engine_.compress(extension, in, out, size, reporter);
+    }
+
+    /**
+     * @return the outputs of the profiles that need to be (re)generated for src (empty if no profile applies)
+     */
+    private List<ProfileStage.Output> listProfileOutputsToUpdate(SourceFile src) throws Exception {
+        List<ProfileStage.Output> back = new ArrayList<ProfileStage.Output>();
+        if ((profiles_ == null) || nocompress || !CompressorEngine.accept(src.getExtension())) {
+            return back;
+        }
+        File inFile = src.toFile();
+        OutputProfile[] profiles = profiles_.getProfiles();
+        for (int i = 0; i < profiles.length; i++) {
+            OutputProfile profile = profiles[i];
+            File outFile = src.toDestFile(profile.suffix);
+            if (!force && outFile.exists() && (outFile.lastModified() > inFile.lastModified())) {
+                publishOutputs(outFile, profile.gzip ? new File(outFile.getAbsolutePath() + ".gz") : null);
+                getLog().debug("nothing to do, " + outFile + " is younger than original");
+            } else {
+                back.add(profiles_.newOutput(i, outFile));
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Publish every profile output once compressed (started by {@link ProfileStage#start(String, byte[], String, List)}),
+     * the outputs in progress are cancelled on error.
+     */
+    private void finishProfileOutputs(final File inFile, List<ProfileStage.Output> profileOutputs) throws Exception {
+        if (profileOutputs.isEmpty()) {
+            return;
+        }
+        try {
+            for (final ProfileStage.Output po : profileOutputs) {
+                final byte[] output = profiles_.finish(po, inFile, jsErrorReporter_);
+                publish(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        publishProfileOutput(inFile, po, output);
+                        return null;
+                    }
+                });
+            }
+        } finally {
+            profiles_.cancel(profileOutputs);
+        }
+    }
+
+    private void publishProfileOutput(File inFile, ProfileStage.Output po, byte[] output) throws Exception {
+        File outFileTmp = new File(po.outFile.getAbsolutePath() + ".tmp");
+        OutputFiles.writeBytes(outFileTmp, output);
+        boolean outputUnchanged = replaceIfChanged(outFileTmp, po.outFile);
+        archiveContent(po.outFile, output);
+        if (buildContext.isIncremental()) {
+            incrementalFiles.add(po.outFile.getAbsolutePath());
+        }
+        File gzipped = po.profile.gzip ? gzipFile(po.outFile, outputUnchanged) : null;
+        declareOutputs(po.outFile, gzipped);
+        if (statistics) {
+            logFileStatistics(String.format("%s (%db) -> %s (%db)[%d%%]", inFile.getName(), inFile.length(), po.outFile.getName(), po.outFile.length(), ratioOfSize(inFile, po.outFile)), inFile, gzipped, outputUnchanged);
+        }
+    }
+
+    /**
+     * Content of a source, read and decoded once for every output.
+     */
+    private static class SourceContent {
+        final byte[] raw;
+        final String text;
+
+        SourceContent(byte[] raw, TextCodec codec) {
+            this.raw = raw;
+            this.text = codec.decode(raw);
+        }
+
+        SourceContent(String text, TextCodec codec) {
+            this.raw = codec.encode(text);
+            this.text = text;
+        }
+    }
+
+    /**
+     * Keep a copy of the bytes written (if requested).
+     */
+    private static class CopyingOutputStream extends FilterOutputStream {
+        private final ByteArrayOutputStream copy_;
+
+        CopyingOutputStream(OutputStream out, boolean copy) {
+            super(out);
+            copy_ = copy ? new ByteArrayOutputStream() : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy_ != null) {
+                copy_.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy_ != null) {
+                copy_.write(b, off, len);
+            }
+        }
+
+        /**
+         * @return the bytes written, or null if they were not copied
+         */
+        byte[] getCopy() {
+            return (copy_ == null) ? null : copy_.toByteArray();
+        }
+    }
+
+    protected File gzipIfRequested(File file) throws Exception {
+        return gzipIfRequested(file, false);
+    }
+
+    /**
+     * @param sourceUnchanged true if file was not rewritten, then an existing gzipped version is kept untouched
+     */
+    protected File gzipIfRequested(File file, boolean sourceUnchanged) throws Exception {
+        return gzip ? gzipFile(file, sourceUnchanged) : null;
+    }
+
+    private File gzipFile(File file, boolean sourceUnchanged) throws Exception {
+        if ((file == null) || (!file.exists())) {
+            return null;
+        }
+        if (".gz".equalsIgnoreCase(FileUtils.getExtension(file.getName()))) {
+            return null;
+        }
+        File gzipped = new File(file.getAbsolutePath() + ".gz");
+        if (sourceUnchanged && gzipped.exists() && (gzipped.lastModified() >= file.lastModified())) {
+            getLog().debug(String.format("keep unchanged gzip version : %s", gzipped.getName()));
+            return gzipped;
+        }
+        Tracing.Span span = Tracing.start("gzip", file.getPath()).type(".gz").inputSize(file.length());
+        try {
+            String cacheKey = null;
+            if (remoteCache_ != null) {
+                cacheKey = "gz" + level + "-" + OutputFiles.toHex(OutputFiles.digest(file));
+                byte[] cached = remoteCache_.get(cacheKey);
+                if (cached != null) {
+                    getLog().debug(String.format("use gzip version from remote cache : %s", gzipped.getName()));
+                    OutputStream out = buildContext.newFileOutputStream(gzipped);
+                    try {
+                        out.write(cached);
+                    } finally {
+                        IOUtil.close(out);
+                    }
+                    archiveContent(gzipped, cached);
+                    span.engine("remote-cache");
+                    return gzipped;
+                }
+            }
+            getLog().debug(String.format("create gzip version : %s", gzipped.getName()));
+            span.engine(gzip(file, gzipped));
+            if (cacheKey != null) {
+                remoteCache_.put(cacheKey, OutputFiles.readBytes(gzipped));
+            }
+            return gzipped;
+        } finally {
+            span.outputSize(gzipped.length()).end();
+        }
+    }
+
+    /**
+     * Pack the outputs into archive (see {@link ArchiveStage#write()}), only replaced if its content changed.
+     */
+    private void writeArchive() throws Exception {
+        if (archive_ == null) {
+            return;
+        }
+        boolean unchanged = replaceIfChanged(archive_.write(), archive);
+        getLog().info(String.format("archive %s : %s (%d entries, %d from memory, %db)", unchanged ? "unchanged" : "written", archive, archive_.getWrittenCnt(), archive_.getInMemoryCnt(), archive.length()));
+    }
+
+    /**
+     * Release the entries of the archive not written (and their bytes), see {@link #archiveContent(File, byte[])}.
+     */
+    private void discardArchiveEntries() {
+        if (archive_ != null) {
+            archive_.discard();
+        }
+    }
+
+    /**
+     * Remove the outputs packed into archive (see {@link #archiveLooseFiles}), except the sources processed in place.
+     */
+    private void removeLooseFiles() {
+        if ((archive_ == null) || archiveLooseFiles) {
+            return;
+        }
+        int removedCnt = archive_.removeLooseFiles(sourceFiles_, buildContext);
+        getLog().info(String.format("%d output(s) packed into the archive, removed from the output directories", removedCnt));
+    }
+
+    /**
+     * Create the .zst version of every output (see {@link ZstdStage}).
+     */
+    private void zstdIfRequested() throws Exception {
+        if (!zstd || zstdCandidates_.isEmpty()) {
+            return;
+        }
+        ZstdStage stage = new ZstdStage(zstdLevel, zstdDictionaryThreshold, zstdDictionarySize, zstdDictionary, statistics, buildContext, getLog());
+        List<ZstdStage.Output> outputs = stage.run(new ArrayList<File>(zstdCandidates_));
+        if (stage.isDictionaryTrained()) {
+            declareOutput(zstdDictionary);
+        }
+        for (ZstdStage.Output output : outputs) {
+            declareZstd(output.file, output.zstded, output.useDictionary);
+        }
+    }
+
+    /**
+     * Declare the zstd version of file, and add it to the static metadata and to the asset manifest
+     * (with a copy under the content hashed name of file).
+     */
+    private void declareZstd(File file, File zstded, boolean useDictionary) throws Exception {
+        declareOutput(zstded);
+        String dictionary = useDictionary ? toOutputPath(zstdDictionary) : null;
+        String path = toOutputPath(file);
+        if (staticMetadata_ != null) {
+            staticMetadata_.addEncoding(path, "zstd", toOutputPath(zstded), zstded.length(), dictionary);
+        }
+        File hashed = contentHashed_.get(file.getAbsoluteFile());
+        if (hashed != null) {
+            File hashedZstded = new File(hashed.getAbsolutePath() + ".zst");
+            copyIfChanged(zstded, hashedZstded);
+            contentHashedFiles_.add(hashedZstded.getAbsoluteFile());
+            declareOutput(hashedZstded);
+            if (staticMetadata_ != null) {
+                staticMetadata_.addEncoding(toOutputPath(hashed), "zstd", toOutputPath(hashedZstded), hashedZstded.length(), dictionary);
+            }
+            assetManifest_.addZstd(path, toOutputPath(hashedZstded), hashedZstded.length());
+        }
+    }
+
+    /**
+     * @return the way file was gzipped ("parallel" or "stream")
+     */
+    private String gzip(File file, File gzipped) throws Exception {
+        // the gzipped version is fed to the archive as it's written
+        CopyingOutputStream target = new CopyingOutputStream(buildContext.newFileOutputStream(gzipped), archive != null);
+        String back = "stream";
+        try {
+            if ((gzipParallelThreshold >= 0) && (file.length() >= gzipParallelThreshold)) {
+                // the blocks read and deflated ahead of the writer
+                long bytes = 4L * ParallelGzip.DEFAULT_BLOCK_SIZE * SharedExecutor.getThreadCnt();
+                if (SharedExecutor.tryAcquireBytes(bytes)) {
+                    try {
+                        gzipInParallel(file, target);
+                        back = "parallel";
+                    } finally {
+                        SharedExecutor.releaseBytes(bytes);
+                    }
+                } else {
+                    getLog().debug("too many bytes in flight to gzip in parallel, gzip as a stream : " + file);
+                }
+            }
+            if ("stream".equals(back)) {
+                GZIPOutputStream out = new GZIPOutputStream(target) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+                FileInputStream in = null;
+                try {
+                    in = new FileInputStream(file);
+                    IOUtil.copy(in, out);
+                    out.close();
+                } finally {
+                    IOUtil.close(in);
+                    IOUtil.close(out);
+                }
+            }
+        } finally {
+            IOUtil.close(target);
+        }
+        archiveContent(gzipped, target.getCopy());
+        return back;
+    }
+
+    /**
+     * @param target left open
+     */
+    private void gzipInParallel(File file, OutputStream target) throws Exception {
+        int nbThreads = SharedExecutor.getThreadCnt();
+        ExecutorService executor = SharedExecutor.newLane();
+        InputStream in = null;
+        try {
+            OutputStream out = new BufferedOutputStream(target);
+            in = new FileInputStream(file);
+            new ParallelGzip(level, ParallelGzip.DEFAULT_BLOCK_SIZE, executor, nbThreads * 2).compress(in, out);
+            out.flush();
+        } finally {
+            executor.shutdownNow();
+            IOUtil.close(in);
         }
-        return gzipped;
     }
 
     protected long ratioOfSize(File file100, File fileX) throws Exception {
@@ -327,8 +1875,26 @@ public class YuiCompressorMojo extends MojoSupport {
     }
 
     private boolean isMinifiedFile(File inFile) {
+        if (isContentHashedFile(inFile)) {
+            return true;
+        }
         String filename = inFile.getName().toLowerCase();
-        return filename.endsWith(suffix + ".js") || filename.endsWith(suffix + ".css");
+        int sep = filename.lastIndexOf('.');
+        String extension = (sep < 0) ? "" : filename.substring(sep);
+        if (!CompressorEngine.accept(extension)) {
+            return false;
+        }
+        if (filename.endsWith(suffix + extension)) {
+            return true;
+        }
+        if (outputProfiles != null) {
+            for (OutputProfile profile : outputProfiles) {
+                if (filename.endsWith(profile.suffix + extension)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     private static boolean minifiedFileExistsInSource(File source, File dest) throws InterruptedException {
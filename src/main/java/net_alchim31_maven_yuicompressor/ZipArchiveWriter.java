@@ -0,0 +1,196 @@
+package net_alchim31_maven_yuicompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Minimal zip writer that accepts entries already deflated (unlike {@link java.util.zip.ZipOutputStream}),
+ * so entries can be compressed in parallel with {@link #prepare(String, byte[], int)} and appended in a stable order.
+ *
+ * Entries have a fixed timestamp and no extra field, so the archive only depends on the names and contents of its entries.
+ * Zip64 records are added when needed : more than 65534 entries, or entries after the first 4GB of the archive
+ * (an entry is held in a byte array, so its own sizes always fit in 32 bits).
+ */
+class ZipArchiveWriter {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** 2010-01-01 00:00 in dos format */
+    private static final int DOS_TIME = ((2010 - 1980) << 25) | (1 << 21) | (1 << 16);
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final long MAX_32 = 0xffffffffL;
+    private static final int MAX_16 = 0xffff;
+
+    /**
+     * An entry ready to be written (compressed, with its crc).
+     */
+    static class Entry {
+        final String name;
+        final boolean deflated;
+        final byte[] data;
+        final long size;
+        final long crc;
+
+        Entry(String name, boolean deflated, byte[] data, long size, long crc) {
+            this.name = name;
+            this.deflated = deflated;
+            this.data = data;
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+
+    private final OutputStream out_;
+    private final ByteArrayOutputStream centralDirectory_ = new ByteArrayOutputStream();
+    private final Set<String> names_ = new HashSet<String>();
+    private long offset_ = 0;
+    private int entryCnt_ = 0;
+
+    public ZipArchiveWriter(OutputStream out) {
+        out_ = out;
+    }
+
+    /**
+     * Compress content for an entry (can be called from any thread).
+     *
+     * @param level deflate level, a negative value to store content as is
+     *        (for precompressed content : gzipped versions, images,...).
+     *        Content is stored too when deflate doesn't reduce its size.
+     */
+    public static Entry prepare(String name, byte[] content, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if (level >= 0) {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(content);
+                deflater.finish();
+                ByteArrayOutputStream deflated = new ByteArrayOutputStream(content.length / 2 + 64);
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    deflated.write(buffer, 0, deflater.deflate(buffer));
+                }
+                if (deflated.size() < content.length) {
+                    return new Entry(name, true, deflated.toByteArray(), content.length, crc.getValue());
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        return new Entry(name, false, content, content.length, crc.getValue());
+    }
+
+    public void add(Entry entry) throws IOException {
+        if (!names_.add(entry.name)) {
+            throw new IOException("duplicate entry in archive : " + entry.name);
+        }
+        byte[] name = entry.name.getBytes(UTF8);
+        int method = entry.deflated ? 8 : 0;
+        int version = entry.deflated ? 20 : 10;
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(30 + name.length);
+        writeInt(header, 0x04034b50);
+        writeShort(header, version);
+        writeShort(header, FLAG_UTF8);
+        writeShort(header, method);
+        writeInt(header, DOS_TIME);
+        writeInt(header, entry.crc);
+        writeInt(header, entry.data.length);
+        writeInt(header, entry.size);
+        writeShort(header, name.length);
+        writeShort(header, 0);
+        header.write(name);
+        header.writeTo(out_);
+        out_.write(entry.data);
+
+        // the offset of an entry after the first 4GB is in a zip64 extra field of the central directory only
+        boolean zip64 = (offset_ >= MAX_32);
+        writeInt(centralDirectory_, 0x02014b50);
+        writeShort(centralDirectory_, zip64 ? 45 : version);
+        writeShort(centralDirectory_, zip64 ? 45 : version);
+        writeShort(centralDirectory_, FLAG_UTF8);
+        writeShort(centralDirectory_, method);
+        writeInt(centralDirectory_, DOS_TIME);
+        writeInt(centralDirectory_, entry.crc);
+        writeInt(centralDirectory_, entry.data.length);
+        writeInt(centralDirectory_, entry.size);
+        writeShort(centralDirectory_, name.length);
+        writeShort(centralDirectory_, zip64 ? 12 : 0);
+        writeShort(centralDirectory_, 0);
+        writeShort(centralDirectory_, 0);
+        writeShort(centralDirectory_, 0);
+        writeInt(centralDirectory_, 0);
+        writeInt(centralDirectory_, zip64 ? MAX_32 : offset_);
+        centralDirectory_.write(name);
+        if (zip64) {
+            writeShort(centralDirectory_, 0x0001);
+            writeShort(centralDirectory_, 8);
+            writeLong(centralDirectory_, offset_);
+        }
+
+        offset_ += header.size() + entry.data.length;
+        entryCnt_++;
+    }
+
+    /**
+     * Write the central directory (the underlying stream is not closed).
+     */
+    public void finish() throws IOException {
+        ByteArrayOutputStream end = new ByteArrayOutputStream(98);
+        long size = centralDirectory_.size();
+        boolean zip64 = (entryCnt_ >= MAX_16) || (offset_ >= MAX_32) || (size >= MAX_32);
+        if (zip64) {
+            // zip64 end of central directory record, and its locator
+            writeInt(end, 0x06064b50);
+            writeLong(end, 44);
+            writeShort(end, 45);
+            writeShort(end, 45);
+            writeInt(end, 0);
+            writeInt(end, 0);
+            writeLong(end, entryCnt_);
+            writeLong(end, entryCnt_);
+            writeLong(end, size);
+            writeLong(end, offset_);
+            writeInt(end, 0x07064b50);
+            writeInt(end, 0);
+            writeLong(end, offset_ + size);
+            writeInt(end, 1);
+        }
+        writeInt(end, 0x06054b50);
+        writeShort(end, 0);
+        writeShort(end, 0);
+        writeShort(end, Math.min(entryCnt_, MAX_16));
+        writeShort(end, Math.min(entryCnt_, MAX_16));
+        writeInt(end, Math.min(size, MAX_32));
+        writeInt(end, Math.min(offset_, MAX_32));
+        writeShort(end, 0);
+        centralDirectory_.writeTo(out_);
+        end.writeTo(out_);
+        out_.flush();
+    }
+
+    public int getEntryCnt() {
+        return entryCnt_;
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int v) {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long v) {
+        out.write((int) (v & 0xff));
+        out.write((int) ((v >>> 8) & 0xff));
+        out.write((int) ((v >>> 16) & 0xff));
+        out.write((int) ((v >>> 24) & 0xff));
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long v) {
+        writeInt(out, v);
+        writeInt(out, v >>> 32);
+    }
+}
@@ -0,0 +1,90 @@
+package net_alchim31_maven_yuicompressor;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+
+import java.util.List;
+
+/**
+ * Zstandard compression of outputs, with an optional dictionary trained on the outputs themselves.
+ *
+ * Small files compress poorly on their own (the compressor has no context to find repetitions in),
+ * a dictionary built from similar files (same code style, same libraries, same css properties) gives them that context.
+ * A client needs the same dictionary to decompress them (the id of the dictionary is written into every frame).
+ *
+ * Compression (with or without dictionary) can be called from several threads.
+ */
+class ZstdPrecompressor {
+    private final int level_;
+    private ZstdDictCompress dictionary_;
+
+    public ZstdPrecompressor(int level) {
+        level_ = level;
+    }
+
+    /**
+     * zstd-jni is an optional dependency, added to the dependencies of the plugin by the projects that use zstd.
+     *
+     * @return true if the classes of zstd-jni can be loaded (without checking its native library)
+     */
+    public static boolean isLibraryPresent() {
+        try {
+            Class.forName("com.github.luben.zstd.Zstd", false, ZstdPrecompressor.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException exc) {
+            return false;
+        }
+    }
+
+    /**
+     * @return null if zstd can be used, else the reason (eg: no native library for the platform)
+     */
+    public static String checkAvailable() {
+        try {
+            Zstd.maxCompressionLevel();
+            return null;
+        } catch (Throwable exc) {
+            return exc.toString();
+        }
+    }
+
+    /**
+     * Train a dictionary on samples and use it for the next calls to {@link #compress(byte[], boolean)}.
+     *
+     * @param maxSize max size (in bytes) of the dictionary
+     * @return the dictionary, to publish with the compressed files
+     * @throws RuntimeException if the samples are not enough (or too small) to build a dictionary
+     */
+    public byte[] train(List<byte[]> samples, int maxSize) {
+        byte[] buffer = new byte[maxSize];
+        long size = Zstd.trainFromBuffer(samples.toArray(new byte[samples.size()][]), buffer);
+        if (Zstd.isError(size)) {
+            throw new IllegalStateException("failed to train the zstd dictionary : " + Zstd.getErrorName(size));
+        }
+        byte[] back = new byte[(int) size];
+        System.arraycopy(buffer, 0, back, 0, back.length);
+        dictionary_ = new ZstdDictCompress(back, level_);
+        return back;
+    }
+
+    /**
+     * @param useDictionary compress with the trained dictionary (if any)
+     */
+    public byte[] compress(byte[] content, boolean useDictionary) {
+        if (useDictionary && (dictionary_ != null)) {
+            return Zstd.compress(content, dictionary_);
+        }
+        return Zstd.compress(content, level_);
+    }
+
+    public boolean hasDictionary() {
+        return dictionary_ != null;
+    }
+
+    public void close() {
+        if (dictionary_ != null) {
+            dictionary_.close();
+            dictionary_ = null;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package net_alchim31_maven_yuicompressor;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Create the .zst version of outputs (in parallel, a bounded number of files ahead), with a dictionary trained on the small ones
+ * (see the zstd parameters of {@link YuiCompressorMojo}).
+ * Existing versions are kept when the output is older and the dictionary has not changed.
+ */
+class ZstdStage {
+    private final int level_;
+    private final long dictionaryThreshold_;
+    private final int dictionarySize_;
+    private final File dictionary_;
+    private final boolean statistics_;
+    private final BuildContext buildContext_;
+    private final Log log_;
+    private boolean dictionaryTrained_;
+
+    /**
+     * @param dictionaryThreshold max size (in bytes) of the files used to train the dictionary and compressed with it
+     * @param dictionarySize max size (in bytes) of the dictionary
+     * @param dictionary where to write the dictionary
+     */
+    ZstdStage(int level, long dictionaryThreshold, int dictionarySize, File dictionary, boolean statistics, BuildContext buildContext, Log log) {
+        level_ = level;
+        dictionaryThreshold_ = dictionaryThreshold;
+        dictionarySize_ = dictionarySize;
+        dictionary_ = dictionary;
+        statistics_ = statistics;
+        buildContext_ = buildContext;
+        log_ = log;
+    }
+
+    /**
+     * @return the .zst version of every file (in the same order), empty if zstd is not available on this platform
+     */
+    List<Output> run(final List<File> files) throws Exception {
+        List<Output> back = new ArrayList<Output>();
+        String unavailable = ZstdPrecompressor.checkAvailable();
+        if (unavailable != null) {
+            log_.warn("zstd is not available on this platform, .zst versions are not created (" + unavailable + ")");
+            return back;
+        }
+        final ZstdPrecompressor compressor = new ZstdPrecompressor(level_);
+        ExecutorService executor = SharedExecutor.newLane();
+        HeldTask.Queue<byte[]> queue = new HeldTask.Queue<byte[]>(executor, SharedExecutor.getThreadCnt() * 4);
+        try {
+            boolean dictionaryUnchanged = trainDictionary(compressor, files);
+            long inSize = 0;
+            long outSize = 0;
+            int writtenCnt = 0;
+            int next = 0;
+            for (int i = 0; i < files.size(); i++) {
+                // a bounded number of files read and compressed ahead, like the entries of the archive
+                while (next < files.size()) {
+                    final File file = files.get(next);
+                    File zstded = new File(file.getAbsolutePath() + ".zst");
+                    boolean offered;
+                    if (dictionaryUnchanged && zstded.isFile() && (zstded.lastModified() >= file.lastModified())) {
+                        offered = queue.offerNothing();
+                    } else {
+                        final boolean useDictionary = compressor.hasDictionary() && (file.length() <= dictionaryThreshold_);
+                        offered = queue.offer(new Callable<byte[]>() {
+                            public byte[] call() throws Exception {
+                                Tracing.Span span = Tracing.start("zstd", file.getPath()).type(".zst").engine(useDictionary ? "dictionary" : "no-dictionary").inputSize(file.length());
+                                try {
+                                    byte[] back = compressor.compress(OutputFiles.readBytes(file), useDictionary);
+                                    span.outputSize(back.length);
+                                    return back;
+                                } finally {
+                                    span.end();
+                                }
+                            }
+                        }, file.length());
+                    }
+                    if (!offered) {
+                        break;
+                    }
+                    next++;
+                }
+                File file = files.get(i);
+                File zstded = new File(file.getAbsolutePath() + ".zst");
+                // null when up to date
+                byte[] output = queue.take();
+                if ((output != null) && !OutputFiles.sameContent(output, zstded)) {
+                    OutputStream out = buildContext_.newFileOutputStream(zstded);
+                    try {
+                        out.write(output);
+                    } finally {
+                        IOUtil.close(out);
+                    }
+                    writtenCnt++;
+                }
+                back.add(new Output(file, zstded, compressor.hasDictionary() && (file.length() <= dictionaryThreshold_)));
+                inSize += file.length();
+                outSize += zstded.length();
+            }
+            if (statistics_) {
+                log_.info(String.format("zstd : %d file(s) (%db) -> (%db)[%d%%], %d written%s", files.size(), inSize, outSize, (outSize * 100) / Math.max(inSize, 1), writtenCnt,
+                        compressor.hasDictionary() ? String.format(", dictionary %s (%db)", dictionary_.getName(), dictionary_.length()) : ""));
+            }
+        } finally {
+            executor.shutdownNow();
+            queue.cancel();
+            compressor.close();
+        }
+        return back;
+    }
+
+    /**
+     * @return true if the dictionary was trained (and written) by the last {@link #run(List)}
+     */
+    boolean isDictionaryTrained() {
+        return dictionaryTrained_;
+    }
+
+    /**
+     * @return true if the dictionary is the same as the previous build (or still absent)
+     */
+    private boolean trainDictionary(ZstdPrecompressor compressor, List<File> files) throws Exception {
+        // samples up to 100 times the size of the dictionary (the advice of zstd), so the memory is bounded
+        List<byte[]> samples = new ArrayList<byte[]>();
+        long samplesSize = 0;
+        for (File file : files) {
+            if ((file.length() <= dictionaryThreshold_) && (samplesSize + file.length() <= 100L * dictionarySize_)) {
+                samples.add(OutputFiles.readBytes(file));
+                samplesSize += file.length();
+            }
+        }
+        byte[] dictionary = null;
+        if (!samples.isEmpty()) {
+            Tracing.Span span = Tracing.start("zstd-train", dictionary_.getPath()).count(samples.size());
+            try {
+                dictionary = compressor.train(samples, dictionarySize_);
+                span.outputSize(dictionary.length);
+            } catch (RuntimeException exc) {
+                log_.warn(String.format("zstd dictionary not trained on %d file(s), compress without dictionary (%s)", samples.size(), exc.getMessage()));
+            } finally {
+                span.end();
+            }
+        }
+        dictionaryTrained_ = (dictionary != null);
+        if (dictionary == null) {
+            boolean unchanged = !dictionary_.exists();
+            dictionary_.delete();
+            return unchanged;
+        }
+        if (OutputFiles.sameContent(dictionary, dictionary_)) {
+            return true;
+        }
+        dictionary_.getParentFile().mkdirs();
+        OutputStream out = buildContext_.newFileOutputStream(dictionary_);
+        try {
+            out.write(dictionary);
+        } finally {
+            IOUtil.close(out);
+        }
+        log_.info(String.format("zstd dictionary trained on %d file(s) : %s (%db)", samples.size(), dictionary_, dictionary.length));
+        return false;
+    }
+
+    /**
+     * The .zst version of an output.
+     */
+    static class Output {
+        final File file;
+        final File zstded;
+        // true if zstded needs the dictionary to be decompressed
+        final boolean useDictionary;
+
+        Output(File file, File zstded, boolean useDictionary) {
+            this.file = file;
+            this.zstded = zstded;
+            this.useDictionary = useDictionary;
+        }
+    }
+}
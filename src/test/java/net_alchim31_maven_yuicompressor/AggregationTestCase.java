@@ -6,6 +6,7 @@ import org.codehaus.plexus.util.FileUtils;
 import org.sonatype.plexus.build.incremental.DefaultBuildContext;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 
@@ -208,4 +209,142 @@ public class AggregationTestCase extends TestCase {
         assertTrue(target.output.exists());
         assertEquals(FileUtils.fileRead(f2), FileUtils.fileRead(target.output));
     }
+
+    public void testUnchangedOutputNotRewritten() throws Exception {
+        File f1 = new File(dir_, "01.js");
+        FileUtils.fileWrite(f1.getAbsolutePath(), "1");
+
+        Aggregation target = new Aggregation();
+        target.output = new File(dir_, "output.js");
+        target.includes = new String[]{f1.getName()};
+
+        target.run(null, defaultBuildContext);
+        assertFalse(target.isOutputUnchanged());
+        long lastModified = 1000L;
+        assertTrue(target.output.setLastModified(lastModified));
+
+        target.run(null, defaultBuildContext);
+        assertTrue(target.isOutputUnchanged());
+        assertEquals(lastModified, target.output.lastModified());
+
+        FileUtils.fileWrite(f1.getAbsolutePath(), "2");
+        target.run(null, defaultBuildContext);
+        assertFalse(target.isOutputUnchanged());
+        assertEquals("2", FileUtils.fileRead(target.output));
+        // the content is streamed into a temporary file, renamed or removed
+        assertFalse(new File(target.output.getPath() + ".tmp").exists());
+    }
+
+    public void testSplitBalanced() throws Exception {
+        assertTrue(Arrays.equals(new int[]{0}, Aggregation.split(new long[]{10, 10, 10}, 100)));
+        assertTrue(Arrays.equals(new int[]{0, 2}, Aggregation.split(new long[]{10, 10, 10, 10}, 30)));
+        // a member bigger than the target is alone in its chunk
+        assertTrue(Arrays.equals(new int[]{0, 1, 2}, Aggregation.split(new long[]{10, 50, 10}, 20)));
+        // a big member doesn't raise the limit of the other chunks
+        assertTrue(Arrays.equals(new int[]{0, 2, 3}, Aggregation.split(new long[]{2, 2, 2, 8}, 5)));
+        assertTrue(Arrays.equals(new int[]{0, 1, 2, 3, 4}, Aggregation.split(new long[]{4, 4, 4, 4, 100}, 5)));
+        assertTrue(Arrays.equals(new int[]{0, 1, 3}, Aggregation.split(new long[]{30, 10, 10, 10}, 20)));
+        // 2 chunks are enough, balance them (60/50 instead of 90/20)
+        assertTrue(Arrays.equals(new int[]{0, 2}, Aggregation.split(new long[]{30, 30, 30, 20}, 100)));
+    }
+
+    public void testChunks() throws Exception {
+        for (int i = 1; i <= 4; i++) {
+            FileUtils.fileWrite(new File(dir_, "0" + i + ".js").getAbsolutePath(), "var a" + i + "=1;");
+        }
+        Aggregation target = new Aggregation();
+        target.output = new File(dir_, "all.js");
+        target.includes = new String[]{"*.js"};
+        target.maxChunkSize = 20;
+
+        target.run(null, defaultBuildContext);
+        assertFalse(target.output.exists());
+        assertEquals(2, target.getOutputs().size());
+        assertEquals("var a1=1;var a2=1;", FileUtils.fileRead(new File(dir_, "all-1.js")));
+        assertEquals("var a3=1;var a4=1;", FileUtils.fileRead(new File(dir_, "all-2.js")));
+        String manifest = FileUtils.fileRead(target.getChunkManifest());
+        assertTrue(manifest, manifest.contains("{ \"file\" : \"all-2.js\", \"size\" : 18, \"members\" : [\"03.js\", \"04.js\"] }"));
+
+        // chunks of the previous run are not aggregated, and extra chunks are removed
+        FileUtils.fileWrite(new File(dir_, "05.js").getAbsolutePath(), "var a5=1;");
+        target.maxChunkSize = 30;
+        target.run(null, defaultBuildContext);
+        assertEquals(2, target.getOutputs().size());
+        assertEquals("var a1=1;var a2=1;var a3=1;", FileUtils.fileRead(new File(dir_, "all-1.js")));
+        assertEquals("var a4=1;var a5=1;", FileUtils.fileRead(new File(dir_, "all-2.js")));
+
+        // back under the max size : a single output, the chunks and the manifest are removed
+        target.maxChunkSize = 100;
+        target.run(null, defaultBuildContext);
+        assertEquals(Arrays.asList(target.output.getCanonicalFile()), target.getOutputs());
+        assertEquals("var a1=1;var a2=1;var a3=1;var a4=1;var a5=1;", FileUtils.fileRead(target.output));
+        assertFalse(new File(dir_, "all-1.js").exists());
+        assertFalse(new File(dir_, "all-2.js").exists());
+        assertFalse(target.getChunkManifest().exists());
+
+        // split again, then not split anymore
+        target.maxChunkSize = 20;
+        target.run(null, defaultBuildContext);
+        assertFalse(target.output.exists());
+        assertTrue(new File(dir_, "all-3.js").exists());
+        target.maxChunkSize = 0;
+        target.run(null, defaultBuildContext);
+        assertEquals("var a1=1;var a2=1;var a3=1;var a4=1;var a5=1;", FileUtils.fileRead(target.output));
+        assertFalse(new File(dir_, "all-1.js").exists());
+        assertFalse(new File(dir_, "all.js.chunks.json").exists());
+    }
+
+    public void testChunksWithHeadersAndRemoveIncluded() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            FileUtils.fileWrite(new File(dir_, "0" + i + ".js").getAbsolutePath(), "var a" + i + "=1");
+        }
+        Aggregation target = new Aggregation();
+        target.output = new File(dir_, "all.js");
+        target.includes = new String[]{"0*.js"};
+        target.insertFileHeader = true;
+        target.fixLastSemicolon = true;
+        target.insertNewLine = true;
+        target.removeIncluded = true;
+        // "/*01.js*/\nvar a1=1;\n" : 20b
+        target.maxChunkSize = 40;
+        target.run(null, defaultBuildContext);
+        assertEquals("/*01.js*/\nvar a1=1;\n/*02.js*/\nvar a2=1;\n", FileUtils.fileRead(new File(dir_, "all-1.js")));
+        assertEquals("/*03.js*/\nvar a3=1;\n", FileUtils.fileRead(new File(dir_, "all-2.js")));
+        String manifest = FileUtils.fileRead(target.getChunkManifest());
+        assertTrue(manifest, manifest.contains("{ \"file\" : \"all-1.js\", \"size\" : 40, \"members\" : [\"01.js\", \"02.js\"] }"));
+        for (int i = 1; i <= 3; i++) {
+            assertFalse(new File(dir_, "0" + i + ".js").exists());
+        }
+    }
+
+    public void testChunkManifestPaths() throws Exception {
+        new File(dir_, "lib").mkdirs();
+        new File(dir_, "app").mkdirs();
+        FileUtils.fileWrite(new File(dir_, "lib/util.js").getAbsolutePath(), "var a1=1;");
+        FileUtils.fileWrite(new File(dir_, "app/util.js").getAbsolutePath(), "var a2=1;");
+        Aggregation target = new Aggregation();
+        target.inputDir = dir_;
+        target.output = new File(dir_, "all.js");
+        target.includes = new String[]{"lib/*.js", "app/*.js"};
+        target.maxChunkSize = 10;
+        target.run(null, defaultBuildContext);
+        String manifest = FileUtils.fileRead(target.getChunkManifest());
+        assertTrue(manifest, manifest.contains("\"members\" : [\"lib/util.js\"]"));
+        assertTrue(manifest, manifest.contains("\"members\" : [\"app/util.js\"]"));
+    }
+
+    public void testNoEmptyChunk() throws Exception {
+        assertEquals(0, Aggregation.split(new long[0], 100).length);
+        FileUtils.fileWrite(new File(dir_, "all-1.js").getAbsolutePath(), "var a1=1;");
+        Aggregation target = new Aggregation();
+        target.output = new File(dir_, "all.js");
+        // only matches files named like chunks
+        target.includes = new String[]{"all-*.js"};
+        target.maxChunkSize = 20;
+        target.run(null, defaultBuildContext);
+        assertTrue(target.getOutputs().isEmpty());
+        assertFalse(target.output.exists());
+        assertFalse(target.getChunkManifest().exists());
+        assertEquals("var a1=1;", FileUtils.fileRead(new File(dir_, "all-1.js")));
+    }
 }
@@ -0,0 +1,33 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+
+public class AssetManifestTestCase extends TestCase {
+
+    public void testJsonSortedByName() throws Exception {
+        AssetManifest manifest = new AssetManifest();
+        assertTrue(manifest.isEmpty());
+        manifest.add("js/b-min.js", "js/b-min.0123abcd.js", 10, null, -1);
+        manifest.add("css/a-min.css", "css/a-min.4567cdef.css", 20, "css/a-min.4567cdef.css.gz", 8);
+        assertEquals("{\n"
+                + "  \"css/a-min.css\" : { \"file\" : \"css/a-min.4567cdef.css\", \"size\" : 20, \"gzip\" : \"css/a-min.4567cdef.css.gz\", \"gzipSize\" : 8 },\n"
+                + "  \"js/b-min.js\" : { \"file\" : \"js/b-min.0123abcd.js\", \"size\" : 10 }\n"
+                + "}\n", manifest.toJson());
+    }
+
+    public void testZstd() throws Exception {
+        AssetManifest manifest = new AssetManifest();
+        manifest.add("a-min.css", "a-min.4567cdef.css", 20, "a-min.4567cdef.css.gz", 8);
+        manifest.addZstd("a-min.css", "a-min.4567cdef.css.zst", 7);
+        manifest.addZstd("unknown.css", "unknown.4567cdef.css.zst", 7);
+        assertEquals("a-min.4567cdef.css", manifest.getFile("a-min.css"));
+        assertEquals("{\n"
+                + "  \"a-min.css\" : { \"file\" : \"a-min.4567cdef.css\", \"size\" : 20, \"gzip\" : \"a-min.4567cdef.css.gz\", \"gzipSize\" : 8,"
+                + " \"zstd\" : \"a-min.4567cdef.css.zst\", \"zstdSize\" : 7 }\n"
+                + "}\n", manifest.toJson());
+    }
+
+    public void testQuote() throws Exception {
+        assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", AssetManifest.quote("a\"b\\c\n\u0001"));
+    }
+}
@@ -0,0 +1,53 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class BuildFingerprintTestCase extends TestCase {
+    private File dir_;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir_ = File.createTempFile(this.getClass().getName(), "-test");
+        dir_.delete();
+        dir_.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir_);
+    }
+
+    private String fingerprint(File src, String option) throws Exception {
+        return new BuildFingerprint().add("option", option).addFile("source", src).get();
+    }
+
+    public void testFingerprintChangesWithInputs() throws Exception {
+        File src = new File(dir_, "a.js");
+        FileUtils.fileWrite(src.getAbsolutePath(), "var a = 1;");
+        String fp = fingerprint(src, "x");
+        assertEquals(fp, fingerprint(src, "x"));
+        assertFalse(fp.equals(fingerprint(src, "y")));
+        FileUtils.fileWrite(src.getAbsolutePath(), "var a = 2;");
+        assertFalse(fp.equals(fingerprint(src, "x")));
+    }
+
+    public void testUpToDate() throws Exception {
+        File state = new File(dir_, "state/default.state");
+        File out = new File(dir_, "a-min.js");
+        FileUtils.fileWrite(out.getAbsolutePath(), "var a=1;");
+        assertFalse(BuildFingerprint.isUpToDate(state, "fp1"));
+
+        BuildFingerprint.writeState(state, "fp1", Arrays.asList(out));
+        assertTrue(BuildFingerprint.isUpToDate(state, "fp1"));
+        assertFalse(BuildFingerprint.isUpToDate(state, "fp2"));
+
+        FileUtils.fileWrite(out.getAbsolutePath(), "var a=12;");
+        assertFalse(BuildFingerprint.isUpToDate(state, "fp1"));
+        out.delete();
+        assertFalse(BuildFingerprint.isUpToDate(state, "fp1"));
+    }
+}
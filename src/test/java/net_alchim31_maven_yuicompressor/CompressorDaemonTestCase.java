@@ -0,0 +1,140 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.mozilla.javascript.EvaluatorException;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.List;
+
+public class CompressorDaemonTestCase extends TestCase {
+    private static final CompressionOptions OPTIONS = new CompressionOptions(-1, true, true, false, false);
+    private static final String JS = "function hello(name) {\n  var message = 'hello ' + name;\n  return message;\n}\n";
+    private static final String CSS = ".a {\n  color : #FFFFFF;\n}\n";
+
+    private File tokenFile_;
+    private int port_;
+    private Thread daemon_;
+    private CompressorDaemonClient client_;
+
+    @Override
+    protected void setUp() throws Exception {
+        tokenFile_ = File.createTempFile("daemon", ".token");
+        tokenFile_.delete();
+        client_ = startDaemon(CompressorDaemon.VERSION);
+        assertTrue(client_.isCompatible());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        client_.close();
+        tokenFile_.delete();
+    }
+
+    private CompressorDaemonClient startDaemon(final String version) throws Exception {
+        ServerSocket free = new ServerSocket(0);
+        port_ = free.getLocalPort();
+        free.close();
+        final int port = port_;
+        daemon_ = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    new CompressorDaemon(port, 2000, 1024 * 1024, tokenFile_, version).run();
+                } catch (Exception exc) {
+                    exc.printStackTrace();
+                }
+            }
+        };
+        daemon_.setDaemon(true);
+        daemon_.start();
+        CompressorDaemonClient back = null;
+        for (int i = 0; (back == null) && (i < 50); i++) {
+            back = CompressorDaemonClient.connect(port, 500, tokenFile_);
+            if (back == null) {
+                Thread.sleep(100);
+            }
+        }
+        assertNotNull(back);
+        return back;
+    }
+
+    public void testSameResultAsInProcess() throws Exception {
+        CompressorDaemon.RecordingErrorReporter reporter = new CompressorDaemon.RecordingErrorReporter();
+        CompressorEngine engine = new CompressorEngine(OPTIONS, -1);
+        for (int i = 0; i < 2; i++) {
+            List<String> results = client_.compress(OPTIONS, -1, Arrays.asList(".js", ".css"), Arrays.asList(JS, CSS), reporter);
+            assertEquals(engine.compress(".js", JS, reporter), results.get(0));
+            assertEquals(engine.compress(".css", CSS, reporter), results.get(1));
+        }
+        assertTrue(reporter.messages.isEmpty());
+    }
+
+    public void testErrorsAreReplayed() throws Exception {
+        CompressorDaemon.RecordingErrorReporter reporter = new CompressorDaemon.RecordingErrorReporter();
+        try {
+            client_.compress(OPTIONS, -1, Arrays.asList(".js"), Arrays.asList("function ( {"), reporter);
+            fail("EvaluatorException expected");
+        } catch (EvaluatorException exc) {
+            assertFalse(reporter.messages.isEmpty());
+            assertTrue(reporter.messages.get(0).error);
+        }
+        // the connection is still usable
+        assertEquals(1, client_.compress(OPTIONS, -1, Arrays.asList(".js"), Arrays.asList(JS), reporter).size());
+    }
+
+    public void testTokenRequired() throws Exception {
+        File other = File.createTempFile("other", ".token");
+        try {
+            CompressorDaemon.writeToken(other);
+            assertNull(CompressorDaemonClient.connect(port_, 500, other));
+            assertNull(CompressorDaemonClient.connect(port_, 500, new File(other.getPath() + ".missing")));
+            if (!System.getProperty("os.name").toLowerCase().startsWith("windows")) {
+                // a token readable by others can't be trusted
+                other.setReadable(true, false);
+                assertNull(CompressorDaemon.readToken(other));
+            }
+        } finally {
+            other.delete();
+        }
+    }
+
+    public void testOtherVersionOnlyAcceptsStop() throws Exception {
+        client_.close();
+        client_ = startDaemon("0.0-old");
+        assertFalse(client_.isCompatible());
+        assertEquals("0.0-old", client_.getDaemonVersion());
+        try {
+            client_.compress(OPTIONS, -1, Arrays.asList(".js"), Arrays.asList(JS), new CompressorDaemon.RecordingErrorReporter());
+            fail("compression by a daemon of another version");
+        } catch (IOException exc) {
+            // expected : connection closed by the daemon
+        }
+        client_ = CompressorDaemonClient.connect(port_, 500, tokenFile_);
+        client_.stopDaemon();
+        // the daemon ends its loop (without System.exit)
+        daemon_.join(5000);
+        assertFalse(daemon_.isAlive());
+        assertNull(CompressorDaemonClient.connect(port_, 500, tokenFile_));
+    }
+
+    public void testLengthsAreBounded() throws Exception {
+        byte[] huge = {0x7f, 0, 0, 0};
+        try {
+            CompressorDaemon.readBytes(new DataInputStream(new ByteArrayInputStream(huge)), 1024);
+            fail("length accepted");
+        } catch (IOException exc) {
+            assertTrue(exc.getMessage().startsWith("invalid length"));
+        }
+        try {
+            CompressorDaemon.readCount(new DataInputStream(new ByteArrayInputStream(huge)));
+            fail("count accepted");
+        } catch (IOException exc) {
+            assertTrue(exc.getMessage().startsWith("invalid count"));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+
+public class CssImageInlinerTestCase extends TestCase {
+    private File dir_;
+    private File css_;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir_ = File.createTempFile(this.getClass().getName(), "-test");
+        dir_.delete();
+        new File(dir_, "css").mkdirs();
+        new File(dir_, "img").mkdirs();
+        OutputFiles.writeBytes(new File(dir_, "img/a.png"), new byte[]{1, 2, 3});
+        OutputFiles.writeBytes(new File(dir_, "img/big.gif"), new byte[64]);
+        css_ = new File(dir_, "css/style.css");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir_);
+    }
+
+    public void testInline() throws Exception {
+        CssImageInliner inliner = new CssImageInliner(16, 1);
+        String css = ".a{background:url(../img/a.png)}\n"
+                + ".b{background:url( '/img/a.png' )}\n"
+                + ".c{background:url(\"../img/big.gif\")}\n"
+                + ".d{background:url(http://example.com/a.png)}\n"
+                + ".e{background:url(../img/missing.png)}\n"
+                + ".f{src:url(../img/a.png?v=1)}";
+        String expected = ".a{background:url(\"data:image/png;base64,AQID\")}\n"
+                + ".b{background:url(\"data:image/png;base64,AQID\")}\n"
+                + ".c{background:url(\"../img/big.gif\")}\n"
+                + ".d{background:url(http://example.com/a.png)}\n"
+                + ".e{background:url(../img/missing.png)}\n"
+                + ".f{src:url(../img/a.png?v=1)}";
+        // a.png is referenced twice (relative and absolute), kept
+        assertEquals(css, inliner.inline(css, css_, dir_));
+        inliner = new CssImageInliner(16, 2);
+        assertEquals(expected, inliner.inline(css, css_, dir_));
+        assertEquals(2, inliner.getInlinedCnt());
+    }
+
+    public void testDataUriPreservedByCompressor() throws Exception {
+        CssImageInliner inliner = new CssImageInliner(16, 1);
+        String css = inliner.inline(".a {\n  background : url(../img/a.png) no-repeat;\n}\n", css_, dir_);
+        CompressorEngine engine = new CompressorEngine(new CompressionOptions(-1, true, false, false, false), -1);
+        assertEquals(".a{background:url(\"data:image/png;base64,AQID\") no-repeat}", engine.compress(".css", css, null));
+    }
+}
@@ -0,0 +1,66 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.mozilla.javascript.EvaluatorException;
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+
+import java.io.File;
+
+public class ErrorReporter4MojoTestCase extends TestCase {
+    private ErrorReporter4Mojo newReporter(boolean jswarn) {
+        DefaultBuildContext buildContext = new DefaultBuildContext();
+        buildContext.enableLogging(new ConsoleLogger(Logger.LEVEL_DISABLED, "test"));
+        return new ErrorReporter4Mojo(new SystemStreamLog() {
+            @Override
+            public void warn(CharSequence content) {
+            }
+
+            @Override
+            public void error(CharSequence content) {
+            }
+        }, jswarn, buildContext);
+    }
+
+    public void testSummary() throws Exception {
+        ErrorReporter4Mojo reporter = newReporter(true);
+        File a = new File("src/main/webapp/a.js");
+        reporter.setFile(a);
+        reporter.warning("Try to use a single 'var' statement per scope.", null, 1, "var a;", 4);
+        File b = new File("src/main/webapp/b.js");
+        reporter.setFile(b);
+        reporter.error("missing ; before statement", null, 3, "var b c;", 6);
+        try {
+            reporter.runtimeError("", null, 7, null, 0);
+            fail("runtime error not thrown");
+        } catch (EvaluatorException exc) {
+            // reported as an error too
+        }
+        assertEquals(2, reporter.getErrorCnt());
+        assertEquals(1, reporter.getWarningCnt());
+        // errors first, then warnings
+        assertEquals("2 error(s), 1 warning(s)"
+                + "\n  " + b.getPath() + " [3:6]: missing ; before statement"
+                + "\n  " + b.getPath() + " [7:0]: unknown error"
+                + "\n  " + a.getPath() + " [1:4]: Try to use a single 'var' statement per scope.", reporter.getSummary(50));
+    }
+
+    public void testSummaryBounded() throws Exception {
+        ErrorReporter4Mojo reporter = newReporter(true);
+        reporter.setFile(new File("a.js"));
+        for (int i = 1; i <= 5; i++) {
+            reporter.error("error " + i, null, i, null, 0);
+        }
+        assertEquals("5 error(s), 0 warning(s)\n  a.js [1:0]: error 1\n  a.js [2:0]: error 2\n  ... (3 more, see log)", reporter.getSummary(2));
+    }
+
+    public void testWarningsIgnoredWithoutJswarn() throws Exception {
+        ErrorReporter4Mojo reporter = newReporter(false);
+        reporter.setFile(new File("a.js"));
+        reporter.warning("ignored", null, 1, null, 0);
+        assertEquals(0, reporter.getWarningCnt());
+        assertEquals("0 error(s), 0 warning(s)", reporter.getSummary(50));
+    }
+}
@@ -0,0 +1,118 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+public class FilePipelineTestCase extends TestCase {
+    private File root_;
+    private FilePipeline pipeline_;
+
+    @Override
+    protected void setUp() throws Exception {
+        root_ = File.createTempFile("pipeline", "");
+        root_.delete();
+        root_.mkdirs();
+        for (int i = 0; i < 10; i++) {
+            OutputFiles.writeBytes(new File(root_, i + ".js"), ("var a" + i + ";").getBytes("UTF-8"));
+        }
+        pipeline_ = new FilePipeline(3);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pipeline_.close();
+        FileUtils.deleteDirectory(root_);
+    }
+
+    private void awaitReadAhead(int cnt) throws Exception {
+        long deadline = System.currentTimeMillis() + 10 * 1000;
+        while ((pipeline_.getReadAheadCnt() < cnt) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(20);
+        assertEquals(cnt, pipeline_.getReadAheadCnt());
+    }
+
+    private String take(String name) throws Exception {
+        byte[] back = pipeline_.take(new File(root_, name));
+        return (back == null) ? null : new String(back, "UTF-8");
+    }
+
+    public void testReadAhead() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            pipeline_.prefetch(new File(root_, i + ".js"));
+        }
+        // bounded by the depth
+        awaitReadAhead(3);
+        assertEquals("var a0;", take("0.js"));
+        awaitReadAhead(3);
+        // skipped sources are dropped, not read yet : read by the caller
+        assertNull(take("5.js"));
+        assertNull(take("3.js"));
+        assertNull(take("unknown.js"));
+        for (int i = 6; i < 10; i++) {
+            // a source is only read once the window has room for it
+            awaitReadAhead(Math.min(3, 10 - i));
+            assertEquals("var a" + i + ";", take(i + ".js"));
+        }
+        assertNull(take("9.js"));
+        assertEquals(0, pipeline_.getReadAheadCnt());
+    }
+
+    public void testReadFailureLeftToCaller() throws Exception {
+        pipeline_.prefetch(new File(root_, "missing.js"));
+        assertNull(pipeline_.take(new File(root_, "missing.js")));
+    }
+
+    public void testWritesInOrder() throws Exception {
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 20; i++) {
+            final int n = i;
+            pipeline_.write(new Callable<Void>() {
+                public Void call() throws Exception {
+                    Thread.sleep(1);
+                    written.add(n);
+                    return null;
+                }
+            });
+        }
+        pipeline_.flush();
+        assertEquals(20, written.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, written.get(i).intValue());
+        }
+        assertTrue(pipeline_.getSummary().contains("write: 20 file(s)"));
+    }
+
+    public void testWriteFailureStopsWrites() throws Exception {
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+        pipeline_.write(new Callable<Void>() {
+            public Void call() throws Exception {
+                throw new IOException("disk full");
+            }
+        });
+        try {
+            for (int i = 0; i < 100; i++) {
+                final int n = i;
+                pipeline_.write(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        written.add(n);
+                        return null;
+                    }
+                });
+            }
+            pipeline_.flush();
+            fail("failure not reported");
+        } catch (IOException exc) {
+            assertEquals("disk full", exc.getMessage());
+        }
+        assertTrue(written.isEmpty());
+    }
+}
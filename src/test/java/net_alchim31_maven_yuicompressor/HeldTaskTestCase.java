@@ -0,0 +1,81 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+public class HeldTaskTestCase extends TestCase {
+    private ExecutorService lane_;
+
+    @Override
+    protected void setUp() throws Exception {
+        lane_ = SharedExecutor.newLane();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        lane_.shutdownNow();
+    }
+
+    private static Callable<Integer> value(final int value) {
+        return new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return value;
+            }
+        };
+    }
+
+    public void testBytesReleasedOnce() throws Exception {
+        int available = SharedExecutor.availableBytePermits();
+        HeldTask<Integer> task = HeldTask.submit(lane_, value(1), 10 * 1024, false);
+        assertEquals(1, task.get().intValue());
+        assertEquals(available - 10, SharedExecutor.availableBytePermits());
+        task.release();
+        task.release();
+        assertEquals(available, SharedExecutor.availableBytePermits());
+    }
+
+    public void testFailureThrownAsIs() throws Exception {
+        HeldTask<Integer> task = HeldTask.submit(lane_, new Callable<Integer>() {
+            public Integer call() throws Exception {
+                throw new IOException("failed");
+            }
+        }, 0, true);
+        try {
+            task.get();
+            fail("failure not thrown");
+        } catch (IOException exc) {
+            assertEquals("failed", exc.getMessage());
+        } finally {
+            task.release();
+        }
+    }
+
+    public void testQueueInOrderAndBounded() throws Exception {
+        int available = SharedExecutor.availableBytePermits();
+        HeldTask.Queue<Integer> queue = new HeldTask.Queue<Integer>(lane_, 2);
+        assertTrue(queue.offer(value(1), 1024));
+        assertTrue(queue.offerNothing());
+        assertFalse(queue.offer(value(3), 1024));
+        assertEquals(1, queue.take().intValue());
+        assertNull(queue.take());
+        assertTrue(queue.isEmpty());
+        assertEquals(available, SharedExecutor.availableBytePermits());
+
+        // bytes not available : run in the calling thread when nothing is pending, else wait for the pending tasks
+        SharedExecutor.acquireBytes(Long.MAX_VALUE);
+        try {
+            assertTrue(queue.offer(value(4), 1024));
+            assertFalse(queue.offer(value(5), 1024));
+            assertEquals(4, queue.take().intValue());
+            assertTrue(queue.offer(value(5), 1024));
+        } finally {
+            SharedExecutor.releaseBytes(Long.MAX_VALUE);
+        }
+        queue.cancel();
+        assertTrue(queue.isEmpty());
+        assertEquals(available, SharedExecutor.availableBytePermits());
+    }
+}
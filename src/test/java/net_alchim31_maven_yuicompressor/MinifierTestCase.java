@@ -0,0 +1,45 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.mozilla.javascript.EvaluatorException;
+
+public class MinifierTestCase extends TestCase {
+
+    private static String minify(String extension, String source) throws Exception {
+        return new CompressorEngine(new CompressionOptions(-1, true, false, false, false), -1).compress(extension, source, new CompressorDaemon.RecordingErrorReporter());
+    }
+
+    public void testJson() throws Exception {
+        assertEquals("{\"a b\":[1,2,{\"c\":\"x \\\" y\"}],\"d\":null}", minify(".json", "﻿{\n  \"a b\" : [ 1, 2, { \"c\" : \"x \\\" y\" } ],\r\n\t\"d\": null\n}\n"));
+        try {
+            minify(".json", "{\n \"a\": \"b\n}");
+            fail("unterminated string accepted");
+        } catch (EvaluatorException exc) {
+            assertEquals(2, exc.lineNumber());
+        }
+    }
+
+    public void testSvg() throws Exception {
+        String source = "<?xml version=\"1.0\"?>\n<!-- generated -->\n<svg  xmlns=\"http://www.w3.org/2000/svg\"\n     viewBox=\"0 0 10 10\" >\n"
+                + "  <metadata><rdf:RDF/></metadata>\n  <metadata/>\n"
+                + "  <path d=\"M 0 0  L 10 10\" />\n  <text x=\"1\">a  <tspan>b</tspan> c</text>\n"
+                + "  <style><![CDATA[ path { fill : red } ]]></style>\n</svg>\n";
+        assertEquals("<?xml version=\"1.0\"?><svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 10 10\">"
+                + "<path d=\"M 0 0  L 10 10\" /><text x=\"1\">a  <tspan>b</tspan> c</text>"
+                + "<style><![CDATA[ path { fill : red } ]]></style></svg>", minify(".svg", source));
+    }
+
+    public void testHtml() throws Exception {
+        String source = "<!DOCTYPE html>\n<html>\n  <!-- comment -->\n  <!--[if IE]><p>ie</p><![endif]-->\n"
+                + "  <body   class=\"a  b\" >\n    <p>a   <b>b</b>   c</p>\n"
+                + "    <pre>  x\n    y  </pre>\n    <script>\n  var  a = 1 < 2;\n</script>\n    <p>1 < 2</p>\n  </body>\n</html>\n";
+        assertEquals("<!DOCTYPE html>\n<html>\n<!--[if IE]><p>ie</p><![endif]-->\n"
+                + "<body class=\"a  b\">\n<p>a <b>b</b> c</p>\n"
+                + "<pre>  x\n    y  </pre>\n<script>\n  var  a = 1 < 2;\n</script>\n<p>1 < 2</p>\n</body>\n</html>\n", minify(".html", source));
+    }
+
+    public void testJsp() throws Exception {
+        String source = "<%@ page contentType=\"text/html\" %>\n<%-- jsp comment --%>\n<c:if test=\"${a > b}\">\n   <%  int  i = 0; %>   <p>${i}</p>\n</c:if>\n";
+        assertEquals("<%@ page contentType=\"text/html\" %>\n<c:if test=\"${a > b}\">\n<%  int  i = 0; %> <p>${i}</p>\n</c:if>\n", minify(".jsp", source));
+    }
+}
@@ -0,0 +1,156 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+public class MinifyFilterTestCase extends TestCase {
+    private File root_;
+    private MinifyFilter filter_;
+
+    @Override
+    protected void setUp() throws Exception {
+        root_ = File.createTempFile("filter", "");
+        root_.delete();
+        root_.mkdirs();
+        OutputFiles.writeBytes(new File(root_, "app.js"), "function f(value) { return value + 1; }".getBytes("UTF-8"));
+        filter_ = new MinifyFilter();
+        filter_.init(fake(FilterConfig.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                return "getServletContext".equals(method.getName()) ? newContext() : null;
+            }
+        }));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        filter_.destroy();
+        FileUtils.deleteDirectory(root_);
+    }
+
+    private ServletContext newContext() {
+        return fake(ServletContext.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getResource".equals(method.getName())) {
+                    File file = new File(root_, (String) args[0]);
+                    return file.isFile() ? file.toURI().toURL() : null;
+                }
+                if ("getRealPath".equals(method.getName())) {
+                    return new File(root_, (String) args[0]).getPath();
+                }
+                return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T fake(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(MinifyFilterTestCase.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * @return the headers of the response, the status as "status" and the body as "body"
+     */
+    private Map<String, Object> get(String path, final Map<String, String> requestHeaders) throws Exception {
+        final Map<String, Object> back = new HashMap<String, Object>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        back.put("status", 200);
+        back.put("body", body);
+        final String servletPath = path;
+        HttpServletRequest req = fake(HttpServletRequest.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getServletPath".equals(method.getName())) {
+                    return servletPath;
+                }
+                if ("getMethod".equals(method.getName())) {
+                    return "GET";
+                }
+                if ("getHeader".equals(method.getName())) {
+                    return requestHeaders.get(args[0]);
+                }
+                return null;
+            }
+        });
+        HttpServletResponse res = fake(HttpServletResponse.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("setHeader".equals(method.getName())) {
+                    back.put((String) args[0], args[1]);
+                } else if ("setStatus".equals(method.getName())) {
+                    back.put("status", args[0]);
+                } else if ("getOutputStream".equals(method.getName())) {
+                    return new ServletOutputStream() {
+                        @Override
+                        public void write(int b) {
+                            body.write(b);
+                        }
+                    };
+                }
+                return null;
+            }
+        });
+        filter_.doFilter(req, res, new FilterChain() {
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                back.put("status", -1);
+            }
+        });
+        return back;
+    }
+
+    private static String body(Map<String, Object> response) throws Exception {
+        byte[] body = ((ByteArrayOutputStream) response.get("body")).toByteArray();
+        if ("gzip".equals(response.get("Content-Encoding"))) {
+            return IOUtil.toString(new GZIPInputStream(new ByteArrayInputStream(body)), "UTF-8");
+        }
+        return new String(body, "UTF-8");
+    }
+
+    public void testETagByEncoding() throws Exception {
+        Map<String, String> identity = new HashMap<String, String>();
+        Map<String, Object> plain = get("/app.js", identity);
+        assertEquals("function f(a){return a+1};", body(plain));
+        assertEquals("Accept-Encoding", plain.get("Vary"));
+        String etag = (String) plain.get("ETag");
+
+        Map<String, String> gzip = new HashMap<String, String>();
+        gzip.put("Accept-Encoding", "gzip, deflate");
+        Map<String, Object> gzipped = get("/app.js", gzip);
+        assertEquals("gzip", gzipped.get("Content-Encoding"));
+        assertEquals("function f(a){return a+1};", body(gzipped));
+        assertEquals("Accept-Encoding", gzipped.get("Vary"));
+        assertEquals(etag.substring(0, etag.length() - 1) + "-gz\"", gzipped.get("ETag"));
+
+        // a validator only matches the encoding it was sent with
+        gzip.put("If-None-Match", etag);
+        assertEquals(200, get("/app.js", gzip).get("status"));
+        gzip.put("If-None-Match", (String) gzipped.get("ETag"));
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, get("/app.js", gzip).get("status"));
+        identity.put("If-None-Match", (String) gzipped.get("ETag"));
+        assertEquals(200, get("/app.js", identity).get("status"));
+        identity.put("If-None-Match", etag);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, get("/app.js", identity).get("status"));
+    }
+
+    public void testNotMinifiedServedByChain() throws Exception {
+        assertEquals(-1, get("/missing.js", new HashMap<String, String>()).get("status"));
+        OutputFiles.writeBytes(new File(root_, "lib-min.js"), "var a;".getBytes("UTF-8"));
+        assertEquals(-1, get("/lib-min.js", new HashMap<String, String>()).get("status"));
+    }
+}
@@ -0,0 +1,72 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class OutputFilesTestCase extends TestCase {
+    private File dir_;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir_ = File.createTempFile("outputs", "");
+        dir_.delete();
+        dir_.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir_);
+    }
+
+    private File write(String name, byte[] content) throws Exception {
+        File back = new File(dir_, name);
+        OutputFiles.writeBytes(back, content);
+        return back;
+    }
+
+    public void testCopy() throws Exception {
+        // not text, and larger than a transfer
+        byte[] content = new byte[3 * 1024 * 1024 + 7];
+        new Random(42).nextBytes(content);
+        File from = write("from.bin", content);
+        File to = new File(dir_, "to.bin");
+        OutputFiles.copy(from, to);
+        assertTrue(Arrays.equals(content, OutputFiles.readBytes(to)));
+        assertTrue(OutputFiles.sameContent(from, to));
+
+        // an existing file is replaced, not appended to
+        File shorter = write("shorter.bin", new byte[]{1, 2, 3});
+        OutputFiles.copy(shorter, to);
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, OutputFiles.readBytes(to)));
+        OutputFiles.copy(write("empty.bin", new byte[0]), to);
+        assertEquals(0, to.length());
+    }
+
+    public void testLink() throws Exception {
+        File from = write("from.js", "var a;".getBytes("UTF-8"));
+        File to = new File(dir_, "to.js");
+        if (!OutputFiles.link(from, to)) {
+            // not supported by the file system of the temporary directory
+            return;
+        }
+        assertTrue(Files.isSameFile(from.toPath(), to.toPath()));
+        assertEquals("var a;", new String(OutputFiles.readBytes(to), "UTF-8"));
+        // an existing file is not replaced
+        assertFalse(OutputFiles.link(write("other.js", "var b;".getBytes("UTF-8")), to));
+        assertEquals("var a;", new String(OutputFiles.readBytes(to), "UTF-8"));
+    }
+
+    public void testSameContent() throws Exception {
+        File a = write("a.js", "var a;".getBytes("UTF-8"));
+        assertTrue(OutputFiles.sameContent(a, write("b.js", "var a;".getBytes("UTF-8"))));
+        assertFalse(OutputFiles.sameContent(a, write("c.js", "var c;".getBytes("UTF-8"))));
+        assertFalse(OutputFiles.sameContent(a, new File(dir_, "missing.js")));
+        assertTrue(OutputFiles.sameContent("var a;".getBytes("UTF-8"), a));
+        assertFalse(OutputFiles.sameContent("var a; ".getBytes("UTF-8"), a));
+    }
+}
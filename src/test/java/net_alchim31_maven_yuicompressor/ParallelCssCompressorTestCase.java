@@ -0,0 +1,77 @@
+package net_alchim31_maven_yuicompressor;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ParallelCssCompressorTestCase extends TestCase {
+    private static final String CSS = "/*! license */\n"
+            + ".a { color : rgb(255, 255, 255); margin: 0px 0px 0px 0px; }\n"
+            + "/* comment */\n"
+            + "a:hover , a:focus { background: none; }\n"
+            + "@media screen and (max-width: 100px) {\n  .b { color: #AABBCC; }\n  .c:first-letter{ x: 0.5em }\n}\n"
+            + ".empty { }\n"
+            + ".d { content: \"}{ ' \"; background: url( data:image/png;base64,AAAA ); }\n"
+            + ".e { filter: progid:DXImageTransform.Microsoft.Alpha(Opacity=80); }\n";
+
+    private ExecutorService executor_;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor_ = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor_.shutdownNow();
+    }
+
+    public void testSplitOnTopLevelBlocks() throws Exception {
+        List<String> chunks = ParallelCssCompressor.split(CSS, 1);
+        assertNotNull(chunks);
+        assertEquals(7, chunks.size());
+        assertTrue(chunks.get(2).trim().startsWith("@media"));
+        assertTrue(chunks.get(2).endsWith("}\n}"));
+        StringBuilder joined = new StringBuilder();
+        for (String chunk : chunks) {
+            joined.append(chunk);
+        }
+        assertEquals(CSS, joined.toString());
+    }
+
+    public void testNoSplit() throws Exception {
+        assertNull(ParallelCssCompressor.split(".a{x:1}/* not closed", 1));
+        assertNull(ParallelCssCompressor.split(".a{x:1}/*\\*/.b{x:1}/**/", 1));
+        assertNull(ParallelCssCompressor.split(".a{x:1}.b{content:\"/*\"}", 1));
+        assertNull(ParallelCssCompressor.split(".a{x:1}@charset \"UTF-8\";.b{x:1}", 1));
+        assertNull(ParallelCssCompressor.split(".a{x:1", 1));
+    }
+
+    public void testSameResultAsSinglePass() throws Exception {
+        assertSameResult(CSS);
+        assertSameResult("@charset \"UTF-8\";" + CSS);
+    }
+
+    public void testSameResultOnDemoStylesheets() throws Exception {
+        File dir = new File("src/it/demo01/src/main/webapp/static");
+        assertSameResult(FileUtils.fileRead(new File(dir, "uni-form.css")));
+        assertSameResult(FileUtils.fileRead(new File(dir, "uni-form-generic.css")));
+    }
+
+    private void assertSameResult(String css) throws Exception {
+        StringWriter expected = new StringWriter();
+        new CssCompressor(new StringReader(css)).compress(expected, -1);
+        for (int chunkSize : new int[]{1, 100, 1000}) {
+            StringWriter actual = new StringWriter();
+            new ParallelCssCompressor(executor_, chunkSize).compress(css, actual, -1);
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+public class ParallelGzipTestCase extends TestCase {
+    private ExecutorService executor_;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor_ = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor_.shutdownNow();
+    }
+
+    public void testEmpty() throws Exception {
+        assertRoundTrip(new byte[0], 1024);
+    }
+
+    public void testSingleBlock() throws Exception {
+        assertRoundTrip("var a = 1;".getBytes("UTF-8"), 1024);
+    }
+
+    public void testManyBlocks() throws Exception {
+        StringBuilder str = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            str.append("function f").append(random.nextInt(100)).append("(){return ").append(i).append(";}\n");
+        }
+        byte[] data = str.toString().getBytes("UTF-8");
+        assertRoundTrip(data, 1000);
+        assertRoundTrip(data, 4096);
+        assertRoundTrip(data, data.length);
+    }
+
+    private void assertRoundTrip(byte[] data, int blockSize) throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        new ParallelGzip(9, blockSize, executor_, 2).compress(new ByteArrayInputStream(data), gzipped);
+        byte[] back = IOUtil.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped.toByteArray())));
+        assertTrue(Arrays.equals(data, back));
+    }
+}
@@ -0,0 +1,80 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RemoteCacheTestCase extends TestCase {
+    private File dir_;
+    private RemoteCacheServer server_;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir_ = File.createTempFile(this.getClass().getName(), "-test");
+        dir_.delete();
+        server_ = new RemoteCacheServer(0, dir_);
+        server_.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server_.stop();
+        FileUtils.deleteDirectory(dir_);
+    }
+
+    public void testGetPut() throws Exception {
+        RemoteCache cache = new RemoteCache(server_.getUrl(), 1000, 1000, true, new SystemStreamLog());
+        byte[] value = "var a=1;".getBytes("UTF-8");
+
+        assertNull(cache.get("k1"));
+        cache.put("k1", value);
+        assertTrue(Arrays.equals(value, cache.get("k1")));
+        assertEquals(1, cache.getHitCnt());
+        assertEquals(1, cache.getMissCnt());
+        assertTrue(new File(dir_, "k1").isFile());
+        assertTrue(cache.isAvailable());
+    }
+
+    public void testResultWithMessages() throws Exception {
+        RemoteCache cache = new RemoteCache(server_.getUrl(), 1000, 1000, true, new SystemStreamLog());
+        List<CompressorDaemon.Message> messages = new ArrayList<CompressorDaemon.Message>();
+        messages.add(new CompressorDaemon.Message(false, "duplicate var", null, 3, "var a;", 4));
+        cache.putResult("k1", new CompressorDaemon.Result("var a;".getBytes("UTF-8"), messages));
+
+        assertNull(cache.get("k1"));
+        CompressorDaemon.Result result = cache.getResult("k1");
+        assertEquals("var a;", new String(result.output, "UTF-8"));
+        assertEquals(1, result.messages.size());
+        CompressorDaemon.Message m = result.messages.get(0);
+        assertFalse(m.error);
+        assertEquals("duplicate var", m.message);
+        assertEquals(3, m.line);
+
+        // an entry of an other format is a miss
+        cache.put("result1-k2", new byte[]{1, 2});
+        assertNull(cache.getResult("k2"));
+    }
+
+    public void testReadOnly() throws Exception {
+        RemoteCache cache = new RemoteCache(server_.getUrl(), 1000, 1000, false, new SystemStreamLog());
+        cache.put("k1", new byte[]{1});
+        assertNull(cache.get("k1"));
+    }
+
+    public void testServerDown() throws Exception {
+        ServerSocket free = new ServerSocket(0);
+        int port = free.getLocalPort();
+        free.close();
+        RemoteCache cache = new RemoteCache("http://localhost:" + port, 500, 500, true, new SystemStreamLog());
+        assertNull(cache.get("k1"));
+        assertFalse(cache.isAvailable());
+        cache.put("k1", new byte[]{1});
+        assertNull(cache.get("k1"));
+    }
+}
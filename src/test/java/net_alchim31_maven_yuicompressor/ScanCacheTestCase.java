@@ -0,0 +1,124 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ScanCacheTestCase extends TestCase {
+    private File root_;
+
+    @Override
+    protected void setUp() throws Exception {
+        root_ = File.createTempFile("scan", "");
+        root_.delete();
+        for (String name : new String[]{"a.js", "b.css", "c.txt", "js/d.js", "js/lib/e-min.js", ".svn/f.js"}) {
+            File file = new File(root_, name);
+            file.getParentFile().mkdirs();
+            OutputFiles.writeBytes(file, new byte[0]);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(root_);
+    }
+
+    /**
+     * Move the modification time of every directory before the racy window.
+     */
+    private void age(File dir) {
+        dir.setLastModified(System.currentTimeMillis() - 3600 * 1000);
+        for (File child : dir.listFiles()) {
+            if (child.isDirectory()) {
+                age(child);
+            }
+        }
+    }
+
+    private String[] directoryScan(String[] includes, String[] excludes) {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(root_);
+        scanner.setIncludes(includes);
+        scanner.setExcludes(excludes);
+        scanner.addDefaultExcludes();
+        scanner.scan();
+        String[] back = scanner.getIncludedFiles();
+        Arrays.sort(back);
+        return back;
+    }
+
+    private String[] cacheScan(ScanCache cache, String[] includes, String[] excludes) throws Exception {
+        String[] back = cache.scan(root_, includes, excludes);
+        Arrays.sort(back);
+        return back;
+    }
+
+    public void testSameResultAsDirectoryScanner() throws Exception {
+        ScanCache cache = new ScanCache();
+        String[][] includes = {null, {"**/*.css", "**/*.js"}, {"js/"}};
+        String[][] excludes = {null, {"**/*-min.js"}};
+        for (String[] include : includes) {
+            for (String[] exclude : excludes) {
+                assertEquals(Arrays.asList(directoryScan(include, exclude)), Arrays.asList(cacheScan(cache, include, exclude)));
+            }
+        }
+    }
+
+    public void testSharedByPluginContext() throws Exception {
+        Map<String, Object> context = new HashMap<String, Object>();
+        assertSame(ScanCache.from(context), ScanCache.from(context));
+        assertNotSame(ScanCache.from(context), ScanCache.from(new HashMap<String, Object>()));
+    }
+
+    public void testReuseUntilDirectoryChange() throws Exception {
+        age(root_);
+        ScanCache cache = new ScanCache();
+        String[] includes = {"**/*.js"};
+        assertEquals(3, cacheScan(cache, includes, null).length);
+        assertEquals(3, cacheScan(cache, includes, null).length);
+        assertEquals(1, cache.getWalkCnt());
+        assertEquals(1, cache.getReuseCnt());
+
+        OutputFiles.writeBytes(new File(root_, "js/lib/g.js"), new byte[0]);
+        assertEquals(4, cacheScan(cache, includes, null).length);
+        assertEquals(2, cache.getWalkCnt());
+
+        // just walked, modified in the racy window : not reused
+        assertEquals(4, cacheScan(cache, includes, null).length);
+        assertEquals(3, cache.getWalkCnt());
+    }
+
+    public void testExcludedDirectoriesNotWalked() throws Exception {
+        new File(root_, "node_modules/lib").mkdirs();
+        OutputFiles.writeBytes(new File(root_, "node_modules/lib/h.js"), new byte[0]);
+        age(root_);
+        ScanCache cache = new ScanCache();
+        String[] includes = {"**/*.js"};
+        String[] excludes = {"**/node_modules/**"};
+        assertEquals(Arrays.asList(directoryScan(includes, excludes)), Arrays.asList(cacheScan(cache, includes, excludes)));
+
+        // changes under a pruned directory are not tracked
+        OutputFiles.writeBytes(new File(root_, "node_modules/lib/i.js"), new byte[0]);
+        assertEquals(3, cacheScan(cache, includes, excludes).length);
+        assertEquals(1, cache.getWalkCnt());
+        assertEquals(1, cache.getReuseCnt());
+
+        // a scan that doesn't exclude it walks again
+        String[] all = cacheScan(cache, includes, null);
+        assertEquals(Arrays.asList(directoryScan(includes, null)), Arrays.asList(all));
+        assertEquals(5, all.length);
+        assertEquals(2, cache.getWalkCnt());
+    }
+
+    public void testNotReusedWhenRecentlyModified() throws Exception {
+        ScanCache cache = new ScanCache();
+        cacheScan(cache, null, null);
+        cacheScan(cache, null, null);
+        assertEquals(2, cache.getWalkCnt());
+    }
+}
@@ -0,0 +1,134 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class SharedExecutorTestCase extends TestCase {
+
+    /**
+     * More tasks than workers, every task waiting for a task submitted to another lane.
+     */
+    public void testNestedTasks() throws Exception {
+        final ExecutorService outer = SharedExecutor.newLane();
+        final ExecutorService inner = SharedExecutor.newLane();
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < SharedExecutor.getThreadCnt() * 4; i++) {
+                final int v = i;
+                results.add(outer.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        return inner.submit(new Callable<Integer>() {
+                            public Integer call() {
+                                return v * 2;
+                            }
+                        }).get();
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(Integer.valueOf(i * 2), results.get(i).get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            outer.shutdownNow();
+            inner.shutdownNow();
+        }
+    }
+
+    /**
+     * A burst of tasks submitted while a single worker is idle runs on as many workers as tasks.
+     */
+    public void testBurstStartsWorkers() throws Exception {
+        ExecutorService lane = SharedExecutor.newLane();
+        try {
+            lane.submit(new Callable<Object>() {
+                public Object call() {
+                    return null;
+                }
+            }).get(10, TimeUnit.SECONDS);
+            final CountDownLatch started = new CountDownLatch(SharedExecutor.getThreadCnt());
+            final CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < SharedExecutor.getThreadCnt(); i++) {
+                lane.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        started.countDown();
+                        release.await();
+                        return null;
+                    }
+                });
+            }
+            boolean allStarted = started.await(10, TimeUnit.SECONDS);
+            release.countDown();
+            assertTrue(allStarted);
+        } finally {
+            lane.shutdownNow();
+        }
+    }
+
+    public void testShutdownNow() throws Exception {
+        ExecutorService lane = SharedExecutor.newLane();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(SharedExecutor.getThreadCnt());
+        List<Future<?>> blockers = new ArrayList<Future<?>>();
+        for (int i = 0; i < SharedExecutor.getThreadCnt(); i++) {
+            blockers.add(lane.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    started.countDown();
+                    release.await();
+                    return null;
+                }
+            }));
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        Future<String> pending = lane.submit(new Callable<String>() {
+            public String call() {
+                return "run";
+            }
+        });
+        assertFalse(lane.shutdownNow().isEmpty());
+        assertTrue(pending.isCancelled());
+        try {
+            lane.submit(new Callable<String>() {
+                public String call() {
+                    return "run";
+                }
+            });
+            fail("task accepted after shutdown");
+        } catch (RejectedExecutionException exc) {
+            // expected
+        }
+        assertFalse(lane.isTerminated());
+        release.countDown();
+        for (Future<?> blocker : blockers) {
+            blocker.get(10, TimeUnit.SECONDS);
+        }
+        assertTrue(lane.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    public void testBytes() throws Exception {
+        int available = SharedExecutor.availableBytePermits();
+        assertTrue(SharedExecutor.tryAcquireBytes(0));
+        SharedExecutor.acquireBytes(0);
+        assertTrue(SharedExecutor.tryAcquireBytes(1));
+        assertEquals(available - 1, SharedExecutor.availableBytePermits());
+        SharedExecutor.releaseBytes(0);
+        SharedExecutor.releaseBytes(0);
+        SharedExecutor.releaseBytes(1);
+        assertEquals(available, SharedExecutor.availableBytePermits());
+        assertTrue(SharedExecutor.tryAcquireBytes(1024));
+        SharedExecutor.releaseBytes(1024);
+        // larger than the max : bounded, so it can be acquired alone
+        SharedExecutor.acquireBytes(Long.MAX_VALUE);
+        assertFalse(SharedExecutor.tryAcquireBytes(1024 * 1024));
+        SharedExecutor.releaseBytes(Long.MAX_VALUE);
+        assertTrue(SharedExecutor.tryAcquireBytes(1024 * 1024));
+        SharedExecutor.releaseBytes(1024 * 1024);
+    }
+}
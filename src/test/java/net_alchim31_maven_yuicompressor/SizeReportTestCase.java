@@ -0,0 +1,62 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.util.Map;
+
+public class SizeReportTestCase extends TestCase {
+    private File root_;
+
+    @Override
+    protected void setUp() throws Exception {
+        root_ = File.createTempFile("sizes", "");
+        root_.delete();
+        root_.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(root_);
+    }
+
+    public void testStoreAndLoad() throws Exception {
+        File report = new File(root_, "sub/size-report.properties");
+        assertTrue(SizeReport.load(report).isEmpty());
+
+        SizeReport sizes = new SizeReport();
+        sizes.add("js/a-min.js", new File(root_, "a-min.js"), 120, 80);
+        sizes.add("b-min.css", new File(root_, "b-min.css"), 50, -1);
+        sizes.store(report);
+        Map<String, long[]> loaded = SizeReport.load(report);
+        assertEquals(2, loaded.size());
+        assertEquals(120, loaded.get("js/a-min.js")[0]);
+        assertEquals(80, loaded.get("js/a-min.js")[1]);
+        assertEquals(50, loaded.get("b-min.css")[0]);
+        assertEquals(-1, loaded.get("b-min.css")[1]);
+    }
+
+    public void testMalformedEntriesIgnored() throws Exception {
+        File report = new File(root_, "size-report.properties");
+        OutputFiles.writeBytes(report, "a-min.js=12,10\nb-min.js=12\nc-min.js=x,1\n".getBytes("UTF-8"));
+        Map<String, long[]> loaded = SizeReport.load(report);
+        assertEquals(1, loaded.size());
+        assertEquals(12, loaded.get("a-min.js")[0]);
+    }
+
+    public void testEstimatedGzipSize() throws Exception {
+        File file = new File(root_, "a-min.js");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("var a").append(i % 10).append("=1;");
+        }
+        OutputFiles.writeBytes(file, content.toString().getBytes("UTF-8"));
+        SizeReport sizes = new SizeReport();
+        sizes.add("a-min.js", file, file.length(), -1);
+        sizes.add("b-min.js", file, file.length(), 7);
+        long estimated = sizes.getEntries().get("a-min.js").getGzipSize();
+        assertTrue(estimated > 18 && estimated < file.length());
+        assertEquals(7, sizes.getEntries().get("b-min.js").getGzipSize());
+    }
+}
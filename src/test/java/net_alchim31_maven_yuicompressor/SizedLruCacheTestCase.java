@@ -0,0 +1,93 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SizedLruCacheTestCase extends TestCase {
+
+    private static SizedLruCache<String, String> newCache(long maxSize) {
+        return new SizedLruCache<String, String>(maxSize, new SizedLruCache.Weigher<String>() {
+            public long weigh(String value) {
+                return value.length();
+            }
+        });
+    }
+
+    private static Callable<String> value(final String v) {
+        return new Callable<String>() {
+            public String call() {
+                return v;
+            }
+        };
+    }
+
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        SizedLruCache<String, String> cache = newCache(10);
+        cache.get("a", value("aaaa"));
+        cache.get("b", value("bbbb"));
+        assertEquals("aaaa", cache.get("a", value("reloaded")));
+        cache.get("c", value("cccc"));
+        assertEquals(8, cache.getSize());
+        assertEquals("aaaa", cache.get("a", value("reloaded")));
+        assertEquals("reloaded", cache.get("b", value("reloaded")));
+        // larger than the cache : returned, not kept
+        assertEquals("0123456789ab", cache.get("d", value("0123456789ab")));
+        assertEquals("reloaded", cache.get("d", value("reloaded")));
+    }
+
+    public void testFailureNotCached() throws Exception {
+        SizedLruCache<String, String> cache = newCache(10);
+        try {
+            cache.get("a", new Callable<String>() {
+                public String call() throws Exception {
+                    throw new IllegalStateException("boom");
+                }
+            });
+            fail("failure not reported");
+        } catch (IllegalStateException exc) {
+            assertEquals("boom", exc.getMessage());
+        }
+        assertEquals("a", cache.get("a", value("a")));
+    }
+
+    public void testSingleFlight() throws Exception {
+        final SizedLruCache<String, String> cache = newCache(1024);
+        final AtomicInteger loadCnt = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> slowLoader = new Callable<String>() {
+            public String call() throws Exception {
+                loadCnt.incrementAndGet();
+                release.await();
+                return "value";
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return cache.get("key", slowLoader);
+                    }
+                }));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loadCnt.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
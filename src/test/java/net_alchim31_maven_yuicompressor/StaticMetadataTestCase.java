@@ -0,0 +1,35 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+
+public class StaticMetadataTestCase extends TestCase {
+
+    public void testJson() throws Exception {
+        StaticMetadata metadata = new StaticMetadata("utf8");
+        metadata.add("js/a-min.js", "0123abcd", 10, "js/a-min.js.gz", 8);
+        metadata.add("img/b.png", "4567cdef", 20, null, -1);
+        assertEquals("{\n"
+                + "  \"img/b.png\" : { \"etag\" : \"\\\"4567cdef\\\"\", \"contentType\" : \"application/octet-stream\", \"length\" : 20, \"encodings\" : {} },\n"
+                + "  \"js/a-min.js\" : { \"etag\" : \"\\\"0123abcd\\\"\", \"contentType\" : \"application/javascript; charset=UTF-8\", \"length\" : 10, \"encodings\" : {"
+                + " \"gzip\" : { \"path\" : \"js/a-min.js.gz\", \"etag\" : \"\\\"0123abcd-gz\\\"\", \"length\" : 8 } } }\n"
+                + "}\n", metadata.toJson());
+    }
+
+    public void testZstdEncoding() throws Exception {
+        StaticMetadata metadata = new StaticMetadata("UTF-8");
+        metadata.add("a-min.css", "0123abcd", 10, "a-min.css.gz", 8);
+        metadata.addEncoding("a-min.css", "zstd", "a-min.css.zst", 7, "assets.dict");
+        metadata.addEncoding("unknown.css", "zstd", "unknown.css.zst", 7, null);
+        assertEquals("{\n"
+                + "  \"a-min.css\" : { \"etag\" : \"\\\"0123abcd\\\"\", \"contentType\" : \"text/css; charset=UTF-8\", \"length\" : 10, \"encodings\" : {"
+                + " \"gzip\" : { \"path\" : \"a-min.css.gz\", \"etag\" : \"\\\"0123abcd-gz\\\"\", \"length\" : 8 },"
+                + " \"zstd\" : { \"path\" : \"a-min.css.zst\", \"etag\" : \"\\\"0123abcd-zst\\\"\", \"length\" : 7, \"dictionary\" : \"assets.dict\" } } }\n"
+                + "}\n", metadata.toJson());
+    }
+
+    public void testContentType() throws Exception {
+        StaticMetadata metadata = new StaticMetadata("UTF-8");
+        assertEquals("text/css; charset=UTF-8", metadata.contentType("a.CSS"));
+        assertEquals("image/svg+xml", metadata.contentType("a.svg"));
+    }
+}
@@ -0,0 +1,74 @@
+package net_alchim31_maven_yuicompressor;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class StreamingCssCompressorTestCase extends TestCase {
+    private static final String CSS = "/*! license */\n"
+            + ".a { color : rgb(255, 255, 255); margin: 0px 0px 0px 0px; }\n"
+            + "/* comment with } and { */\n"
+            + "a:hover , a:focus { background: none; }\n"
+            + "@media screen and (max-width: 100px) {\n  .b { color: #AABBCC; }\n  .c:first-letter{ x: 0.5em }\n}\n"
+            + ".d { content: \"}{ ' /* } */ \"; background: url( data:image/svg+xml;utf8,<svg>}/*</svg> ); }\n"
+            + ".e { background: url(\"data:image/png;base64,AA}A\") no-repeat; filter: progid:DXImageTransform.Microsoft.Alpha(Opacity=80); }\n"
+            + "/* hack \\*/\n.f { x: 1 }\n/* */\n.g { x : 2 }\n"
+            + ".h { content: '\\'}'; }\n";
+
+    private ExecutorService executor_;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor_ = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor_.shutdownNow();
+    }
+
+    public void testSameResultAsSinglePass() throws Exception {
+        assertSameResult(CSS);
+        assertSameResult("@charset \"UTF-8\";" + CSS);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            large.append(CSS);
+        }
+        assertSameResult(large.toString());
+    }
+
+    public void testSameResultOnDemoStylesheets() throws Exception {
+        File dir = new File("src/it/demo01/src/main/webapp/static");
+        assertSameResult(FileUtils.fileRead(new File(dir, "uni-form.css")));
+        assertSameResult(FileUtils.fileRead(new File(dir, "uni-form-generic.css")));
+    }
+
+    public void testNotStreamable() throws Exception {
+        assertFalse(compress(".a{x:1}@charset \"UTF-8\";.b{x:1}", 1, new StringWriter()));
+        assertFalse(compress(".a{x:1}.b{x:1", 1, new StringWriter()));
+        assertFalse(compress(".a{x:1}}.b{x:1}", 1, new StringWriter()));
+        assertFalse(compress(".a{x:1}/* not closed", 1, new StringWriter()));
+        // in the first chunk, it's moved by CssCompressor
+        assertTrue(compress(".a{x:1}@charset \"UTF-8\";.b{x:1}", 1000, new StringWriter()));
+    }
+
+    private boolean compress(String css, int chunkSize, StringWriter out) throws Exception {
+        return new StreamingCssCompressor(executor_, chunkSize, 2).compress(new StringReader(css), out);
+    }
+
+    private void assertSameResult(String css) throws Exception {
+        StringWriter expected = new StringWriter();
+        new CssCompressor(new StringReader(css)).compress(expected, -1);
+        for (int chunkSize : new int[]{1, 100, 1000}) {
+            StringWriter actual = new StringWriter();
+            assertTrue(compress(css, chunkSize, actual));
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class TextCodecTestCase extends TestCase {
+
+    public void testAscii() throws Exception {
+        TextCodec codec = new TextCodec("UTF-8");
+        byte[] raw = "var a = 1;\n".getBytes("UTF-8");
+        assertTrue(TextCodec.isAscii(raw));
+        assertEquals("var a = 1;\n", codec.decode(raw));
+        assertTrue(Arrays.equals(raw, codec.encode("var a = 1;\n")));
+    }
+
+    public void testNonAscii() throws Exception {
+        String text = "var s = \"été € 😀\";";
+        for (String encoding : new String[]{"UTF-8", "ISO-8859-15", "UTF-16"}) {
+            TextCodec codec = new TextCodec(encoding);
+            String expected = new String(text.getBytes(encoding), encoding);
+            assertEquals(encoding, expected, codec.decode(text.getBytes(encoding)));
+            assertTrue(encoding, Arrays.equals(text.getBytes(encoding), codec.encode(text)));
+        }
+        assertFalse(TextCodec.isAscii("\u0080"));
+    }
+
+    public void testAsciiIncompatibleCharset() throws Exception {
+        TextCodec codec = new TextCodec("UTF-16LE");
+        assertEquals("ab", codec.decode(new byte[]{'a', 0, 'b', 0}));
+        assertTrue(Arrays.equals(new byte[]{'a', 0, 'b', 0}, codec.encode("ab")));
+    }
+}
@@ -0,0 +1,157 @@
+package net_alchim31_maven_yuicompressor;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TracingTestCase extends TestCase {
+    private static final String EVENT = "net_alchim31_maven_yuicompressor.Phase";
+
+    private File dir_;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir_ = File.createTempFile("tracing", "");
+        dir_.delete();
+        dir_.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir_);
+    }
+
+    public void testNoopWithoutRecording() throws Exception {
+        Tracing.Span span = Tracing.start("gzip", "a.js");
+        assertSame(Tracing.Span.NOOP, span);
+        assertSame(span, span.type(".js").engine("parallel").inputSize(10).outputSize(5).count(1));
+        span.end();
+    }
+
+    public void testNoopWithoutJfr() throws Exception {
+        // the classes of the plugin loaded by a class loader that doesn't see jdk.jfr (as on an old JVM)
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (name.startsWith("jdk.jfr.")) {
+                    throw new ClassNotFoundException(name);
+                }
+                if (!name.startsWith(Tracing.class.getPackage().getName() + ".")) {
+                    return super.loadClass(name, resolve);
+                }
+                Class<?> back = findLoadedClass(name);
+                if (back == null) {
+                    InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+                    try {
+                        byte[] bytes = IOUtil.toByteArray(in);
+                        back = defineClass(name, bytes, 0, bytes.length);
+                    } catch (Exception exc) {
+                        throw new ClassNotFoundException(name, exc);
+                    } finally {
+                        IOUtil.close(in);
+                    }
+                }
+                return back;
+            }
+        };
+        Class<?> tracing = loader.loadClass(Tracing.class.getName());
+        Class<?> spanClass = loader.loadClass(Tracing.Span.class.getName());
+        Method start = tracing.getDeclaredMethod("start", String.class, String.class);
+        start.setAccessible(true);
+        // nothing recorded, even while a recording is running
+        Recording recording = FlightRecorder.isAvailable() ? startRecording() : null;
+        try {
+            Object span = start.invoke(null, "gzip", "a.js");
+            Field noop = spanClass.getDeclaredField("NOOP");
+            noop.setAccessible(true);
+            assertSame(noop.get(null), span);
+            Method inputSize = spanClass.getDeclaredMethod("inputSize", long.class);
+            inputSize.setAccessible(true);
+            assertSame(span, inputSize.invoke(span, 10L));
+            Method end = spanClass.getDeclaredMethod("end");
+            end.setAccessible(true);
+            end.invoke(span);
+        } finally {
+            if (recording != null) {
+                assertTrue(stopRecording(recording).isEmpty());
+            }
+        }
+    }
+
+    public void testRecordedSpans() throws Exception {
+        if (!FlightRecorder.isAvailable()) {
+            return;
+        }
+        FileUtils.fileWrite(new File(dir_, "01.js").getAbsolutePath(), "var a1=1;");
+        FileUtils.fileWrite(new File(dir_, "02.js").getAbsolutePath(), "var a2=1;");
+        Aggregation aggregation = new Aggregation();
+        aggregation.output = new File(dir_, "all.js");
+        aggregation.includes = new String[]{"0*.js"};
+
+        Recording recording = startRecording();
+        List<RecordedEvent> events;
+        try {
+            Tracing.start("gzip", "a.js").type(".js").engine("parallel").inputSize(100).outputSize(40).end();
+            aggregation.run(null, new DefaultBuildContext());
+        } finally {
+            events = stopRecording(recording);
+        }
+        assertEquals(2, events.size());
+        RecordedEvent gzip = find(events, "gzip");
+        assertEquals("a.js", gzip.getString("path"));
+        assertEquals(".js", gzip.getString("type"));
+        assertEquals("parallel", gzip.getString("engine"));
+        assertEquals(100, gzip.getLong("inputSize"));
+        assertEquals(40, gzip.getLong("outputSize"));
+        RecordedEvent aggregate = find(events, "aggregate");
+        assertEquals(2, aggregate.getLong("count"));
+        assertEquals(18, aggregate.getLong("outputSize"));
+        assertEquals("single", aggregate.getString("engine"));
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String phase) {
+        for (RecordedEvent event : events) {
+            if (phase.equals(event.getString("phase"))) {
+                return event;
+            }
+        }
+        throw new AssertionError(phase + " not recorded : " + events);
+    }
+
+    private static Recording startRecording() {
+        Recording back = new Recording();
+        back.enable(EVENT).withThreshold(Duration.ZERO);
+        back.start();
+        return back;
+    }
+
+    private List<RecordedEvent> stopRecording(Recording recording) throws Exception {
+        List<RecordedEvent> back = new ArrayList<RecordedEvent>();
+        try {
+            recording.stop();
+            File dump = new File(dir_, "events.jfr");
+            recording.dump(dump.toPath());
+            for (RecordedEvent event : RecordingFile.readAllEvents(dump.toPath())) {
+                if (EVENT.equals(event.getEventType().getName())) {
+                    back.add(event);
+                }
+            }
+        } finally {
+            recording.close();
+        }
+        return back;
+    }
+}
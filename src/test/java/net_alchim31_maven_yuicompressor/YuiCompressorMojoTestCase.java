@@ -0,0 +1,658 @@
+package net_alchim31_maven_yuicompressor;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+import junit.framework.TestCase;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipFile;
+
+/**
+ * Runs the compress goal on a temporary project, configured with the default values of the plugin descriptor.
+ */
+public class YuiCompressorMojoTestCase extends TestCase {
+    private static final Pattern PARAMETER = Pattern.compile("<(\\w+) implementation=\"[^\"]+\"(?: default-value=\"([^\"]*)\")?(?:/>|>([^<]*)</\\1>)");
+
+    private File root_;
+    private File webapp_;
+    private File target_;
+    private final List<String> messages_ = new ArrayList<String>();
+
+    @Override
+    protected void setUp() throws Exception {
+        root_ = File.createTempFile("mojo", "");
+        root_.delete();
+        webapp_ = new File(root_, "src/main/webapp");
+        target_ = new File(root_, "target");
+        webapp_.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(root_);
+    }
+
+    private YuiCompressorMojo newMojo() throws Exception {
+        YuiCompressorMojo back = new YuiCompressorMojo();
+        String descriptor = FileUtils.fileRead(new File("target/classes/META-INF/maven/plugin.xml"), "UTF-8");
+        int start = descriptor.indexOf("<configuration>", descriptor.indexOf("<goal>compress</goal>"));
+        Matcher m = PARAMETER.matcher(descriptor.substring(start, descriptor.indexOf("</configuration>", start)));
+        while (m.find()) {
+            String value = (m.group(2) != null) ? m.group(2) : m.group(3);
+            if (value == null) {
+                continue;
+            }
+            value = value.replace("${basedir}", root_.getPath())
+                    .replace("${project.build.directory}", target_.getPath())
+                    .replace("${project.build.finalName}", "demo")
+                    .replace("${project.build.outputDirectory}", new File(target_, "classes").getPath())
+                    .replace("${project.build.sourceDirectory}", new File(root_, "src/main/java").getPath());
+            if (!value.contains("${")) {
+                set(back, m.group(1), value);
+            }
+        }
+        MavenProject project = new MavenProject();
+        project.getBuild().setDirectory(target_.getPath());
+        set(back, "project", project);
+        set(back, "mojoExecution", new MojoExecution(new MojoDescriptor(), "default-compress"));
+        set(back, "resources", new ArrayList<Object>());
+        DefaultBuildContext buildContext = new DefaultBuildContext();
+        buildContext.enableLogging(new ConsoleLogger(Logger.LEVEL_DISABLED, "test"));
+        set(back, "buildContext", buildContext);
+        back.setLog(new SystemStreamLog() {
+            @Override
+            public boolean isDebugEnabled() {
+                return true;
+            }
+
+            @Override
+            public void debug(CharSequence content) {
+                messages_.add(content.toString());
+            }
+
+            @Override
+            public void info(CharSequence content) {
+                messages_.add(content.toString());
+            }
+
+            @Override
+            public void warn(CharSequence content) {
+                messages_.add(content.toString());
+            }
+
+            @Override
+            public void error(CharSequence content) {
+                messages_.add(content.toString());
+            }
+        });
+        return back;
+    }
+
+    static void set(Object mojo, String name, Object value) throws Exception {
+        for (Class<?> clazz = mojo.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                Field field = clazz.getDeclaredField(name);
+                field.setAccessible(true);
+                Class<?> type = field.getType();
+                if (!(value instanceof String) || (type == String.class)) {
+                    field.set(mojo, value);
+                } else if (type == boolean.class) {
+                    field.setBoolean(mojo, Boolean.parseBoolean((String) value));
+                } else if (type == int.class) {
+                    field.setInt(mojo, Integer.parseInt((String) value));
+                } else if (type == long.class) {
+                    field.setLong(mojo, Long.parseLong((String) value));
+                } else if (type == File.class) {
+                    field.set(mojo, new File((String) value));
+                }
+                return;
+            } catch (NoSuchFieldException exc) {
+                // declared by the super class
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    private boolean logged(String message) {
+        for (String logged : messages_) {
+            if (logged.startsWith(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void testStreamingWithDefaultConfiguration() throws Exception {
+        StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            css.append(".rule").append(i).append(" { color : #FFFFFF; margin: 0px 0px 0px 0px; }\n");
+        }
+        OutputFiles.writeBytes(new File(webapp_, "large.css"), css.toString().getBytes("UTF-8"));
+        StringWriter expected = new StringWriter();
+        new CssCompressor(new StringReader(css.toString())).compress(expected, -1);
+
+        YuiCompressorMojo mojo = newMojo();
+        // only the threshold is lowered, useSmallestFile and the pipeline keep their default
+        set(mojo, "cssStreamThreshold", "1024");
+        mojo.execute();
+        assertTrue(logged("compressed while read"));
+        assertEquals(expected.toString(), FileUtils.fileRead(new File(target_, "demo/large-min.css"), "UTF-8"));
+    }
+
+    public void testRemoteCacheHitReportsWarnings() throws Exception {
+        OutputFiles.writeBytes(new File(webapp_, "warn.js"), "function f() { var a = 1; var a = 2; return a; }".getBytes("UTF-8"));
+        File cacheDir = new File(root_, "cache");
+        RemoteCacheServer server = new RemoteCacheServer(0, cacheDir);
+        server.start();
+        try {
+            for (int i = 0; i < 2; i++) {
+                FileUtils.deleteDirectory(target_);
+                messages_.clear();
+                YuiCompressorMojo mojo = newMojo();
+                set(mojo, "remoteCacheUrl", server.getUrl());
+                set(mojo, "failOnWarning", "true");
+                try {
+                    mojo.execute();
+                    fail("warning not reported at build " + i);
+                } catch (MojoFailureException exc) {
+                    assertTrue(exc.getMessage(), exc.getMessage().contains("warnings on"));
+                }
+                assertEquals(i == 1, logged("use output from remote cache"));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void testArchiveFromMemory() throws Exception {
+        new File(webapp_, "js").mkdirs();
+        OutputFiles.writeBytes(new File(webapp_, "js/a.js"), "function f(value) { return value + 1; }".getBytes("UTF-8"));
+        OutputFiles.writeBytes(new File(webapp_, "b.css"), ".b { color : #FFFFFF; }".getBytes("UTF-8"));
+        File archive = new File(target_, "assets.jar");
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "archive", archive);
+        set(mojo, "archivePrefix", "META-INF/resources/");
+        set(mojo, "gzip", "true");
+        set(mojo, "archiveLooseFiles", "false");
+        mojo.execute();
+
+        assertTrue(logged("archive written : " + archive + " (4 entries, 4 from memory"));
+        ZipFile zip = new ZipFile(archive);
+        try {
+            assertEquals("function f(a){return a+1};", IOUtil.toString(zip.getInputStream(zip.getEntry("META-INF/resources/js/a-min.js")), "UTF-8"));
+            assertEquals(".b{color:#fff}", IOUtil.toString(zip.getInputStream(zip.getEntry("META-INF/resources/b-min.css")), "UTF-8"));
+            InputStream gz = new GZIPInputStream(zip.getInputStream(zip.getEntry("META-INF/resources/b-min.css.gz")));
+            assertEquals(".b{color:#fff}", IOUtil.toString(gz, "UTF-8"));
+        } finally {
+            zip.close();
+        }
+        // loose files removed, not the sources
+        assertFalse(new File(target_, "demo/js/a-min.js").exists());
+        assertFalse(new File(target_, "demo/b-min.css.gz").exists());
+        assertTrue(new File(webapp_, "js/a.js").exists());
+    }
+
+    public void testZstdVersionsDeclared() throws Exception {
+        if (ZstdPrecompressor.checkAvailable() != null) {
+            return;
+        }
+        OutputFiles.writeBytes(new File(webapp_, "a.css"), ".a { color : #FFFFFF; }".getBytes("UTF-8"));
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "zstd", "true");
+        set(mojo, "staticMetadata", "true");
+        set(mojo, "contentHashNames", "true");
+        mojo.execute();
+
+        String manifest = FileUtils.fileRead(new File(target_, "yuicompressor/asset-manifest.json"), "UTF-8");
+        Matcher m = Pattern.compile("\"zstd\" : \"(a-min\\.[0-9a-f]{8}\\.css\\.zst)\"").matcher(manifest);
+        assertTrue(manifest, m.find());
+        assertTrue(new File(target_, "demo/" + m.group(1)).isFile());
+        String metadata = FileUtils.fileRead(new File(target_, "yuicompressor/static-metadata.json"), "UTF-8");
+        assertTrue(metadata, metadata.contains("\"zstd\" : { \"path\" : \"a-min.css.zst\""));
+        assertTrue(metadata, metadata.contains("\"zstd\" : { \"path\" : \"" + m.group(1) + "\""));
+    }
+
+    public void testStreamingKeepsSmallestFile() throws Exception {
+        // already compressed, larger once compressed (a space is added after :first-letter)
+        StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            css.append(".r").append(i).append(":first-letter{x:1}");
+        }
+        File source = new File(webapp_, "small.css");
+        OutputFiles.writeBytes(source, css.toString().getBytes("UTF-8"));
+
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "cssStreamThreshold", "1024");
+        mojo.execute();
+        assertTrue(logged("compressed while read"));
+        File output = new File(target_, "demo/small-min.css");
+        assertEquals(css.toString(), FileUtils.fileRead(output, "UTF-8"));
+
+        // the key of the pass-through is reused : not compressed again
+        messages_.clear();
+        output.delete();
+        mojo = newMojo();
+        set(mojo, "cssStreamThreshold", "1024");
+        mojo.execute();
+        assertFalse(logged("compressed while read"));
+        assertTrue(logged("larger once compressed at the previous execution"));
+        assertEquals(css.toString(), FileUtils.fileRead(output, "UTF-8"));
+    }
+
+    private static SizeBudget budget(String pattern, long maxSize, boolean total, boolean failOnExceed) {
+        SizeBudget back = new SizeBudget();
+        back.pattern = pattern;
+        back.maxSize = maxSize;
+        back.total = total;
+        back.failOnExceed = failOnExceed;
+        return back;
+    }
+
+    public void testInlinedImageChanged() throws Exception {
+        File source = new File(webapp_, "style.css");
+        File image = new File(webapp_, "img/dot.gif");
+        OutputFiles.writeBytes(source, ".a { background: url(img/dot.gif); }".getBytes("UTF-8"));
+        image.getParentFile().mkdirs();
+        OutputFiles.writeBytes(image, new byte[]{'G', 'I', 'F'});
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "inlineCssImages", true);
+        set(mojo, "useSmallestFile", false);
+        mojo.execute();
+        File output = new File(target_, "demo/style-min.css");
+        assertTrue(FileUtils.fileRead(output, "UTF-8").contains("data:image/gif;base64,R0lG"));
+
+        long past = System.currentTimeMillis() - 60000;
+        source.setLastModified(past - 20000);
+        image.setLastModified(past - 20000);
+        output.setLastModified(past);
+        messages_.clear();
+        mojo = newMojo();
+        set(mojo, "inlineCssImages", true);
+        set(mojo, "useSmallestFile", false);
+        mojo.execute();
+        assertTrue(logged("nothing to do, " + output));
+        assertEquals(past, output.lastModified());
+
+        // only the image changed
+        OutputFiles.writeBytes(image, new byte[]{'G', 'I', 'F', '8'});
+        image.setLastModified(past + 10000);
+        messages_.clear();
+        mojo = newMojo();
+        set(mojo, "inlineCssImages", true);
+        set(mojo, "useSmallestFile", false);
+        mojo.execute();
+        assertFalse(logged("nothing to do, " + output));
+        assertTrue(FileUtils.fileRead(output, "UTF-8").contains("data:image/gif;base64,R0lGOA"));
+    }
+
+    public void testFingerprintOptions() throws Exception {
+        OutputFiles.writeBytes(new File(webapp_, "a.js"), "function f(value) { return value + 1; }".getBytes("UTF-8"));
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "fingerprint", "true");
+        mojo.execute();
+        String fingerprint = fingerprint(mojo);
+        mojo = newMojo();
+        set(mojo, "fingerprint", "true");
+        mojo.execute();
+        assertEquals(fingerprint, fingerprint(mojo));
+        assertTrue(logged("nothing to do, inputs and outputs are the same as the previous build"));
+
+        String[][] options = {{"types", "js,css,json"}, {"failFast", "warning"}, {"archive", new File(target_, "assets.zip").getPath()}};
+        for (String[] option : options) {
+            mojo = newMojo();
+            set(mojo, "fingerprint", "true");
+            set(mojo, option[0], option[1]);
+            mojo.execute();
+            assertFalse(option[0], fingerprint.equals(fingerprint(mojo)));
+        }
+        fingerprint = fingerprint(mojo);
+        mojo = newMojo();
+        set(mojo, "fingerprint", "true");
+        set(mojo, "archive", new File(target_, "assets.zip").getPath());
+        set(mojo, "archiveLooseFiles", "false");
+        mojo.execute();
+        assertFalse(fingerprint.equals(fingerprint(mojo)));
+    }
+
+    private static String fingerprint(YuiCompressorMojo mojo) throws Exception {
+        Field project = MojoSupport.class.getDeclaredField("project");
+        project.setAccessible(true);
+        return ((MavenProject) project.get(mojo)).getProperties().getProperty("yuicompressor.default-compress.fingerprint");
+    }
+
+    public void testSizeBudgets() throws Exception {
+        OutputFiles.writeBytes(new File(webapp_, "a.js"), "function f(value) { return value + 1; }".getBytes("UTF-8"));
+        OutputFiles.writeBytes(new File(webapp_, "b.js"), "function g(value) { return value + 2; }".getBytes("UTF-8"));
+        // "function f(a){return a+1};" : 26b
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "budgets", new SizeBudget[]{budget("a-min.js", 20, false, true), budget("*-min.js", 30, false, true)});
+        try {
+            mojo.execute();
+            fail("budget not checked");
+        } catch (MojoFailureException exc) {
+            assertEquals("1 size budget(s) exceeded (see log)", exc.getMessage());
+        }
+        assertTrue(logged("a-min.js : size 26b exceeds the budget 20b (+6b)"));
+
+        // the total of both outputs, reported as a warning
+        messages_.clear();
+        mojo = newMojo();
+        set(mojo, "budgets", new SizeBudget[]{budget("*-min.js", 50, true, false), budget("missing-*.js", 1, false, true)});
+        mojo.execute();
+        assertTrue(logged("total of *-min.js : size 52b exceeds the budget 50b (+2b, +0b since previous build)"));
+        assertTrue(logged("size budget missing-*.js doesn't match any output"));
+    }
+
+    public void testSizeDeltasByExecution() throws Exception {
+        File source = new File(webapp_, "a.js");
+        OutputFiles.writeBytes(source, "function f(value) { return value + 1; }".getBytes("UTF-8"));
+        newMojo().execute();
+        assertTrue(new File(target_, "yuicompressor/default-compress-size-report.properties").isFile());
+
+        // another execution compares with its own previous sizes
+        OutputFiles.writeBytes(source, "function f(value) { return value + 100; }".getBytes("UTF-8"));
+        messages_.clear();
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "mojoExecution", new MojoExecution(new MojoDescriptor(), "other"));
+        mojo.execute();
+        assertFalse(logged("a-min.js (28b)"));
+        assertTrue(new File(target_, "yuicompressor/other-size-report.properties").isFile());
+
+        // the same execution reports the regression
+        messages_.clear();
+        newMojo().execute();
+        assertTrue(logged("a-min.js (28b)[+2b since previous build]"));
+        assertTrue(logged("total size of outputs +2b since previous build"));
+        assertEquals(28, SizeReport.load(new File(target_, "yuicompressor/default-compress-size-report.properties")).get("a-min.js")[0]);
+    }
+
+    public void testSourcesNamedLikeContentHashedCopies() throws Exception {
+        OutputFiles.writeBytes(new File(webapp_, "lib.js"), "function f(value) { return value + 1; }".getBytes("UTF-8"));
+        OutputFiles.writeBytes(new File(webapp_, "lib.20231010.js"), "function g(value) { return value + 2; }".getBytes("UTF-8"));
+        OutputFiles.writeBytes(new File(webapp_, "app.deadbeef.css"), ".a { color : #FFFFFF; }".getBytes("UTF-8"));
+        // a file of the webapp copied as is (eg: by the war plugin), named like a copy of lib-min.js
+        File output = new File(target_, "demo");
+        output.mkdirs();
+        OutputFiles.writeBytes(new File(output, "lib-min.20231010.js"), "var vendored;".getBytes("UTF-8"));
+        for (int i = 0; i < 2; i++) {
+            YuiCompressorMojo mojo = newMojo();
+            set(mojo, "force", "true");
+            set(mojo, "contentHashNames", "true");
+            mojo.execute();
+
+            // compressed as sources, the copies of the previous build are not
+            assertEquals("function g(a){return a+2};", FileUtils.fileRead(new File(output, "lib.20231010-min.js"), "UTF-8"));
+            assertEquals(".a{color:#fff}", FileUtils.fileRead(new File(output, "app.deadbeef-min.css"), "UTF-8"));
+            String manifest = FileUtils.fileRead(new File(target_, "yuicompressor/asset-manifest.json"), "UTF-8");
+            assertTrue(manifest, manifest.contains("\"lib.20231010-min.js\" : {"));
+            assertTrue(manifest, manifest.contains("\"app.deadbeef-min.css\" : {"));
+            assertEquals(7, output.list().length);
+        }
+
+        // the stale copy is removed, not the file named like a copy
+        OutputFiles.writeBytes(new File(webapp_, "lib.js"), "function f(value) { return value + 3; }".getBytes("UTF-8"));
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "contentHashNames", "true");
+        mojo.execute();
+        assertEquals(7, output.list().length);
+        assertEquals("var vendored;", FileUtils.fileRead(new File(output, "lib-min.20231010.js"), "UTF-8"));
+    }
+
+    private static OutputProfile debugProfile() {
+        OutputProfile back = new OutputProfile();
+        back.suffix = "-debug";
+        back.nomunge = true;
+        back.linebreakpos = 0;
+        back.gzip = true;
+        return back;
+    }
+
+    public void testOutputProfiles() throws Exception {
+        String js = "function f(value) { var next = value + 1; return next; }\nfunction g() { return f(1); }";
+        OutputFiles.writeBytes(new File(webapp_, "a.js"), js.getBytes("UTF-8"));
+        OutputFiles.writeBytes(new File(webapp_, "b.css"), ".b { color : #FFFFFF; }\n.c { margin: 0px; }".getBytes("UTF-8"));
+        // named like a profile output : not a source
+        OutputFiles.writeBytes(new File(webapp_, "lib-debug.js"), "var lib = 1;".getBytes("UTF-8"));
+        StringWriter expected = new StringWriter();
+        new JavaScriptCompressor(new StringReader(js), new CompressorDaemon.RecordingErrorReporter()).compress(expected, 0, false, false, false, false);
+
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "outputProfiles", new OutputProfile[]{debugProfile()});
+        mojo.execute();
+        assertTrue(logged("read source once for every output profile"));
+        File output = new File(target_, "demo");
+        assertEquals("function f(b){var a=b+1;return a}function g(){return f(1)};", FileUtils.fileRead(new File(output, "a-min.js"), "UTF-8"));
+        assertEquals(expected.toString(), FileUtils.fileRead(new File(output, "a-debug.js"), "UTF-8"));
+        InputStream gz = new GZIPInputStream(new FileInputStream(new File(output, "a-debug.js.gz")));
+        try {
+            assertEquals(expected.toString(), IOUtil.toString(gz, "UTF-8"));
+        } finally {
+            gz.close();
+        }
+        assertEquals(".b{color:#fff}.c{margin:0}", FileUtils.fileRead(new File(output, "b-min.css"), "UTF-8"));
+        assertEquals(".b{color:#fff}\n.c{margin:0}", FileUtils.fileRead(new File(output, "b-debug.css"), "UTF-8"));
+        assertFalse(new File(output, "lib-debug-min.js").exists());
+        assertFalse(new File(output, "lib-debug-debug.js").exists());
+
+        // only the missing profile output is compressed again
+        new File(output, "a-debug.js").delete();
+        messages_.clear();
+        mojo = newMojo();
+        set(mojo, "outputProfiles", new OutputProfile[]{debugProfile()});
+        mojo.execute();
+        assertTrue(logged("nothing to do, " + new File(output, "b-debug.css") + " is younger than original"));
+        assertEquals(expected.toString(), FileUtils.fileRead(new File(output, "a-debug.js"), "UTF-8"));
+    }
+
+    private int loggedWarningCnt() {
+        for (String logged : messages_) {
+            Matcher m = Pattern.compile("nb warnings: (\\d+),").matcher(logged);
+            if (m.find()) {
+                return Integer.parseInt(m.group(1));
+            }
+        }
+        throw new AssertionError("warnings not logged");
+    }
+
+    public void testOutputProfileErrors() throws Exception {
+        OutputFiles.writeBytes(new File(webapp_, "warn.js"), "function f() { var a = 1; var a = 2; return a; }".getBytes("UTF-8"));
+        newMojo().execute();
+        int warningCnt = loggedWarningCnt();
+        assertTrue(warningCnt > 0);
+
+        // the warnings of the profile are reported too
+        FileUtils.deleteDirectory(target_);
+        messages_.clear();
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "outputProfiles", new OutputProfile[]{debugProfile()});
+        mojo.execute();
+        assertTrue(loggedWarningCnt() > warningCnt);
+
+        FileUtils.deleteDirectory(target_);
+        mojo = newMojo();
+        set(mojo, "outputProfiles", new OutputProfile[]{debugProfile()});
+        set(mojo, "failOnWarning", "true");
+        try {
+            mojo.execute();
+            fail("warning not reported");
+        } catch (MojoFailureException exc) {
+            assertTrue(exc.getMessage(), exc.getMessage().contains("warnings on"));
+        }
+
+        OutputProfile sameSuffix = debugProfile();
+        sameSuffix.suffix = "-min";
+        mojo = newMojo();
+        set(mojo, "outputProfiles", new OutputProfile[]{sameSuffix});
+        try {
+            mojo.execute();
+            fail("suffix not checked");
+        } catch (MojoExecutionException exc) {
+            assertTrue(exc.getMessage(), exc.getMessage().startsWith("the suffix of an output profile is required"));
+        }
+    }
+
+    public void testPassThroughKeyReuse() throws Exception {
+        // larger once compressed (a ';' is appended)
+        File source = new File(webapp_, "a.js");
+        OutputFiles.writeBytes(source, "function f(){}".getBytes("UTF-8"));
+        File output = new File(target_, "demo/a-min.js");
+        newMojo().execute();
+        assertTrue(logged("output greater than input, using original instead"));
+        assertEquals("function f(){}", FileUtils.fileRead(output, "UTF-8"));
+        assertTrue(new File(target_, "yuicompressor/default-compress.passthrough").length() > 0);
+
+        // same content and options : not compressed again
+        messages_.clear();
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "force", "true");
+        mojo.execute();
+        assertTrue(logged("larger once compressed at the previous execution"));
+        assertFalse(logged("start compression"));
+        assertTrue(logged("output unchanged, keep existing " + output));
+
+        // other options : other key
+        messages_.clear();
+        mojo = newMojo();
+        set(mojo, "force", "true");
+        set(mojo, "preserveAllSemiColons", "true");
+        mojo.execute();
+        assertFalse(logged("larger once compressed at the previous execution"));
+        assertTrue(logged("start compression"));
+
+        // modified source : compressed
+        OutputFiles.writeBytes(source, "function f(value) { return value; }".getBytes("UTF-8"));
+        messages_.clear();
+        newMojo().execute();
+        assertFalse(logged("larger once compressed at the previous execution"));
+        assertEquals("function f(a){return a};", FileUtils.fileRead(output, "UTF-8"));
+    }
+
+    public void testNoCompressPassThrough() throws Exception {
+        // not valid UTF-8 : copied byte for byte, not decoded
+        byte[] content = {'v', 'a', 'r', ' ', 'a', '=', '"', (byte) 0xE9, (byte) 0xFF, '"', ';'};
+        File source = new File(webapp_, "a.js");
+        OutputFiles.writeBytes(source, content);
+        File output = new File(target_, "demo/a-min.js");
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "nocompress", "true");
+        mojo.execute();
+        assertTrue(Arrays.equals(content, OutputFiles.readBytes(output)));
+        assertFalse(Files.isSameFile(source.toPath(), output.toPath()));
+
+        // with links, the copy is replaced by a link (if the file system supports them)
+        messages_.clear();
+        output.delete();
+        mojo = newMojo();
+        set(mojo, "nocompress", "true");
+        set(mojo, "passThroughLinks", "true");
+        mojo.execute();
+        assertTrue(Arrays.equals(content, OutputFiles.readBytes(output)));
+        boolean linked = Files.isSameFile(source.toPath(), output.toPath());
+
+        messages_.clear();
+        mojo = newMojo();
+        set(mojo, "nocompress", "true");
+        set(mojo, "passThroughLinks", "true");
+        set(mojo, "force", "true");
+        mojo.execute();
+        assertTrue(logged("output unchanged, keep existing " + output));
+        assertEquals(linked, Files.isSameFile(source.toPath(), output.toPath()));
+    }
+
+    private static int errorCnt(String failure) {
+        Matcher m = Pattern.compile("(\\d+) error\\(s\\), (\\d+) warning\\(s\\)").matcher(failure);
+        assertTrue(failure, m.find());
+        return Integer.parseInt(m.group(1));
+    }
+
+    public void testFailFast() throws Exception {
+        OutputFiles.writeBytes(new File(webapp_, "a.js"), "var a = ;".getBytes("UTF-8"));
+        OutputFiles.writeBytes(new File(webapp_, "b.js"), "var b = ;".getBytes("UTF-8"));
+        OutputFiles.writeBytes(new File(webapp_, "c.js"), "function f(value) { return value + 1; }".getBytes("UTF-8"));
+
+        // every file processed, every error listed
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "failFast", "none");
+        set(mojo, "fingerprint", "true");
+        String all = null;
+        try {
+            mojo.execute();
+            fail("errors not reported");
+        } catch (MojoFailureException exc) {
+            all = exc.getMessage();
+        }
+        assertTrue(all, all.startsWith("errors on YuiCompressorMojo, 2 file(s) failed => failure ! "));
+        assertTrue(all, all.contains(new File(webapp_, "a.js").getPath() + " ["));
+        assertTrue(all, all.contains(new File(webapp_, "b.js").getPath() + " ["));
+        assertTrue(new File(target_, "demo/c-min.js").isFile());
+        // post-processing skipped (no state nor size report saved), no temporary file left
+        assertTrue(logged("3 file(s) processed, aggregations and post-processing skipped"));
+        assertFalse(new File(target_, "yuicompressor/default-compress.state").exists());
+        assertFalse(new File(target_, "yuicompressor/default-compress-size-report.properties").exists());
+        assertEquals(Arrays.asList("c-min.js"), Arrays.asList(new File(target_, "demo").list()));
+
+        // stopped at the first file that failed : only its errors
+        FileUtils.deleteDirectory(target_);
+        messages_.clear();
+        try {
+            newMojo().execute();
+            fail("error not reported");
+        } catch (MojoFailureException exc) {
+            assertTrue(exc.getMessage(), exc.getMessage().startsWith("error on YuiCompressorMojo, remaining files not processed => failure ! "));
+            assertEquals(errorCnt(all) / 2, errorCnt(exc.getMessage()));
+        }
+        assertFalse(logged("3 file(s) processed"));
+    }
+
+    public void testUnsupportedFailFast() throws Exception {
+        OutputFiles.writeBytes(new File(webapp_, "a.js"), "var a = ;".getBytes("UTF-8"));
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "failFast", "errors");
+        try {
+            mojo.execute();
+            fail("failFast not checked");
+        } catch (MojoExecutionException exc) {
+            assertEquals("unsupported failFast 'errors', expected none, error or warning", exc.getMessage());
+        }
+        assertFalse(new File(target_, "demo").exists());
+    }
+
+    public void testFailFastOnWarning() throws Exception {
+        OutputFiles.writeBytes(new File(webapp_, "a.js"), "function f() { var a = 1; var a = 2; return a; }".getBytes("UTF-8"));
+        OutputFiles.writeBytes(new File(webapp_, "b.js"), "function g() { var b = 1; var b = 2; return b; }".getBytes("UTF-8"));
+        YuiCompressorMojo mojo = newMojo();
+        set(mojo, "failOnWarning", "true");
+        set(mojo, "failFast", "warning");
+        try {
+            mojo.execute();
+            fail("warning not reported");
+        } catch (MojoFailureException exc) {
+            assertTrue(exc.getMessage(), exc.getMessage().startsWith("warnings on YuiCompressorMojo, remaining files not processed => failure ! 0 error(s), "));
+        }
+        assertTrue(logged("1 file(s) processed, aggregations and post-processing skipped"));
+        assertEquals(1, new File(target_, "demo").list().length);
+    }
+}
@@ -0,0 +1,96 @@
+package net_alchim31_maven_yuicompressor;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class ZipArchiveWriterTestCase extends TestCase {
+
+    private static byte[] archive() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipArchiveWriter writer = new ZipArchiveWriter(out);
+        writer.add(ZipArchiveWriter.prepare("js/a-min.js", "var a=1;var b=2;var a=1;var b=2;var a=1;var b=2;".getBytes("UTF-8"), 9));
+        writer.add(ZipArchiveWriter.prepare("js/a-min.js.gz", new byte[]{31, -117, 8, 0, 1, 2, 3}, -1));
+        writer.add(ZipArchiveWriter.prepare("été.css", new byte[0], 9));
+        writer.finish();
+        assertEquals(3, writer.getEntryCnt());
+        return out.toByteArray();
+    }
+
+    public void testReadable() throws Exception {
+        File file = File.createTempFile("archive", ".zip");
+        try {
+            OutputFiles.writeBytes(file, archive());
+            ZipFile zip = new ZipFile(file);
+            try {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                ZipEntry js = entries.nextElement();
+                assertEquals("js/a-min.js", js.getName());
+                assertEquals(ZipEntry.DEFLATED, js.getMethod());
+                assertEquals("var a=1;var b=2;var a=1;var b=2;var a=1;var b=2;", IOUtil.toString(zip.getInputStream(js), "UTF-8"));
+                ZipEntry gz = entries.nextElement();
+                assertEquals(ZipEntry.STORED, gz.getMethod());
+                assertTrue(Arrays.equals(new byte[]{31, -117, 8, 0, 1, 2, 3}, IOUtil.toByteArray(zip.getInputStream(gz))));
+                ZipEntry css = entries.nextElement();
+                assertEquals("été.css", css.getName());
+                assertEquals(0, css.getSize());
+                assertFalse(entries.hasMoreElements());
+            } finally {
+                zip.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testReproducible() throws Exception {
+        assertTrue(Arrays.equals(archive(), archive()));
+    }
+
+    public void testDuplicate() throws Exception {
+        ZipArchiveWriter writer = new ZipArchiveWriter(new ByteArrayOutputStream());
+        writer.add(ZipArchiveWriter.prepare("a.js", new byte[1], 9));
+        try {
+            writer.add(ZipArchiveWriter.prepare("a.js", new byte[1], 9));
+            fail("duplicate entry accepted");
+        } catch (IOException exc) {
+            // expected
+        }
+    }
+
+    public void testZip64EntryCount() throws Exception {
+        File file = File.createTempFile("archive", ".zip");
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                ZipArchiveWriter writer = new ZipArchiveWriter(out);
+                for (int i = 0; i < 70000; i++) {
+                    writer.add(ZipArchiveWriter.prepare(String.format("f%05d.js", i), new byte[]{(byte) i}, -1));
+                }
+                writer.finish();
+            } finally {
+                IOUtil.close(out);
+            }
+            ZipFile zip = new ZipFile(file);
+            try {
+                assertEquals(70000, zip.size());
+                ZipEntry last = zip.getEntry("f69999.js");
+                assertTrue(Arrays.equals(new byte[]{(byte) 69999}, IOUtil.toByteArray(zip.getInputStream(last))));
+            } finally {
+                zip.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
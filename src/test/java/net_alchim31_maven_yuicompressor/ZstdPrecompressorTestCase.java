@@ -0,0 +1,51 @@
+package net_alchim31_maven_yuicompressor;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictDecompress;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ZstdPrecompressorTestCase extends TestCase {
+
+    private static List<byte[]> modules(int nb) throws Exception {
+        Random random = new Random(42);
+        List<byte[]> back = new ArrayList<byte[]>();
+        for (int i = 0; i < nb; i++) {
+            String module = "define(\"module" + i + "\",[\"jquery\",\"underscore\"],function($,_){\"use strict\";"
+                    + "return{init:function(options){this.el=$(options.selector);this.value" + random.nextInt(1000) + "=_.extend({},options);},"
+                    + "render:function(){return this.el.html(\"<div class='widget'>\"+_.escape(this.label" + random.nextInt(1000) + ")+\"</div>\");}};});";
+            back.add(module.getBytes("UTF-8"));
+        }
+        return back;
+    }
+
+    public void testDictionary() throws Exception {
+        if (ZstdPrecompressor.checkAvailable() != null) {
+            return;
+        }
+        List<byte[]> samples = modules(200);
+        ZstdPrecompressor compressor = new ZstdPrecompressor(19);
+        try {
+            assertFalse(compressor.hasDictionary());
+            byte[] dictionary = compressor.train(samples, 4096);
+            assertTrue(compressor.hasDictionary());
+            byte[] sample = samples.get(7);
+            byte[] withDictionary = compressor.compress(sample, true);
+            byte[] withoutDictionary = compressor.compress(sample, false);
+            assertTrue(withDictionary.length < withoutDictionary.length / 2);
+
+            ZstdDictDecompress decompress = new ZstdDictDecompress(dictionary);
+            try {
+                assertEquals(new String(sample, "UTF-8"), new String(Zstd.decompress(withDictionary, decompress, sample.length), "UTF-8"));
+            } finally {
+                decompress.close();
+            }
+            assertEquals(new String(sample, "UTF-8"), new String(Zstd.decompress(withoutDictionary, sample.length), "UTF-8"));
+        } finally {
+            compressor.close();
+        }
+    }
+}